@@ -0,0 +1,221 @@
+package com.chat.cs6650assignment1.server;
+
+import com.chat.cs6650assignment1.model.ChatMessage;
+
+/**
+ * Precompiled rule set for inbound chat messages. Every check is a hand-written scan over the
+ * field's characters and reports failures as a {@link Result} constant, so rejecting a bad
+ * message costs no more than accepting a good one: no exceptions, no regex, no allocation.
+ */
+public final class MessageValidator {
+
+    public static final MessageValidator DEFAULT = new MessageValidator(1, 100000, 3, 20, 1, 500);
+
+    /**
+     * Outcome of a check. Messages of the bounded checks are templates filled in with the
+     * validator's bounds; use {@link MessageValidator#describe(Result)} to get the text.
+     */
+    public enum Result {
+        OK(null),
+        USER_ID_REQUIRED("userId is required."),
+        USER_ID_NOT_INTEGER("userId must be a valid integer string."),
+        USER_ID_OUT_OF_RANGE("userId must be between %d and %d."),
+        USERNAME_INVALID("username must be %d-%d alphanumeric characters."),
+        MESSAGE_LENGTH_INVALID("message must be between %d and %d characters."),
+        TIMESTAMP_REQUIRED("timestamp is required."),
+        TIMESTAMP_INVALID("timestamp must be a valid ISO-8601 timestamp."),
+        MESSAGE_TYPE_INVALID("messageType must be TEXT, JOIN, or LEAVE.");
+
+        private final String template;
+
+        Result(String template) {
+            this.template = template;
+        }
+
+        public boolean isValid() {
+            return this == OK;
+        }
+    }
+
+    private static final int[] DAYS_IN_MONTH = {31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+    private final int minUserId;
+    private final int maxUserId;
+    private final int minUsernameLength;
+    private final int maxUsernameLength;
+    private final int minMessageLength;
+    private final int maxMessageLength;
+    private final String[] messages;
+
+    public MessageValidator(int minUserId, int maxUserId,
+                            int minUsernameLength, int maxUsernameLength,
+                            int minMessageLength, int maxMessageLength) {
+        this.minUserId = minUserId;
+        this.maxUserId = maxUserId;
+        this.minUsernameLength = minUsernameLength;
+        this.maxUsernameLength = maxUsernameLength;
+        this.minMessageLength = minMessageLength;
+        this.maxMessageLength = maxMessageLength;
+
+        Result[] results = Result.values();
+        this.messages = new String[results.length];
+        for (Result result : results) {
+            messages[result.ordinal()] = result.template;
+        }
+        messages[Result.USER_ID_OUT_OF_RANGE.ordinal()] =
+                Result.USER_ID_OUT_OF_RANGE.template.formatted(minUserId, maxUserId);
+        messages[Result.USERNAME_INVALID.ordinal()] =
+                Result.USERNAME_INVALID.template.formatted(minUsernameLength, maxUsernameLength);
+        messages[Result.MESSAGE_LENGTH_INVALID.ordinal()] =
+                Result.MESSAGE_LENGTH_INVALID.template.formatted(minMessageLength, maxMessageLength);
+    }
+
+    /**
+     * The client-facing text for a failed check, with this validator's bounds; null for OK.
+     */
+    public String describe(Result result) {
+        return messages[result.ordinal()];
+    }
+
+    public Result validate(ChatMessage msg) {
+        Result result = checkUserId(msg.getUserId());
+        if (result != Result.OK) return result;
+        result = checkUsername(msg.getUsername());
+        if (result != Result.OK) return result;
+        result = checkMessage(msg.getMessage());
+        if (result != Result.OK) return result;
+        result = checkTimestamp(msg.getTimestamp());
+        if (result != Result.OK) return result;
+        return checkMessageType(msg.getMessageType());
+    }
+
+    public Result checkUserId(CharSequence userId) {
+        if (userId == null) return Result.USER_ID_REQUIRED;
+        int length = userId.length();
+        int start = 0;
+        boolean negative = false;
+        if (length > 0 && (userId.charAt(0) == '-' || userId.charAt(0) == '+')) {
+            negative = userId.charAt(0) == '-';
+            start = 1;
+        }
+        if (start == length) return Result.USER_ID_NOT_INTEGER;
+
+        long value = 0;
+        for (int i = start; i < length; i++) {
+            char c = userId.charAt(i);
+            // Integer.parseInt takes any Unicode decimal digit, e.g. fullwidth ones.
+            int digit = c >= '0' && c <= '9' ? c - '0' : Character.digit(c, 10);
+            if (digit < 0) return Result.USER_ID_NOT_INTEGER;
+            // Stop accumulating once past int range; the result is rejected below either way.
+            if (value <= Integer.MAX_VALUE) value = value * 10 + digit;
+        }
+        if (negative) value = -value;
+        if (value > Integer.MAX_VALUE || value < Integer.MIN_VALUE) return Result.USER_ID_NOT_INTEGER;
+        if (value < minUserId || value > maxUserId) return Result.USER_ID_OUT_OF_RANGE;
+        return Result.OK;
+    }
+
+    public Result checkUsername(CharSequence username) {
+        if (username == null) return Result.USERNAME_INVALID;
+        int length = username.length();
+        if (length < minUsernameLength || length > maxUsernameLength) return Result.USERNAME_INVALID;
+        for (int i = 0; i < length; i++) {
+            char c = username.charAt(i);
+            boolean allowed = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+            if (!allowed) return Result.USERNAME_INVALID;
+        }
+        return Result.OK;
+    }
+
+    public Result checkMessage(CharSequence message) {
+        if (message == null) return Result.MESSAGE_LENGTH_INVALID;
+        int length = message.length();
+        if (length < minMessageLength || length > maxMessageLength) return Result.MESSAGE_LENGTH_INVALID;
+        return Result.OK;
+    }
+
+    public Result checkMessageType(ChatMessage.MessageType messageType) {
+        return messageType == null ? Result.MESSAGE_TYPE_INVALID : Result.OK;
+    }
+
+    /**
+     * Accepts what Instant.parse accepts for four-digit years:
+     * yyyy-MM-dd'T'HH:mm:ss[.fraction up to 9 digits](Z | +HH:MM[:SS] | -HH:MM[:SS]), including
+     * 24:00:00 for the end of a day, a 23:59:60 leap second and offsets up to 18:00.
+     */
+    public Result checkTimestamp(CharSequence ts) {
+        if (ts == null) return Result.TIMESTAMP_REQUIRED;
+        int length = ts.length();
+        if (length < 20) return Result.TIMESTAMP_INVALID;
+
+        int year = digits(ts, 0, 4);
+        int month = digits(ts, 5, 2);
+        int day = digits(ts, 8, 2);
+        int hour = digits(ts, 11, 2);
+        int minute = digits(ts, 14, 2);
+        int second = digits(ts, 17, 2);
+        char t = ts.charAt(10);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || hour < 0 || hour > 24
+                || minute < 0 || minute > 59 || second < 0 || second > 60
+                || ts.charAt(4) != '-' || ts.charAt(7) != '-' || (t != 'T' && t != 't')
+                || ts.charAt(13) != ':' || ts.charAt(16) != ':') {
+            return Result.TIMESTAMP_INVALID;
+        }
+        boolean endOfDay = hour == 24;
+        if ((endOfDay && (minute != 0 || second != 0))
+                || (second == 60 && (hour != 23 || minute != 59))) {
+            return Result.TIMESTAMP_INVALID;
+        }
+        int maxDay = (month == 2 && isLeapYear(year)) ? 29 : DAYS_IN_MONTH[month - 1];
+        if (day > maxDay) return Result.TIMESTAMP_INVALID;
+
+        int pos = 19;
+        if (ts.charAt(pos) == '.') {
+            pos++;
+            int fractionStart = pos;
+            while (pos < length && ts.charAt(pos) >= '0' && ts.charAt(pos) <= '9') {
+                if (endOfDay && ts.charAt(pos) != '0') return Result.TIMESTAMP_INVALID;
+                pos++;
+            }
+            if (pos - fractionStart > 9) return Result.TIMESTAMP_INVALID;
+        }
+        if (pos >= length) return Result.TIMESTAMP_INVALID;
+
+        char zone = ts.charAt(pos);
+        if (zone == 'Z' || zone == 'z') {
+            return pos + 1 == length ? Result.OK : Result.TIMESTAMP_INVALID;
+        }
+        if (zone != '+' && zone != '-') return Result.TIMESTAMP_INVALID;
+        int remaining = length - pos - 1;
+        if (remaining != 5 && remaining != 8) return Result.TIMESTAMP_INVALID;
+        int offsetHours = digits(ts, pos + 1, 2);
+        int offsetMinutes = digits(ts, pos + 4, 2);
+        if (offsetHours < 0 || offsetHours > 18 || offsetMinutes < 0 || offsetMinutes > 59
+                || ts.charAt(pos + 3) != ':') {
+            return Result.TIMESTAMP_INVALID;
+        }
+        int offsetSeconds = 0;
+        if (remaining == 8) {
+            offsetSeconds = digits(ts, pos + 7, 2);
+            if (offsetSeconds < 0 || offsetSeconds > 59 || ts.charAt(pos + 6) != ':') {
+                return Result.TIMESTAMP_INVALID;
+            }
+        }
+        if (offsetHours * 3600 + offsetMinutes * 60 + offsetSeconds > 18 * 3600) return Result.TIMESTAMP_INVALID;
+        return Result.OK;
+    }
+
+    private static int digits(CharSequence s, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static boolean isLeapYear(int year) {
+        return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+    }
+}
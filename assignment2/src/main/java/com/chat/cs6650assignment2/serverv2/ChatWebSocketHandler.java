@@ -12,8 +12,6 @@ import org.springframework.web.socket.handler.TextWebSocketHandler;
 
 import java.io.IOException;
 import java.time.Instant;
-import java.time.format.DateTimeParseException;
-import java.util.regex.Pattern;
 
 @Component
 public class ChatWebSocketHandler  extends TextWebSocketHandler {
@@ -23,7 +21,7 @@ public class ChatWebSocketHandler  extends TextWebSocketHandler {
     private final String serverId = "server-" + java.util.UUID.randomUUID().toString().substring(0, 8);
     //private AtomicLong counter = new AtomicLong(0);
 
-    private static final Pattern USERNAME_PATTERN = Pattern.compile("^[a-zA-Z0-9_]{3,20}$");
+    private final MessageValidator validator = MessageValidator.DEFAULT;
 
     public static final String ROOM_ID_ATTRIBUTE = "roomId";
 
@@ -58,7 +56,17 @@ public class ChatWebSocketHandler  extends TextWebSocketHandler {
             ChatMessage chatMessage = objectMapper.readValue(message.getPayload(), ChatMessage.class);
             //counter.incrementAndGet();
             //System.out.println(counter+" Message received "+ chatMessage);
-            validateMessage(chatMessage);
+            MessageValidator.Result result = validator.validate(chatMessage);
+            if (!result.isValid()) {
+                ServerResponse errorResponse = new ServerResponse("ERROR", Instant.now().toString());
+                errorResponse.setMessage(validator.describe(result));
+                synchronized (session) {
+                    if (session.isOpen()) {
+                        session.sendMessage(new TextMessage(objectMapper.writeValueAsString(errorResponse)));
+                    }
+                }
+                return;
+            }
             // Create the message for the queue
             QueueMessage queueMessage = new QueueMessage();
             queueMessage.setMessageId(java.util.UUID.randomUUID().toString());
@@ -124,35 +132,4 @@ public class ChatWebSocketHandler  extends TextWebSocketHandler {
         }
         return path.substring(lastSlash + 1);
     }
-
-    private void validateMessage(ChatMessage msg) {
-        if (msg.getUserId() == null) throw new IllegalArgumentException("userId is required.");
-        try {
-            int userIdInt = Integer.parseInt(msg.getUserId());
-            if (userIdInt < 1 || userIdInt > 100000) {
-                throw new IllegalArgumentException("userId must be between 1 and 100000.");
-            }
-        } catch (NumberFormatException e) {
-            throw new IllegalArgumentException("userId must be a valid integer string.");
-        }
-
-        if (msg.getUsername() == null || !USERNAME_PATTERN.matcher(msg.getUsername()).matches()) {
-            throw new IllegalArgumentException("username must be 3-20 alphanumeric characters.");
-        }
-
-        if (msg.getMessage() == null || msg.getMessage().length() < 1 || msg.getMessage().length() > 500) {
-            throw new IllegalArgumentException("message must be between 1 and 500 characters.");
-        }
-
-        if (msg.getTimestamp() == null) throw new IllegalArgumentException("timestamp is required.");
-        try {
-            Instant.parse(msg.getTimestamp());
-        } catch (DateTimeParseException e) {
-            throw new IllegalArgumentException("timestamp must be a valid ISO-8601 timestamp.");
-        }
-
-        if (msg.getMessageType() == null) {
-            throw new IllegalArgumentException("messageType must be TEXT, JOIN, or LEAVE.");
-        }
-    }
 }
@@ -0,0 +1,10 @@
+package com.chat.cs6650assignment3.bus;
+
+/**
+ * Receives broadcasts for rooms this node is subscribed to. The body is the QueueMessage
+ * JSON that is forwarded to WebSocket clients as-is.
+ */
+public interface BroadcastListener {
+
+    void onBroadcast(String roomId, byte[] body);
+}
@@ -0,0 +1,133 @@
+package com.chat.cs6650assignment3.bus;
+
+import com.chat.cs6650assignment3.model.QueueMessage;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Single-node MessageBus with no broker. Rooms are hashed onto lanes; each lane is a
+ * RingBuffer drained by one thread, which keeps per-room order like a room queue with a
+ * single consumer. The lane thread runs the RoomMessageListener, and broadcasts it makes go
+ * straight to the local BroadcastListeners, so ingress -> consume -> broadcast -> persist
+ * stays in memory.
+ *
+ * Messages in the rings are lost if the JVM stops; this is for single-node deployments,
+ * local runs and benchmarks without a broker.
+ */
+@Component
+@Profile("inprocess")
+public class InProcessMessageBus implements MessageBus {
+
+    private static final Logger logger = LoggerFactory.getLogger(InProcessMessageBus.class);
+    private static final CompletableFuture<Void> PUBLISHED = CompletableFuture.completedFuture(null);
+    private static final int DRAIN_BATCH = 256;
+
+    private final ObjectMapper objectMapper;
+    private final ObjectProvider<RoomMessageListener> roomListenerProvider;
+    private final ObjectProvider<BroadcastListener> broadcastListenerProvider;
+    private final List<RingBuffer<QueueMessage>> lanes;
+    private final Thread[] laneThreads;
+    private volatile boolean running = true;
+
+    // Resolved on first use; the listeners depend on this bus themselves.
+    private volatile RoomMessageListener roomListener;
+    private volatile List<BroadcastListener> broadcastListeners;
+
+    public InProcessMessageBus(ObjectMapper objectMapper,
+                               ObjectProvider<RoomMessageListener> roomListenerProvider,
+                               ObjectProvider<BroadcastListener> broadcastListenerProvider,
+                               MeterRegistry meterRegistry,
+                               @Value("${chat.bus.inprocess.lanes:8}") int laneCount,
+                               @Value("${chat.bus.inprocess.ring-size:65536}") int ringSize) {
+        this.objectMapper = objectMapper;
+        this.roomListenerProvider = roomListenerProvider;
+        this.broadcastListenerProvider = broadcastListenerProvider;
+        this.lanes = new ArrayList<>(laneCount);
+        this.laneThreads = new Thread[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            RingBuffer<QueueMessage> lane = new RingBuffer<>(ringSize);
+            lanes.add(lane);
+            Gauge.builder("chat.bus.inprocess.backlog", lane, RingBuffer::backlog)
+                    .description("Messages waiting in an in-process bus lane")
+                    .tag("lane", String.valueOf(i))
+                    .register(meterRegistry);
+            laneThreads[i] = new Thread(() -> runLane(lane), "InProcessBus-Lane-" + i);
+            laneThreads[i].start();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> publish(QueueMessage message) {
+        lanes.get(Math.floorMod(message.getRoomId().hashCode(), lanes.size())).put(message);
+        return PUBLISHED;
+    }
+
+    @Override
+    public void broadcast(QueueMessage message) {
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(message);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Cannot serialize broadcast " + message.getMessageId(), e);
+        }
+        List<BroadcastListener> listeners = broadcastListeners;
+        if (listeners == null) {
+            listeners = broadcastListenerProvider.orderedStream().toList();
+            broadcastListeners = listeners;
+        }
+        for (BroadcastListener listener : listeners) {
+            listener.onBroadcast(message.getRoomId(), body);
+        }
+    }
+
+    @Override
+    public void subscribeBroadcasts(String roomId) {
+        // Every broadcast is local already.
+    }
+
+    @Override
+    public void unsubscribeBroadcasts(String roomId, BooleanSupplier roomStillEmpty) {
+    }
+
+    private void runLane(RingBuffer<QueueMessage> lane) {
+        while (running) {
+            lane.drain(this::deliver, DRAIN_BATCH);
+        }
+    }
+
+    private void deliver(QueueMessage message) {
+        try {
+            RoomMessageListener listener = roomListener;
+            if (listener == null) {
+                listener = roomListenerProvider.getObject();
+                roomListener = listener;
+            }
+            listener.onRoomMessage(message);
+        } catch (Exception e) {
+            // No broker to requeue to; the listener has already counted the failure.
+            logger.error("Dropping message {} after processing failed", message.getMessageId(), e);
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        for (Thread thread : laneThreads) {
+            thread.join(5000);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.chat.cs6650assignment3.bus;
+
+import com.chat.cs6650assignment3.model.QueueMessage;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Transport between the WebSocket handlers, the room consumers (RoomMessageListener) and the
+ * broadcast listeners (BroadcastListener). RabbitMQMessageBus is the default; under the
+ * "inprocess" profile InProcessMessageBus runs the same pipeline on ring buffers in one JVM.
+ */
+public interface MessageBus {
+
+    /**
+     * Hands a message to its room's work queue. The future completes once the bus has
+     * accepted it, which is when the client gets its ack.
+     */
+    CompletableFuture<Void> publish(QueueMessage message);
+
+    /**
+     * Fans a processed message out to every node with sessions in its room.
+     */
+    void broadcast(QueueMessage message);
+
+    /**
+     * Broadcasts messages in order and returns how many went out. Stops at the first failure,
+     * which the bus logs, so the caller can requeue what was not sent.
+     */
+    default int broadcastAll(List<QueueMessage> messages) {
+        for (int i = 0; i < messages.size(); i++) {
+            try {
+                broadcast(messages.get(i));
+            } catch (RuntimeException e) {
+                LoggerFactory.getLogger(MessageBus.class).error("Broadcast of message {} failed",
+                        messages.get(i).getMessageId(), e);
+                return i;
+            }
+        }
+        return messages.size();
+    }
+
+    /**
+     * This node has sessions in the room and wants its broadcasts.
+     */
+    void subscribeBroadcasts(String roomId);
+
+    /**
+     * The room's last local session left. roomStillEmpty is checked again before the
+     * subscription is dropped, since a session may rejoin in the meantime.
+     */
+    void unsubscribeBroadcasts(String roomId, BooleanSupplier roomStillEmpty);
+}
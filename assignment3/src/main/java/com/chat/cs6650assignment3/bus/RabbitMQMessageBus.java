@@ -0,0 +1,59 @@
+package com.chat.cs6650assignment3.bus;
+
+import com.chat.cs6650assignment3.consumerv3.BroadcastPublisherService;
+import com.chat.cs6650assignment3.model.QueueMessage;
+import com.chat.cs6650assignment3.serverv3.BatchingPublisherService;
+import com.chat.cs6650assignment3.serverv3.RoomBindingManager;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
+
+/**
+ * MessageBus over RabbitMQ: room queues on chat.exchange, broadcasts on the per-room
+ * broadcast exchange. The consuming side is DynamicConsumerConfig's containers and the
+ * broadcast @RabbitListener.
+ */
+@Component
+@Profile("!inprocess")
+public class RabbitMQMessageBus implements MessageBus {
+
+    private final BatchingPublisherService publisher;
+    private final BroadcastPublisherService broadcastPublisher;
+    private final RoomBindingManager roomBindingManager;
+
+    public RabbitMQMessageBus(BatchingPublisherService publisher,
+                              BroadcastPublisherService broadcastPublisher,
+                              RoomBindingManager roomBindingManager) {
+        this.publisher = publisher;
+        this.broadcastPublisher = broadcastPublisher;
+        this.roomBindingManager = roomBindingManager;
+    }
+
+    @Override
+    public CompletableFuture<Void> publish(QueueMessage message) {
+        return publisher.publish(message);
+    }
+
+    @Override
+    public void broadcast(QueueMessage message) {
+        broadcastPublisher.publishBroadcast(message);
+    }
+
+    @Override
+    public int broadcastAll(List<QueueMessage> messages) {
+        return broadcastPublisher.publishBroadcasts(messages);
+    }
+
+    @Override
+    public void subscribeBroadcasts(String roomId) {
+        roomBindingManager.ensureBound(roomId);
+    }
+
+    @Override
+    public void unsubscribeBroadcasts(String roomId, BooleanSupplier roomStillEmpty) {
+        roomBindingManager.scheduleUnbind(roomId, roomStillEmpty);
+    }
+}
@@ -0,0 +1,96 @@
+package com.chat.cs6650assignment3.bus;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Bounded multi-producer, single-consumer ring in the style of the LMAX Disruptor: producers
+ * claim a sequence with one atomic increment, write the slot and then publish the sequence
+ * into the slot's marker; the consumer reads slots in sequence order as their markers appear.
+ * A full ring makes producers wait, which pushes back on whoever is handing work in: the
+ * WebSocket threads for InProcessMessageBus, the listener threads for RoomPartitionedExecutor.
+ */
+public final class RingBuffer<T> {
+
+    private static final VarHandle PUBLISHED = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final long PRODUCER_BACKOFF_NANOS = 1_000;
+    private static final long CONSUMER_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Object[] entries;
+    private final long[] published;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong(-1);
+    private volatile long consumed = -1;
+    private volatile boolean consumerParked;
+    private volatile Thread consumerThread;
+
+    public RingBuffer(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Ring capacity must be a power of two: " + capacity);
+        }
+        this.entries = new Object[capacity];
+        this.published = new long[capacity];
+        this.mask = capacity - 1;
+        for (int i = 0; i < capacity; i++) {
+            published[i] = -1;
+        }
+    }
+
+    public void put(T item) {
+        long sequence = claimed.incrementAndGet();
+        while (sequence - entries.length > consumed) {
+            LockSupport.parkNanos(PRODUCER_BACKOFF_NANOS);
+        }
+        int index = (int) sequence & mask;
+        entries[index] = item;
+        PUBLISHED.setVolatile(published, index, sequence);
+        if (consumerParked) {
+            LockSupport.unpark(consumerThread);
+        }
+    }
+
+    /**
+     * Consumer thread only. Hands up to max available items to handler in order, parking
+     * briefly when the ring is empty. Returns how many were handled.
+     */
+    @SuppressWarnings("unchecked")
+    public int drain(Consumer<T> handler, int max) {
+        consumerThread = Thread.currentThread();
+        long next = consumed + 1;
+        if (!isPublished(next)) {
+            consumerParked = true;
+            if (!isPublished(next)) {
+                LockSupport.parkNanos(this, CONSUMER_PARK_NANOS);
+            }
+            consumerParked = false;
+            return 0;
+        }
+        int handled = 0;
+        try {
+            while (handled < max && isPublished(next)) {
+                int index = (int) next & mask;
+                T item = (T) entries[index];
+                entries[index] = null;
+                handled++;
+                next++;
+                handler.accept(item);
+            }
+        } finally {
+            // Free the slots in one volatile write per batch rather than per item.
+            consumed = next - 1;
+        }
+        return handled;
+    }
+
+    public long backlog() {
+        return Math.max(0, claimed.get() - consumed);
+    }
+
+    private boolean isPublished(long sequence) {
+        return (long) PUBLISHED.getVolatile(published, (int) sequence & mask) == sequence;
+    }
+}
@@ -0,0 +1,11 @@
+package com.chat.cs6650assignment3.bus;
+
+import com.chat.cs6650assignment3.model.QueueMessage;
+
+/**
+ * Consumer side of a room work queue, for buses that deliver decoded messages directly.
+ */
+public interface RoomMessageListener {
+
+    void onRoomMessage(QueueMessage message);
+}
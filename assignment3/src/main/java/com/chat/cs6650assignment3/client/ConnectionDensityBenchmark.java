@@ -0,0 +1,116 @@
+package com.chat.cs6650assignment3.client;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.handshake.ServerHandshake;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connection-density side of the servlet vs reactive comparison. Opens idle WebSocket connections
+ * to one node in steps and, after each step, reads the node's heap from the actuator to report
+ * heap per connection. Stops at TARGET_CONNECTIONS or at the first step where connects start failing.
+ *
+ * Run once against the default profile and once against --spring.profiles.active=reactive, then
+ * run PerformanceClient against each for throughput and p99 latency. Each Java-WebSocket client
+ * holds its own threads, so very high targets may need the load spread over several client hosts.
+ */
+public class ConnectionDensityBenchmark {
+
+    private static final String SERVER_WS_URL = "PLACEHOLDER_WS_URL";
+    private static final String SERVER_HTTP_URL = "PLACEHOLDER_HTTP_URL";
+
+    private static int TARGET_CONNECTIONS = 20000;
+    private static int STEP = 1000;
+    private static int CONNECT_THREADS = 64;
+    private static final long SETTLE_MS = 3000;
+
+    private static final HttpClient httpClient = HttpClient.newHttpClient();
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("\n=========== CONNECTION DENSITY BENCHMARK ===========");
+        System.out.printf("Configuration: WS_URL=%s, HTTP_URL=%s%n", SERVER_WS_URL, SERVER_HTTP_URL);
+        System.out.printf("Target=%d connections, Step=%d%n", TARGET_CONNECTIONS, STEP);
+
+        List<WebSocketClient> clients = new ArrayList<>();
+        ExecutorService connectPool = Executors.newFixedThreadPool(CONNECT_THREADS);
+        double baselineHeap = heapUsedBytes();
+        System.out.printf("Baseline heap: %.1f MB%n", baselineHeap / (1024 * 1024));
+        System.out.printf("%12s %10s %14s %16s%n", "connections", "failed", "heap MB", "heap KB/conn");
+
+        try {
+            while (clients.size() < TARGET_CONNECTIONS) {
+                List<Future<WebSocketClient>> step = new ArrayList<>();
+                for (int i = 0; i < STEP; i++) {
+                    int roomId = (clients.size() + i) % 20 + 1;
+                    step.add(connectPool.submit(() -> connect(URI.create(SERVER_WS_URL + "/" + roomId))));
+                }
+                int failed = 0;
+                for (Future<WebSocketClient> future : step) {
+                    WebSocketClient client = future.get();
+                    if (client == null) {
+                        failed++;
+                    } else {
+                        clients.add(client);
+                    }
+                }
+
+                Thread.sleep(SETTLE_MS);
+                double heap = heapUsedBytes();
+                System.out.printf("%12d %10d %14.1f %16.2f%n", clients.size(), failed, heap / (1024 * 1024),
+                        (heap - baselineHeap) / 1024 / Math.max(1, clients.size()));
+                if (failed > 0) {
+                    System.out.println("Connects started failing; stopping here.");
+                    break;
+                }
+            }
+        } finally {
+            connectPool.shutdownNow();
+            System.out.println("Peak connections held: " + clients.size());
+            for (WebSocketClient client : clients) {
+                client.close();
+            }
+        }
+        System.out.println("=========== CONNECTION DENSITY BENCHMARK COMPLETE ===========");
+    }
+
+    private static WebSocketClient connect(URI uri) {
+        WebSocketClient client = new WebSocketClient(uri) {
+            @Override
+            public void onOpen(ServerHandshake handshakedata) {}
+            @Override
+            public void onMessage(String message) {}
+            @Override
+            public void onClose(int code, String reason, boolean remote) {}
+            @Override
+            public void onError(Exception ex) {}
+        };
+        try {
+            return client.connectBlocking(10, TimeUnit.SECONDS) ? client : null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private static double heapUsedBytes() throws Exception {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(SERVER_HTTP_URL + "/actuator/metrics/jvm.memory.used?tag=area:heap"))
+                .GET()
+                .build();
+        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        JsonNode measurements = mapper.readTree(response.body()).path("measurements");
+        return measurements.isEmpty() ? 0 : measurements.get(0).path("value").asDouble();
+    }
+}
@@ -1,6 +1,7 @@
 package com.chat.cs6650assignment3.client;
 
 import com.chat.cs6650assignment3.messagegenerator.MessageGenerator;
+import com.chat.cs6650assignment3.model.BinaryMessageCodec;
 import com.chat.cs6650assignment3.model.ChatMessage;
 import com.google.common.util.concurrent.RateLimiter;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -24,6 +25,9 @@ public class PerformanceClient {
     private static int NUM_THREADS = 256;
     private static double RATE_LIMIT_PER_SECOND = 1000;
     private static int TOTAL_MESSAGES = 1500000;
+    private static boolean USE_BINARY_PROTOCOL = false;
+    // 0 = one connection per room (/chat/{roomId}); N = one multiplexed connection per thread covering N rooms
+    private static int ROOMS_PER_CONNECTION = 0;
 
     public static final ChatMessage POISON_PILL = new ChatMessage();
     private static final int MESSAGE_QUEUE_CAPACITY = 30000;
@@ -32,6 +36,10 @@ public class PerformanceClient {
         System.out.println("\n=========== STARTING PERFORMANCE TEST (ASSIGNMENT 3) ===========");
         System.out.printf("Configuration: WS_URL=%s, HTTP_URL=%s%n", SERVER_WS_URL, SERVER_HTTP_URL);
         System.out.printf("Threads=%d, Messages=%d, Rate Limit=%.2f/s%n", NUM_THREADS, TOTAL_MESSAGES, RATE_LIMIT_PER_SECOND);
+        System.out.printf("Wire Protocol=%s%n", USE_BINARY_PROTOCOL ? BinaryMessageCodec.SUBPROTOCOL : BinaryMessageCodec.JSON_SUBPROTOCOL);
+        if (ROOMS_PER_CONNECTION > 0) {
+            System.out.printf("Multiplexed connections: %d rooms per connection%n", ROOMS_PER_CONNECTION);
+        }
 
         runTestPhase();
 
@@ -42,7 +50,7 @@ public class PerformanceClient {
 
     private static void runTestPhase() {
         System.out.println("\n--- PHASE 1: LOAD TESTING ---");
-        String csvFilePath = String.format("results/performance_metrics_%d_threads_%d_msgs.csv", NUM_THREADS, TOTAL_MESSAGES);
+        String csvFilePath = String.format("results/performance_metrics_%d_threads_%d_msgs_%s.csv", NUM_THREADS, TOTAL_MESSAGES, USE_BINARY_PROTOCOL ? "binary" : "json");
         BlockingQueue<ChatMessage> messageQueue = new LinkedBlockingQueue<>(MESSAGE_QUEUE_CAPACITY);
         PerformanceReporter reporter = new PerformanceReporter(csvFilePath);
         RateLimiter sharedRateLimiter = RateLimiter.create(RATE_LIMIT_PER_SECOND);
@@ -52,7 +60,7 @@ public class PerformanceClient {
         MessageGenerator generator = new MessageGenerator(messageQueue, TOTAL_MESSAGES, NUM_THREADS, POISON_PILL);
         List<WebSocketSenderTask> senderTasks = new ArrayList<>();
         for (int i = 0; i < NUM_THREADS; i++) {
-            senderTasks.add(new WebSocketSenderTask(SERVER_WS_URL, i, messageQueue, reporter, POISON_PILL, sharedRateLimiter));
+            senderTasks.add(new WebSocketSenderTask(SERVER_WS_URL, i, messageQueue, reporter, POISON_PILL, sharedRateLimiter, USE_BINARY_PROTOCOL, ROOMS_PER_CONNECTION));
         }
 
         long startTime = System.currentTimeMillis();
@@ -78,6 +86,8 @@ public class PerformanceClient {
         int totalFailed = senderTasks.stream().mapToInt(WebSocketSenderTask::getFailedCount).sum();
         int totalInitialConnections = senderTasks.stream().mapToInt(WebSocketSenderTask::getTotalConnections).sum();
         int totalReconnections = senderTasks.stream().mapToInt(WebSocketSenderTask::getTotalReconnections).sum();
+        int totalBatchedFrames = senderTasks.stream().mapToInt(WebSocketSenderTask::getBatchedFrameCount).sum();
+        int totalBatchedMessages = senderTasks.stream().mapToInt(WebSocketSenderTask::getBatchedMessageCount).sum();
         List<Long> allLatencies = senderTasks.stream()
                 .flatMap(task -> task.getLatencies().stream())
                 .collect(Collectors.toList());
@@ -89,6 +99,10 @@ public class PerformanceClient {
         System.out.println("Total Failed Messages: " + totalFailed);
         System.out.println("Total Initial Connections: " + totalInitialConnections);
         System.out.println("Total Reconnections: " + totalReconnections);
+        if (totalBatchedFrames > 0) {
+            System.out.printf("Coalesced Broadcast Frames: %d (avg %.2f messages/frame)%n",
+                    totalBatchedFrames, (double) totalBatchedMessages / totalBatchedFrames);
+        }
         System.out.printf("Total Runtime: %.2f seconds%n", durationSeconds);
         System.out.printf("Throughput: %.2f messages/second%n", throughput);
         reporter.printStatistics(allLatencies);
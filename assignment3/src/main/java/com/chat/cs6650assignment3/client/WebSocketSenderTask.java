@@ -1,13 +1,18 @@
 package com.chat.cs6650assignment3.client;
 
+import com.chat.cs6650assignment3.model.BinaryMessageCodec;
 import com.chat.cs6650assignment3.model.ChatMessage;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.util.concurrent.RateLimiter;
 import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.drafts.Draft_6455;
 import org.java_websocket.handshake.ServerHandshake;
+import org.java_websocket.protocols.Protocol;
 
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -30,6 +35,9 @@ public class WebSocketSenderTask implements Runnable {
     private final int roomId;
     private final URI serverUri;
     private final RateLimiter rateLimiter;
+    private final boolean binaryProtocol;
+    private final int[] rooms;
+    private int nextRoom;
 
     private final AtomicInteger successfulMessages;
     private final AtomicInteger failedMessages;
@@ -37,15 +45,42 @@ public class WebSocketSenderTask implements Runnable {
     private final AtomicInteger totalConnections;
     private final AtomicInteger totalReconnections;
     private final AtomicLong lastMessageReceivedTime;
+    private final AtomicInteger batchedFrames = new AtomicInteger(0);
+    private final AtomicInteger batchedMessages = new AtomicInteger(0);
 
     public WebSocketSenderTask(String serverBaseUrl, int workerId, BlockingQueue<ChatMessage> messageQueue,
                                PerformanceReporter reporter, ChatMessage poisonPill, RateLimiter rateLimiter) {
+        this(serverBaseUrl, workerId, messageQueue, reporter, poisonPill, rateLimiter, false);
+    }
+
+    public WebSocketSenderTask(String serverBaseUrl, int workerId, BlockingQueue<ChatMessage> messageQueue,
+                               PerformanceReporter reporter, ChatMessage poisonPill, RateLimiter rateLimiter,
+                               boolean binaryProtocol) {
+        this(serverBaseUrl, workerId, messageQueue, reporter, poisonPill, rateLimiter, binaryProtocol, 0);
+    }
+
+    /**
+     * With roomsPerConnection > 0 the worker opens a single multiplexed connection to serverBaseUrl,
+     * subscribes to that many rooms and spreads its messages across them. Multiplexed mode is JSON only.
+     */
+    public WebSocketSenderTask(String serverBaseUrl, int workerId, BlockingQueue<ChatMessage> messageQueue,
+                               PerformanceReporter reporter, ChatMessage poisonPill, RateLimiter rateLimiter,
+                               boolean binaryProtocol, int roomsPerConnection) {
         this.workerId = workerId;
         this.messageQueue = messageQueue;
         this.reporter = reporter;
         this.poisonPill = poisonPill;
         this.roomId = workerId % 20 + 1;
-        this.serverUri = URI.create(serverBaseUrl + "/" + this.roomId);
+        if (roomsPerConnection > 0) {
+            this.rooms = new int[Math.min(roomsPerConnection, 20)];
+            for (int i = 0; i < rooms.length; i++) {
+                rooms[i] = (roomId - 1 + i) % 20 + 1;
+            }
+            this.serverUri = URI.create(serverBaseUrl);
+        } else {
+            this.rooms = null;
+            this.serverUri = URI.create(serverBaseUrl + "/" + this.roomId);
+        }
         this.pendingMessages = new ConcurrentHashMap<>();
         this.successfulMessages = new AtomicInteger(0);
         this.failedMessages = new AtomicInteger(0);
@@ -54,6 +89,7 @@ public class WebSocketSenderTask implements Runnable {
         this.latencies = Collections.synchronizedList(new ArrayList<>());
         this.rateLimiter = rateLimiter;
         this.lastMessageReceivedTime = new AtomicLong(System.currentTimeMillis());
+        this.binaryProtocol = binaryProtocol && rooms == null;
     }
 
     @Override
@@ -89,14 +125,32 @@ public class WebSocketSenderTask implements Runnable {
             if (!client.connectBlocking(5, TimeUnit.SECONDS)) {
                 throw new RuntimeException("Connection to " + serverUri + " failed");
             }
+            if (rooms != null) {
+                // The server handles frames in order, so messages sent after these are already routed.
+                for (int room : rooms) {
+                    client.send("{\"action\":\"subscribe\",\"roomId\":\"" + room + "\"}");
+                }
+            }
         }
     }
 
     private void sendMessage(ChatMessage message) {
         try {
-            String jsonMessage = objectMapper.writeValueAsString(message);
-            pendingMessages.put(message.getMessageId(), new PendingRequest(message));
-            client.send(jsonMessage);
+            if (binaryProtocol) {
+                byte[] binaryMessage = BinaryMessageCodec.encodeChatMessage(message);
+                pendingMessages.put(message.getMessageId(), new PendingRequest(message));
+                client.send(binaryMessage);
+            } else if (rooms != null) {
+                ObjectNode frame = objectMapper.valueToTree(message);
+                frame.put("roomId", String.valueOf(rooms[nextRoom]));
+                nextRoom = (nextRoom + 1) % rooms.length;
+                pendingMessages.put(message.getMessageId(), new PendingRequest(message));
+                client.send(objectMapper.writeValueAsString(frame));
+            } else {
+                String jsonMessage = objectMapper.writeValueAsString(message);
+                pendingMessages.put(message.getMessageId(), new PendingRequest(message));
+                client.send(jsonMessage);
+            }
         } catch (Exception e) {
             failMessage(message, "Exception during send: " + e.getMessage());
         }
@@ -131,7 +185,9 @@ public class WebSocketSenderTask implements Runnable {
     }
 
     private WebSocketClient createClient(URI serverUri) {
-        return new WebSocketClient(serverUri) {
+        String subprotocol = binaryProtocol ? BinaryMessageCodec.SUBPROTOCOL : BinaryMessageCodec.JSON_SUBPROTOCOL;
+        Draft_6455 draft = new Draft_6455(Collections.emptyList(), List.of(new Protocol(subprotocol)));
+        return new WebSocketClient(serverUri, draft) {
             @Override
             public void onOpen(ServerHandshake handshakedata) {
                 System.out.println("[" + Thread.currentThread().getName() + "] Connected to " + serverUri);
@@ -142,13 +198,27 @@ public class WebSocketSenderTask implements Runnable {
                 lastMessageReceivedTime.set(System.currentTimeMillis());
                 try {
                     JsonNode responseNode = objectMapper.readTree(message);
-                    if (responseNode.has("clientMessageId")) {
+                    if (responseNode.isArray()) {
+                        // Coalesced broadcast frame: one array of messages for this room.
+                        batchedFrames.incrementAndGet();
+                        batchedMessages.addAndGet(responseNode.size());
+                        for (JsonNode broadcastNode : responseNode) {
+                            if (broadcastNode.has("clientMessageId")) {
+                                handleBroadcast(broadcastNode);
+                            }
+                        }
+                    } else if (responseNode.has("clientMessageId")) {
                         handleBroadcast(responseNode);
                     }
                 } catch (Exception e) {
                 }
             }
 
+            @Override
+            public void onMessage(ByteBuffer bytes) {
+                lastMessageReceivedTime.set(System.currentTimeMillis());
+            }
+
             private void handleBroadcast(JsonNode broadcastNode) {
                 String originalId = broadcastNode.get("clientMessageId").asText();
                 PendingRequest pending = pendingMessages.remove(originalId);
@@ -162,7 +232,7 @@ public class WebSocketSenderTask implements Runnable {
                             pending.message.getMessageType().toString(),
                             latency,
                             200,
-                            roomId
+                            broadcastNode.path("roomId").asInt(roomId)
                     ));
                 }
             }
@@ -182,6 +252,8 @@ public class WebSocketSenderTask implements Runnable {
 
     public int getSuccessfulCount() { return successfulMessages.get(); }
     public int getFailedCount() { return failedMessages.get(); }
+    public int getBatchedFrameCount() { return batchedFrames.get(); }
+    public int getBatchedMessageCount() { return batchedMessages.get(); }
     public List<Long> getLatencies() { return latencies; }
     public int getTotalConnections() { return totalConnections.get(); }
     public int getTotalReconnections() { return totalReconnections.get(); }
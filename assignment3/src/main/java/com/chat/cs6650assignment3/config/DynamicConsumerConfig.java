@@ -1,66 +1,146 @@
 package com.chat.cs6650assignment3.config;
 
+import com.chat.cs6650assignment3.consumerv3.ConsistentHashRing;
+import com.chat.cs6650assignment3.consumerv3.ConsumerAutoscaler;
+import com.chat.cs6650assignment3.consumerv3.ConsumerMembership;
+import com.chat.cs6650assignment3.consumerv3.MessagePersistenceService;
 import com.chat.cs6650assignment3.consumerv3.RabbitMQConsumerService;
+import com.chat.cs6650assignment3.consumerv3.RoomPartitionedExecutor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.springframework.amqp.core.AcknowledgeMode;
-import org.springframework.amqp.core.AnonymousQueue;
-import org.springframework.amqp.core.BindingBuilder;
-import org.springframework.amqp.core.FanoutExchange;
+import org.springframework.amqp.core.DirectExchange;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitAdmin;
 import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.api.ChannelAwareBatchMessageListener;
+import org.springframework.amqp.rabbit.listener.api.ChannelAwareMessageListener;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Component
+@Profile("!inprocess")
 public class DynamicConsumerConfig implements ApplicationRunner {
 
     private static final int NUMBER_OF_ROOMS = 20;
+    private static final int VIRTUAL_NODES = 64;
+    private static final double LOAD_FACTOR = 1.25;
 
     @Value("${chat.consumer.thread-count}")
     private int threadCount;
 
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @Value("${chat.consumer.prefetch:200}")
+    private int prefetchCount;
+
+    @Value("${chat.consumer.sharding.enabled:false}")
+    private boolean shardingEnabled;
+
+    @Value("${chat.consumer.batch.enabled:false}")
+    private boolean batchEnabled;
+
+    @Value("${chat.consumer.batch.size:100}")
+    private int batchSize;
+
+    @Value("${chat.consumer.batch.receive-timeout-ms:10}")
+    private long batchReceiveTimeoutMs;
+
+    @Value("${chat.consumer.partitioned.drain-timeout-ms:10000}")
+    private long laneDrainTimeoutMs;
+
     private final ConnectionFactory connectionFactory;
     private final RabbitMQConsumerService consumerService;
     private final RabbitAdmin rabbitAdmin;
-    private final FanoutExchange fanoutExchange;
-    private final AnonymousQueue serverBroadcastQueue;
+    private final DirectExchange broadcastExchange;
+    private final ConsumerMembership membership;
+    private final ConsumerAutoscaler autoscaler;
+    private final MessagePersistenceService persistenceService;
+    private final RoomPartitionedExecutor partitionedExecutor;
+
+    // Serializes rebalancing with backpressure pauses and shutdown.
+    private final Object lifecycleLock = new Object();
+    private boolean paused;
+    private final Map<Integer, SimpleMessageListenerContainer> containers = new ConcurrentHashMap<>();
+    // Queues each container consumes; guarded by lifecycleLock.
+    private final Map<Integer, Set<String>> assignedQueues = new HashMap<>();
+    private ConsistentHashRing<Integer> containerRing;
+    private volatile int ownedRooms;
+    private final Counter rebalanceCounter;
+    private final Counter containerRestartCounter;
 
     public DynamicConsumerConfig(ConnectionFactory connectionFactory,
                                  RabbitAdmin rabbitAdmin,
                                  RabbitMQConsumerService consumerService,
-                                 FanoutExchange fanoutExchange,
-                                 AnonymousQueue serverBroadcastQueue) {
+                                 DirectExchange broadcastExchange,
+                                 ConsumerMembership membership,
+                                 ConsumerAutoscaler autoscaler,
+                                 MessagePersistenceService persistenceService,
+                                 RoomPartitionedExecutor partitionedExecutor,
+                                 MeterRegistry meterRegistry) {
         this.connectionFactory = connectionFactory;
         this.consumerService = consumerService;
         this.rabbitAdmin = rabbitAdmin;
-        this.fanoutExchange = fanoutExchange;
-        this.serverBroadcastQueue = serverBroadcastQueue;
+        this.broadcastExchange = broadcastExchange;
+        this.membership = membership;
+        this.autoscaler = autoscaler;
+        this.persistenceService = persistenceService;
+        this.partitionedExecutor = partitionedExecutor;
+
+        this.rebalanceCounter = Counter.builder("chat.consumer.sharding.rebalances").register(meterRegistry);
+        this.containerRestartCounter = Counter.builder("chat.consumer.sharding.container.restarts")
+                .description("Listener containers restarted because their rooms changed")
+                .register(meterRegistry);
+        Gauge.builder("chat.consumer.sharding.rooms", this, c -> c.ownedRooms)
+                .description("Room queues this node consumes in sharded mode")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        List<Integer> indexes = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            indexes.add(i);
+        }
+        containerRing = new ConsistentHashRing<>(indexes, VIRTUAL_NODES);
+        persistenceService.onBackpressure(this::pauseContainers, this::resumeContainers);
     }
 
     @Override
     public void run(ApplicationArguments args) throws Exception {
         System.out.println("--- Starting Dynamic RabbitMQ Consumer Configuration ---");
 
-        System.out.println("Manually declaring fanout exchange and binding...");
+        System.out.println("Manually declaring broadcast exchange...");
 
-        rabbitAdmin.declareExchange(this.fanoutExchange);
+        // Room bindings for this node's broadcast queue are managed by RoomBindingManager
+        // as sessions join and leave rooms.
+        rabbitAdmin.declareExchange(this.broadcastExchange);
 
-        String queueName = this.serverBroadcastQueue.getName();
+        System.out.println("Broadcast exchange " + broadcastExchange.getName() + " is declared.");
 
-        var binding = BindingBuilder
-                .bind(new org.springframework.amqp.core.Queue(queueName))
-                .to(this.fanoutExchange);
-
-        rabbitAdmin.declareBinding(binding);
-
-        System.out.println("Binding of queue " + queueName + " to exchange " + fanoutExchange.getName() + " is complete.");
+        if (shardingEnabled) {
+            System.out.println("Room sharding enabled; node " + membership.nodeName()
+                    + " will consume its share of the room queues once membership settles.");
+            membership.start(this::rebalance);
+            System.out.println("--- Dynamic RabbitMQ Consumer Configuration Complete ---");
+            return;
+        }
 
         Map<Integer, List<String>> threadQueueMap = new HashMap<>();
         for (int i = 1; i <= NUMBER_OF_ROOMS; i++) {
@@ -77,16 +157,162 @@ public class DynamicConsumerConfig implements ApplicationRunner {
 
             System.out.println("Creating and starting consumer thread " + i + " for queues: " + queuesForThisThread);
 
-            SimpleMessageListenerContainer container = new SimpleMessageListenerContainer();
-            container.setConnectionFactory(connectionFactory);
-            container.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+            SimpleMessageListenerContainer container = createContainer(i);
             container.setQueueNames(queuesForThisThread.toArray(new String[0]));
-            container.setPrefetchCount(200);
-            container.setMessageListener(consumerService);
-            container.setBeanName("RoomConsumer-" + i);
-            container.start();
+            synchronized (lifecycleLock) {
+                containers.put(i, container);
+                assignedQueues.put(i, Set.copyOf(queuesForThisThread));
+                if (!paused) {
+                    container.start();
+                }
+            }
         }
 
         System.out.println("--- Dynamic RabbitMQ Consumer Configuration Complete ---");
     }
-}
\ No newline at end of file
+
+    /**
+     * Sharded mode, called on the heartbeat thread whenever membership changes. Rooms are
+     * hashed onto nodes, and this node's rooms onto its containers; only containers whose set
+     * of queues changed are stopped and restarted, so rooms that stay put keep consuming.
+     */
+    private void rebalance(Set<String> members) {
+        synchronized (lifecycleLock) {
+            rebalanceLocked(members);
+        }
+    }
+
+    private void rebalanceLocked(Set<String> members) {
+        List<String> allQueues = new ArrayList<>();
+        for (int i = 1; i <= NUMBER_OF_ROOMS; i++) {
+            allQueues.add(RabbitMQConfig.QUEUE_NAME_PREFIX + i);
+        }
+        Map<String, String> nodeOf = new ConsistentHashRing<>(members, VIRTUAL_NODES).assign(allQueues, LOAD_FACTOR);
+        List<String> ownedQueues = new ArrayList<>();
+        for (String queueName : allQueues) {
+            if (membership.nodeName().equals(nodeOf.get(queueName))) {
+                ownedQueues.add(queueName);
+            }
+        }
+        Map<Integer, Set<String>> target = new HashMap<>();
+        containerRing.assign(ownedQueues, LOAD_FACTOR).forEach((queueName, index) ->
+                target.computeIfAbsent(index, k -> new TreeSet<>()).add(queueName));
+        int owned = ownedQueues.size();
+
+        int restarted = 0;
+        for (int i = 0; i < threadCount; i++) {
+            Set<String> queues = target.getOrDefault(i, Set.of());
+            if (queues.equals(assignedQueues.getOrDefault(i, Set.of()))) {
+                continue;
+            }
+            SimpleMessageListenerContainer container = containers.computeIfAbsent(i, this::createContainer);
+            // Lets in-flight deliveries finish and be acked before the queues change hands.
+            stopContainer(i, container);
+            if (!queues.isEmpty()) {
+                container.setQueueNames(queues.toArray(new String[0]));
+                if (!paused) {
+                    container.start();
+                }
+            }
+            assignedQueues.put(i, queues);
+            restarted++;
+        }
+        ownedRooms = owned;
+        rebalanceCounter.increment();
+        containerRestartCounter.increment(restarted);
+        System.out.println("Rebalanced across " + members.size() + " consumer nodes: " + owned
+                + " rooms owned, " + restarted + " containers restarted");
+    }
+
+    private SimpleMessageListenerContainer createContainer(int index) {
+        SimpleMessageListenerContainer container = new SimpleMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        int prefetch = prefetchCount;
+        if (batchEnabled) {
+            // Up to batchSize deliveries or whatever arrived within batchReceiveTimeoutMs.
+            container.setConsumerBatchEnabled(true);
+            container.setBatchSize(batchSize);
+            container.setBatchReceiveTimeout(batchReceiveTimeoutMs);
+            prefetch = Math.max(prefetchCount, batchSize * 2);
+            container.setMessageListener((ChannelAwareBatchMessageListener) (messages, channel) -> {
+                long start = System.nanoTime();
+                try {
+                    consumerService.onMessageBatch(messages, channel);
+                } finally {
+                    autoscaler.recordBusy(index, System.nanoTime() - start);
+                }
+            });
+        } else {
+            container.setMessageListener((ChannelAwareMessageListener) (message, channel) -> {
+                long start = System.nanoTime();
+                try {
+                    consumerService.onMessage(message, channel);
+                } finally {
+                    autoscaler.recordBusy(index, System.nanoTime() - start);
+                }
+            });
+        }
+        container.setPrefetchCount(prefetch);
+        container.setBeanName("RoomConsumer-" + index);
+        if (virtualThreads) {
+            container.setTaskExecutor(new VirtualThreadTaskExecutor("RoomConsumer-" + index + "-"));
+        }
+        autoscaler.register(index, container, prefetch);
+        return container;
+    }
+
+    /**
+     * stop() lets in-flight listener calls finish, but then recovers whatever the container's
+     * channels have not acked. With partitioned lanes the listener returns before the work is
+     * done, so the lanes finish the container's queued tasks first; deliveries arriving
+     * meanwhile are requeued.
+     */
+    private void stopContainer(int index, SimpleMessageListenerContainer container) {
+        Set<String> queues = assignedQueues.getOrDefault(index, Set.of());
+        try {
+            if (!partitionedExecutor.drain(queues, laneDrainTimeoutMs)) {
+                System.out.println("Consumer lanes did not drain RoomConsumer-" + index + " within "
+                        + laneDrainTimeoutMs + " ms; its unfinished deliveries will be redelivered");
+            }
+            container.stop();
+        } finally {
+            partitionedExecutor.resume(queues);
+        }
+    }
+
+    /**
+     * Backpressure from the write buffer. Stopping lets in-flight deliveries finish and
+     * cancels the consumers, so the rooms' messages wait in RabbitMQ instead of being dropped.
+     */
+    private void pauseContainers() {
+        synchronized (lifecycleLock) {
+            paused = true;
+            containers.forEach(this::stopContainer);
+        }
+    }
+
+    private void resumeContainers() {
+        synchronized (lifecycleLock) {
+            paused = false;
+            containers.forEach((index, container) -> {
+                if (!assignedQueues.getOrDefault(index, Set.of()).isEmpty()) {
+                    container.start();
+                }
+            });
+        }
+    }
+
+    /**
+     * Stops consuming before ConsumerMembership announces this node is leaving, so the rooms'
+     * new owners don't overlap with this node.
+     */
+    @PreDestroy
+    public void stopContainers() {
+        synchronized (lifecycleLock) {
+            // Also keeps a late resume or rebalance from starting them again.
+            paused = true;
+            containers.forEach(this::stopContainer);
+        }
+    }
+}
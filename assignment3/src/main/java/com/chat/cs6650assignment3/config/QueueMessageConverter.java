@@ -0,0 +1,65 @@
+package com.chat.cs6650assignment3.config;
+
+import com.chat.cs6650assignment3.model.QueueMessage;
+import com.chat.cs6650assignment3.model.QueueMessageBatch;
+import com.chat.cs6650assignment3.model.QueueMessageCodec;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import java.io.IOException;
+
+/**
+ * Converter for the room queues. With chat.rabbitmq.message-format=binary, QueueMessages and
+ * QueueMessageBatches are written with QueueMessageCodec; otherwise, and for any other
+ * payload, it defers to the JSON converter. Reading accepts both formats, chosen by content
+ * type, so nodes can be switched one at a time.
+ */
+public class QueueMessageConverter implements MessageConverter {
+
+    public static final String BINARY_CONTENT_TYPE = "application/x-chat-queue-message";
+
+    private final MessageConverter jsonConverter;
+    private final ObjectMapper objectMapper;
+    private final boolean binary;
+    private final int compressThreshold;
+
+    public QueueMessageConverter(MessageConverter jsonConverter, ObjectMapper objectMapper,
+                                 boolean binary, int compressThreshold) {
+        this.jsonConverter = jsonConverter;
+        this.objectMapper = objectMapper;
+        this.binary = binary;
+        this.compressThreshold = compressThreshold;
+    }
+
+    @Override
+    public Message toMessage(Object object, MessageProperties messageProperties) {
+        if (!binary || !(object instanceof QueueMessage || object instanceof QueueMessageBatch)) {
+            return jsonConverter.toMessage(object, messageProperties);
+        }
+        byte[] body = QueueMessageCodec.encode(object, compressThreshold);
+        messageProperties.setContentType(BINARY_CONTENT_TYPE);
+        messageProperties.setContentLength(body.length);
+        return new Message(body, messageProperties);
+    }
+
+    /**
+     * Returns a QueueMessage, or a QueueMessageBatch for envelopes.
+     */
+    @Override
+    public Object fromMessage(Message message) {
+        MessageProperties properties = message.getMessageProperties();
+        try {
+            if (BINARY_CONTENT_TYPE.equals(properties.getContentType())) {
+                return QueueMessageCodec.decode(message.getBody());
+            }
+            Class<?> type = properties.getHeader(RabbitMQConfig.BATCH_SIZE_HEADER) != null
+                    ? QueueMessageBatch.class : QueueMessage.class;
+            return objectMapper.readValue(message.getBody(), type);
+        } catch (IOException | RuntimeException e) {
+            throw new MessageConversionException("Cannot read queue message", e);
+        }
+    }
+}
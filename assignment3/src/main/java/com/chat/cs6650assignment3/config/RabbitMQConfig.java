@@ -1,13 +1,16 @@
 package com.chat.cs6650assignment3.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.amqp.core.*;
 import org.springframework.amqp.rabbit.annotation.EnableRabbit;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitAdmin;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -16,9 +19,14 @@ import java.util.List;
 @EnableRabbit
 public class RabbitMQConfig {
     public static final String TOPIC_EXCHANGE_NAME = "chat.exchange";
-    public static final String FANOUT_EXCHANGE_NAME = "chat.broadcast.exchange";
+    public static final String BROADCAST_EXCHANGE_NAME = "chat.broadcast.rooms";
     public static final String QUEUE_NAME_PREFIX = "room.";
     public static final String ROUTING_KEY_PREFIX = "room.";
+    public static final String ROOM_ID_HEADER = "roomId";
+    /** Set on QueueMessageBatch envelopes; the value is the number of messages inside. */
+    public static final String BATCH_SIZE_HEADER = "x-chat-batch-size";
+    /** Fanout exchange consumer nodes heartbeat on when room sharding is enabled. */
+    public static final String CONSUMER_HEARTBEAT_EXCHANGE_NAME = "chat.consumer.heartbeat";
     private static final int NUMBER_OF_ROOMS = 20;
 
     private static final int MESSAGE_TTL_MS = 360000;
@@ -49,9 +57,13 @@ public class RabbitMQConfig {
         return new Declarables(declarables);
     }
 
+    /**
+     * Broadcasts are routed by room (routing key room.N); each node binds its broadcast queue
+     * only for rooms with local sessions, see RoomBindingManager.
+     */
     @Bean
-    public FanoutExchange fanoutExchange() {
-        return new FanoutExchange(FANOUT_EXCHANGE_NAME);
+    public DirectExchange broadcastExchange() {
+        return new DirectExchange(BROADCAST_EXCHANGE_NAME);
     }
 
     @Bean
@@ -65,7 +77,21 @@ public class RabbitMQConfig {
     }
 
     @Bean
+    @Primary
     public MessageConverter jsonMessageConverter() {
         return new Jackson2JsonMessageConverter();
     }
+
+    /**
+     * Used for the room queues only. Broadcasts stay JSON because their bodies are forwarded
+     * to WebSocket clients as they are.
+     */
+    @Bean
+    public QueueMessageConverter queueMessageConverter(MessageConverter jsonMessageConverter,
+                                                       ObjectMapper objectMapper,
+                                                       @Value("${chat.rabbitmq.message-format:json}") String format,
+                                                       @Value("${chat.rabbitmq.binary.compress-threshold:512}") int compressThreshold) {
+        return new QueueMessageConverter(jsonMessageConverter, objectMapper, "binary".equalsIgnoreCase(format),
+                compressThreshold);
+    }
 }
\ No newline at end of file
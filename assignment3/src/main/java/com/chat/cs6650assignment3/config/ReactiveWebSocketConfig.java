@@ -0,0 +1,33 @@
+package com.chat.cs6650assignment3.config;
+
+import com.chat.cs6650assignment3.serverreactive.ReactiveChatWebSocketHandler;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.reactive.handler.SimpleUrlHandlerMapping;
+
+import java.util.Map;
+
+/**
+ * WebSocket endpoints for the "reactive" profile, served by Reactor Netty instead of Tomcat.
+ * Tomcat is still on the classpath for the default profile, so the Netty factory is declared
+ * explicitly; otherwise Boot would run the reactive stack on Tomcat.
+ */
+@Configuration
+@Profile("reactive")
+public class ReactiveWebSocketConfig {
+
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    @Bean
+    public HandlerMapping webSocketHandlerMapping(ReactiveChatWebSocketHandler chatWebSocketHandler) {
+        return new SimpleUrlHandlerMapping(Map.of(
+                "/chat/{roomId}", chatWebSocketHandler,
+                ReactiveChatWebSocketHandler.MULTIPLEXED_PATH, chatWebSocketHandler), -1);
+    }
+}
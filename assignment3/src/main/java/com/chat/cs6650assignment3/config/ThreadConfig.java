@@ -1,7 +1,9 @@
 package com.chat.cs6650assignment3.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
@@ -11,8 +13,17 @@ import java.util.concurrent.Executor;
 @EnableAsync
 public class ThreadConfig {
 
+    // Same switch Boot uses for Tomcat, @RabbitListener containers and @Async/@Scheduled.
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
     @Bean(name = "dbWriterPool")
     public Executor dbWriterPool() {
+        if (virtualThreads) {
+            // Keeps the old cap of 50 concurrent DynamoDB writes; the coordinator waits for a
+            // slot instead of the batch being rejected once a queue fills up.
+            return virtualThreadExecutor("DB-Writer-", 50);
+        }
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
         executor.setCorePoolSize(10);
         executor.setMaxPoolSize(50);
@@ -24,6 +35,9 @@ public class ThreadConfig {
 
     @Bean(name = "statsPool")
     public Executor statsPool() {
+        if (virtualThreads) {
+            return virtualThreadExecutor("Stats-Calc-", 10);
+        }
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
         executor.setCorePoolSize(5);
         executor.setMaxPoolSize(10);
@@ -32,4 +46,25 @@ public class ThreadConfig {
         executor.initialize();
         return executor;
     }
-}
\ No newline at end of file
+
+    @Bean(name = "outboundSendPool")
+    public Executor outboundSendPool(@Value("${chat.ws.outbound.drain-threads:16}") int drainThreads) {
+        if (virtualThreads) {
+            // Unbounded: each session has at most one drainer, and enqueuers must never wait.
+            return virtualThreadExecutor("WS-Outbound-", SimpleAsyncTaskExecutor.UNBOUNDED_CONCURRENCY);
+        }
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(drainThreads);
+        executor.setMaxPoolSize(drainThreads);
+        executor.setThreadNamePrefix("WS-Outbound-");
+        executor.initialize();
+        return executor;
+    }
+
+    private static Executor virtualThreadExecutor(String threadNamePrefix, int concurrencyLimit) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(threadNamePrefix);
+        executor.setVirtualThreads(true);
+        executor.setConcurrencyLimit(concurrencyLimit);
+        return executor;
+    }
+}
@@ -1,21 +1,30 @@
 package com.chat.cs6650assignment3.config;
 
+import com.chat.cs6650assignment3.model.BinaryMessageCodec;
 import com.chat.cs6650assignment3.serverv3.ChatWebSocketHandler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
 import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
 
 @Configuration
 @EnableWebSocket
+@Profile("!reactive")
 public class WebSocketConfig implements WebSocketConfigurer {
     @Autowired
     private ChatWebSocketHandler chatWebSocketHandler;
 
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
-        registry.addHandler(chatWebSocketHandler, "/chat/{roomId}")
+        DefaultHandshakeHandler handshakeHandler = new DefaultHandshakeHandler();
+        handshakeHandler.setSupportedProtocols(BinaryMessageCodec.SUBPROTOCOL, BinaryMessageCodec.JSON_SUBPROTOCOL);
+
+        // /chat/{roomId} is one room per connection; /chat multiplexes rooms via subscribe/unsubscribe frames.
+        registry.addHandler(chatWebSocketHandler, "/chat/{roomId}", ChatWebSocketHandler.MULTIPLEXED_PATH)
+                .setHandshakeHandler(handshakeHandler)
                 .setAllowedOrigins("*");
     }
 }
@@ -2,12 +2,20 @@ package com.chat.cs6650assignment3.consumerv3;
 
 import com.chat.cs6650assignment3.config.RabbitMQConfig;
 import com.chat.cs6650assignment3.model.QueueMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
+
 @Service
 public class BroadcastPublisherService {
 
+    private static final Logger logger = LoggerFactory.getLogger(BroadcastPublisherService.class);
+
     private final RabbitTemplate rabbitTemplate;
 
     public BroadcastPublisherService(RabbitTemplate rabbitTemplate) {
@@ -15,6 +23,34 @@ public class BroadcastPublisherService {
     }
 
     public void publishBroadcast(QueueMessage message) {
-        rabbitTemplate.convertAndSend(RabbitMQConfig.FANOUT_EXCHANGE_NAME, "", message);
+        send(rabbitTemplate, message);
+    }
+
+    /**
+     * Publishes the messages in order on one channel instead of checking a channel out of the
+     * cache per message. Returns how many were sent before the first failure.
+     */
+    public int publishBroadcasts(List<QueueMessage> messages) {
+        int[] sent = {0};
+        try {
+            rabbitTemplate.invoke(operations -> {
+                for (QueueMessage message : messages) {
+                    send(operations, message);
+                    sent[0]++;
+                }
+                return null;
+            });
+        } catch (AmqpException e) {
+            logger.error("Broadcast failed after {} of {} messages were sent", sent[0], messages.size(), e);
+        }
+        return sent[0];
+    }
+
+    private void send(RabbitOperations operations, QueueMessage message) {
+        String routingKey = RabbitMQConfig.ROUTING_KEY_PREFIX + message.getRoomId();
+        operations.convertAndSend(RabbitMQConfig.BROADCAST_EXCHANGE_NAME, routingKey, message, amqpMessage -> {
+            amqpMessage.getMessageProperties().setHeader(RabbitMQConfig.ROOM_ID_HEADER, message.getRoomId());
+            return amqpMessage;
+        });
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,82 @@
+package com.chat.cs6650assignment3.consumerv3;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable consistent-hash ring. Each member is placed at virtualNodes points; a key belongs
+ * to the first member point at or after its hash, so adding or removing a member only moves
+ * the keys next to that member's points.
+ *
+ * With as few keys as there are rooms, plain ownership is lumpy, so each member's load is also
+ * capped (consistent hashing with bounded loads): a key whose owner is full walks on clockwise
+ * to the next member with room.
+ */
+public final class ConsistentHashRing<T> {
+
+    private final TreeMap<Long, T> ring = new TreeMap<>();
+
+    public ConsistentHashRing(Collection<T> members, int virtualNodes) {
+        for (T member : members) {
+            for (int i = 0; i < virtualNodes; i++) {
+                // On a hash collision the point goes to the same member whatever the members' order.
+                ring.merge(hash(member + "#" + i), member,
+                        (a, b) -> a.toString().compareTo(b.toString()) <= 0 ? a : b);
+            }
+        }
+    }
+
+    /**
+     * Assigns every key, giving no member more than ceil(loadFactor * keys / members) of them.
+     * The result depends only on the members and keys, so every node computes the same one.
+     */
+    public Map<String, T> assign(Collection<String> keys, double loadFactor) {
+        Map<String, T> assignment = new HashMap<>();
+        if (ring.isEmpty()) {
+            return assignment;
+        }
+        long members = ring.values().stream().distinct().count();
+        int capacity = (int) Math.ceil(loadFactor * keys.size() / members);
+        Map<T, Integer> load = new HashMap<>();
+        // Placing keys in hash order rather than the caller's order keeps the result stable.
+        List<String> ordered = new ArrayList<>(keys);
+        ordered.sort(Comparator.<String>comparingLong(ConsistentHashRing::hash).thenComparing(Comparator.naturalOrder()));
+        for (String key : ordered) {
+            Map.Entry<Long, T> entry = ring.ceilingEntry(hash(key));
+            if (entry == null) {
+                entry = ring.firstEntry();
+            }
+            while (load.getOrDefault(entry.getValue(), 0) >= capacity) {
+                entry = ring.higherEntry(entry.getKey());
+                if (entry == null) {
+                    entry = ring.firstEntry();
+                }
+            }
+            load.merge(entry.getValue(), 1, Integer::sum);
+            assignment.put(key, entry.getValue());
+        }
+        return assignment;
+    }
+
+    /**
+     * 64-bit FNV-1a with a final avalanche step: String.hashCode clusters short keys like
+     * "room.1".."room.20" far too closely for a ring.
+     */
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
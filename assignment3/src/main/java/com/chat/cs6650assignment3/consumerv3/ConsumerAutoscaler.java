@@ -0,0 +1,290 @@
+package com.chat.cs6650assignment3.consumerv3;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Resizes each room-consumer container from its backlog. Every interval it reads the depth of
+ * the container's queues through RabbitAdmin.getQueueInfo and how busy its consumers were
+ * (listener time over wall time per consumer). A container that has been over depth-high or
+ * util-high for up-ticks intervals in a row doubles its consumers and prefetch; one under both
+ * depth-low and util-low for down-ticks intervals drops a consumer and halves its prefetch.
+ * The separate thresholds and streaks keep it from flapping around one value.
+ *
+ * Prefetch is applied to consumers as they start, so it follows the consumer count; more than
+ * one consumer on a container means its rooms are no longer processed strictly in order.
+ *
+ * With room-partitioned lanes the listener only hands deliveries off, and the lanes keep rooms
+ * in order only if each queue has one consumer. Containers then stay at one consumer and only
+ * their prefetch is scaled, and utilization counts the lanes' time on the container's rooms,
+ * which can exceed 1 when several lanes work on them at once.
+ */
+@Component
+@Profile("!inprocess")
+public class ConsumerAutoscaler {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConsumerAutoscaler.class);
+    private static final int HISTORY_SIZE = 100;
+
+    public record Decision(Instant at, String container, List<String> queues, long depth, double utilization,
+                           int consumers, int prefetch, String action) {
+    }
+
+    private final class Scaled {
+        final String name;
+        final SimpleMessageListenerContainer container;
+        final int minPrefetch;
+        final LongAdder busyNanos = new LongAdder();
+        long lastBusyNanos;
+        int consumers;
+        int prefetch;
+        int upStreak;
+        int downStreak;
+        volatile long depth;
+        volatile double utilization;
+        volatile Decision last;
+
+        Scaled(String name, SimpleMessageListenerContainer container, int prefetch) {
+            this.name = name;
+            this.container = container;
+            this.minPrefetch = prefetch;
+            this.prefetch = prefetch;
+            this.consumers = minConsumers;
+        }
+    }
+
+    private final RabbitAdmin rabbitAdmin;
+    private final MeterRegistry meterRegistry;
+    private final RoomPartitionedExecutor partitionedExecutor;
+    private final boolean enabled;
+    private final boolean prefetchOnly;
+    private final long intervalMs;
+    private final int minConsumers;
+    private final int maxConsumers;
+    private final int maxPrefetch;
+    private final long depthHigh;
+    private final long depthLow;
+    private final double utilHigh;
+    private final double utilLow;
+    private final int upTicks;
+    private final int downTicks;
+
+    private final Map<Integer, Scaled> containers = new ConcurrentHashMap<>();
+    private final ArrayDeque<Decision> history = new ArrayDeque<>();
+    private final Counter scaleUpCounter;
+    private final Counter scaleDownCounter;
+    private final ScheduledExecutorService scheduler;
+
+    public ConsumerAutoscaler(RabbitAdmin rabbitAdmin,
+                              MeterRegistry meterRegistry,
+                              RoomPartitionedExecutor partitionedExecutor,
+                              @Value("${chat.consumer.autoscale.enabled:false}") boolean enabled,
+                              @Value("${chat.consumer.autoscale.interval-ms:5000}") long intervalMs,
+                              @Value("${chat.consumer.autoscale.min-consumers:1}") int minConsumers,
+                              @Value("${chat.consumer.autoscale.max-consumers:4}") int maxConsumers,
+                              @Value("${chat.consumer.autoscale.max-prefetch:1000}") int maxPrefetch,
+                              @Value("${chat.consumer.autoscale.depth-high:1000}") long depthHigh,
+                              @Value("${chat.consumer.autoscale.depth-low:100}") long depthLow,
+                              @Value("${chat.consumer.autoscale.util-high:0.8}") double utilHigh,
+                              @Value("${chat.consumer.autoscale.util-low:0.3}") double utilLow,
+                              @Value("${chat.consumer.autoscale.up-ticks:2}") int upTicks,
+                              @Value("${chat.consumer.autoscale.down-ticks:6}") int downTicks) {
+        this.rabbitAdmin = rabbitAdmin;
+        this.meterRegistry = meterRegistry;
+        this.partitionedExecutor = partitionedExecutor;
+        this.enabled = enabled;
+        this.prefetchOnly = partitionedExecutor.isEnabled();
+        this.intervalMs = intervalMs;
+        this.minConsumers = prefetchOnly ? 1 : minConsumers;
+        this.maxConsumers = prefetchOnly ? 1 : maxConsumers;
+        if (enabled && prefetchOnly && (minConsumers != 1 || maxConsumers != 1)) {
+            logger.warn("Room-partitioned lanes need one consumer per queue; autoscaling prefetch only "
+                    + "and ignoring min-consumers {} / max-consumers {}", minConsumers, maxConsumers);
+        }
+        this.maxPrefetch = maxPrefetch;
+        this.depthHigh = depthHigh;
+        this.depthLow = depthLow;
+        this.utilHigh = utilHigh;
+        this.utilLow = utilLow;
+        this.upTicks = upTicks;
+        this.downTicks = downTicks;
+
+        this.scaleUpCounter = meterRegistry.counter("chat.consumer.autoscale.decisions", "action", "up");
+        this.scaleDownCounter = meterRegistry.counter("chat.consumer.autoscale.decisions", "action", "down");
+        if (enabled) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "Consumer-Autoscaler"));
+            scheduler.scheduleWithFixedDelay(this::tick, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        } else {
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Called by DynamicConsumerConfig for every container it creates, before it starts.
+     */
+    public void register(int index, SimpleMessageListenerContainer container, int prefetch) {
+        Scaled scaled = new Scaled("RoomConsumer-" + index, container, prefetch);
+        containers.put(index, scaled);
+        if (!enabled) {
+            return;
+        }
+        container.setConcurrentConsumers(minConsumers);
+        Gauge.builder("chat.consumer.autoscale.consumers", scaled, s -> s.consumers)
+                .tag("container", scaled.name)
+                .register(meterRegistry);
+        Gauge.builder("chat.consumer.autoscale.prefetch", scaled, s -> s.prefetch)
+                .tag("container", scaled.name)
+                .register(meterRegistry);
+        Gauge.builder("chat.consumer.autoscale.depth", scaled, s -> s.depth)
+                .description("Messages ready in the container's room queues")
+                .tag("container", scaled.name)
+                .register(meterRegistry);
+        Gauge.builder("chat.consumer.autoscale.utilization", scaled, s -> s.utilization)
+                .description("Share of wall time the container's consumers spent in the listener")
+                .tag("container", scaled.name)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Listener time for a container's utilization; DynamicConsumerConfig wraps each listener.
+     */
+    public void recordBusy(int index, long nanos) {
+        Scaled scaled = containers.get(index);
+        if (scaled != null) {
+            scaled.busyNanos.add(nanos);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Latest reading per container, including those left unchanged.
+     */
+    public List<Decision> current() {
+        List<Decision> current = new ArrayList<>();
+        for (Scaled scaled : containers.values()) {
+            if (scaled.last != null) {
+                current.add(scaled.last);
+            }
+        }
+        return current;
+    }
+
+    /**
+     * The last scale-ups and scale-downs, oldest first.
+     */
+    public List<Decision> history() {
+        synchronized (history) {
+            return new ArrayList<>(history);
+        }
+    }
+
+    void tick() {
+        for (Scaled scaled : containers.values()) {
+            try {
+                evaluate(scaled);
+            } catch (Exception e) {
+                logger.error("Autoscaling {} failed", scaled.name, e);
+            }
+        }
+    }
+
+    private void evaluate(Scaled scaled) {
+        List<String> queues = List.of(scaled.container.getQueueNames());
+        if (partitionedExecutor.isEnabled()) {
+            scaled.busyNanos.add(partitionedExecutor.takeBusyNanos(queues));
+        }
+        long busy = scaled.busyNanos.sum();
+        double utilization = (busy - scaled.lastBusyNanos)
+                / (TimeUnit.MILLISECONDS.toNanos(intervalMs) * (double) scaled.consumers);
+        scaled.lastBusyNanos = busy;
+        if (!scaled.container.isRunning()) {
+            // Sharding left it without rooms; start from the bottom if it gets some again.
+            scaled.upStreak = 0;
+            scaled.downStreak = 0;
+            return;
+        }
+
+        long depth = 0;
+        for (String queue : queues) {
+            QueueInformation info = rabbitAdmin.getQueueInfo(queue);
+            if (info != null) {
+                depth += info.getMessageCount();
+            }
+        }
+        scaled.depth = depth;
+        scaled.utilization = utilization;
+
+        boolean hot = depth > depthHigh || utilization > utilHigh;
+        boolean cold = depth < depthLow && utilization < utilLow;
+        scaled.upStreak = hot ? scaled.upStreak + 1 : 0;
+        scaled.downStreak = cold ? scaled.downStreak + 1 : 0;
+
+        String action = "hold";
+        boolean canGrow = prefetchOnly ? scaled.prefetch < maxPrefetch : scaled.consumers < maxConsumers;
+        boolean canShrink = prefetchOnly ? scaled.prefetch > scaled.minPrefetch : scaled.consumers > minConsumers;
+        if (scaled.upStreak >= upTicks && canGrow) {
+            resize(scaled, Math.min(maxConsumers, scaled.consumers * 2), Math.min(maxPrefetch, scaled.prefetch * 2));
+            scaleUpCounter.increment();
+            action = "up";
+        } else if (scaled.downStreak >= downTicks && canShrink) {
+            resize(scaled, Math.max(minConsumers, scaled.consumers - 1), Math.max(scaled.minPrefetch, scaled.prefetch / 2));
+            scaleDownCounter.increment();
+            action = "down";
+        }
+
+        Decision decision = new Decision(Instant.now(), scaled.name, queues, depth, utilization,
+                scaled.consumers, scaled.prefetch, action);
+        scaled.last = decision;
+        if (!"hold".equals(action)) {
+            scaled.upStreak = 0;
+            scaled.downStreak = 0;
+            logger.info("Scaled {} {} to {} consumers, prefetch {} (depth {}, utilization {})",
+                    scaled.name, action, scaled.consumers, scaled.prefetch, depth, String.format("%.2f", utilization));
+            synchronized (history) {
+                if (history.size() == HISTORY_SIZE) {
+                    history.removeFirst();
+                }
+                history.addLast(decision);
+            }
+        }
+    }
+
+    private void resize(Scaled scaled, int consumers, int prefetch) {
+        // Prefetch first, so the consumers started by setConcurrentConsumers pick it up.
+        scaled.container.setPrefetchCount(prefetch);
+        scaled.container.setConcurrentConsumers(consumers);
+        scaled.consumers = consumers;
+        scaled.prefetch = prefetch;
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+}
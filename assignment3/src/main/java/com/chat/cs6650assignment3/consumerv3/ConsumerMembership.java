@@ -0,0 +1,180 @@
+package com.chat.cs6650assignment3.consumerv3;
+
+import com.chat.cs6650assignment3.config.RabbitMQConfig;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.core.AnonymousQueue;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.FanoutExchange;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageBuilder;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Tracks the live consumer nodes through a fanout heartbeat exchange on the existing broker:
+ * every node publishes its name every interval-ms and listens on its own exclusive queue. A
+ * node not heard from for timeout-ms is dropped; one that shuts down cleanly says so and is
+ * dropped at once. Membership changes are reported on the heartbeat thread.
+ */
+@Component
+@Profile("!inprocess")
+public class ConsumerMembership {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConsumerMembership.class);
+    private static final String LEAVING_HEADER = "x-chat-leaving";
+
+    private final String nodeName;
+    private final RabbitAdmin rabbitAdmin;
+    private final RabbitTemplate rabbitTemplate;
+    private final ConnectionFactory connectionFactory;
+    private final long intervalMs;
+    private final long timeoutMs;
+
+    private final FanoutExchange exchange =
+            new FanoutExchange(RabbitMQConfig.CONSUMER_HEARTBEAT_EXCHANGE_NAME, false, false);
+    private final AnonymousQueue queue = new AnonymousQueue();
+    private final ConcurrentHashMap<String, Long> lastSeen = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "Consumer-Heartbeat"));
+
+    private SimpleMessageListenerContainer container;
+    private Consumer<Set<String>> onChange;
+    private volatile Set<String> members = Set.of();
+    private long startedAt;
+
+    public ConsumerMembership(RabbitAdmin rabbitAdmin,
+                              RabbitTemplate rabbitTemplate,
+                              ConnectionFactory connectionFactory,
+                              MeterRegistry meterRegistry,
+                              @Value("${chat.consumer.sharding.node-name:}") String nodeName,
+                              @Value("${chat.consumer.sharding.heartbeat-interval-ms:1000}") long intervalMs,
+                              @Value("${chat.consumer.sharding.heartbeat-timeout-ms:5000}") long timeoutMs) {
+        this.nodeName = nodeName.isBlank() ? "consumer-" + UUID.randomUUID().toString().substring(0, 8) : nodeName;
+        this.rabbitAdmin = rabbitAdmin;
+        this.rabbitTemplate = rabbitTemplate;
+        this.connectionFactory = connectionFactory;
+        this.intervalMs = intervalMs;
+        this.timeoutMs = timeoutMs;
+
+        Gauge.builder("chat.consumer.sharding.members", this, m -> m.members.size())
+                .description("Consumer nodes currently sharing the room queues")
+                .register(meterRegistry);
+    }
+
+    public String nodeName() {
+        return nodeName;
+    }
+
+    /**
+     * Starts heartbeating. onChange first fires after two intervals, once the other nodes'
+     * heartbeats have had time to arrive, so a joining node doesn't briefly claim every room.
+     */
+    public void start(Consumer<Set<String>> onChange) {
+        this.onChange = onChange;
+        this.startedAt = System.currentTimeMillis();
+        declare();
+        // The queue is exclusive, so a reconnect loses it along with its binding.
+        connectionFactory.addConnectionListener(connection -> scheduler.execute(this::declare));
+
+        container = new SimpleMessageListenerContainer(connectionFactory);
+        container.setQueueNames(queue.getName());
+        container.setAcknowledgeMode(AcknowledgeMode.NONE);
+        container.setMissingQueuesFatal(false);
+        container.setMessageListener(this::onHeartbeat);
+        container.setBeanName("ConsumerHeartbeat");
+        container.start();
+
+        scheduler.scheduleAtFixedRate(this::tick, 0, intervalMs, TimeUnit.MILLISECONDS);
+        logger.info("Consumer node {} heartbeating every {} ms", nodeName, intervalMs);
+    }
+
+    private void declare() {
+        try {
+            rabbitAdmin.declareExchange(exchange);
+            rabbitAdmin.declareQueue(queue);
+            rabbitAdmin.declareBinding(BindingBuilder.bind(queue).to(exchange));
+        } catch (Exception e) {
+            logger.error("Failed to declare the consumer heartbeat queue", e);
+        }
+    }
+
+    private void onHeartbeat(Message message) {
+        String node = new String(message.getBody(), StandardCharsets.UTF_8);
+        if (Boolean.TRUE.equals(message.getMessageProperties().getHeader(LEAVING_HEADER))) {
+            lastSeen.remove(node);
+            scheduler.execute(this::evaluate);
+        } else {
+            lastSeen.put(node, System.currentTimeMillis());
+        }
+    }
+
+    private void tick() {
+        try {
+            send(false);
+        } catch (Exception e) {
+            logger.warn("Failed to send consumer heartbeat: {}", e.getMessage());
+        }
+        evaluate();
+    }
+
+    private void evaluate() {
+        long now = System.currentTimeMillis();
+        if (now - startedAt < 2 * intervalMs) {
+            return;
+        }
+        lastSeen.values().removeIf(seen -> now - seen > timeoutMs);
+        Set<String> current = new TreeSet<>(lastSeen.keySet());
+        // This node always counts itself, even while it cannot reach the broker.
+        current.add(nodeName);
+        if (!current.equals(members)) {
+            logger.info("Consumer membership changed: {} -> {}", members, current);
+            members = Set.copyOf(current);
+            try {
+                onChange.accept(members);
+            } catch (Exception e) {
+                logger.error("Rebalance after membership change failed", e);
+            }
+        }
+    }
+
+    private void send(boolean leaving) {
+        Message heartbeat = MessageBuilder.withBody(nodeName.getBytes(StandardCharsets.UTF_8))
+                .setHeader(LEAVING_HEADER, leaving)
+                .build();
+        rabbitTemplate.send(exchange.getName(), "", heartbeat);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+        if (container == null) {
+            return;
+        }
+        container.stop();
+        try {
+            send(true);
+        } catch (Exception e) {
+            logger.warn("Failed to announce that consumer node {} is leaving", nodeName, e);
+        }
+    }
+}
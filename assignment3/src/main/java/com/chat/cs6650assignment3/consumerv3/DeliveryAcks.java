@@ -0,0 +1,151 @@
+package com.chat.cs6650assignment3.consumerv3;
+
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * At-least-once acking (chat.consumer.at-least-once.enabled). Room-queue deliveries are
+ * tracked per channel from the moment they arrive; each is marked done once all of its messages
+ * are persisted, and the channel is acked with multiple=true up to the highest tag below which
+ * every tracked delivery is done. A delivery whose write fails is nacked and requeued on its own.
+ * Acks are sent from whichever thread finishes a write, so listener threads never wait on
+ * DynamoDB; how far they can run ahead is bounded by the prefetch.
+ */
+@Component
+public class DeliveryAcks {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeliveryAcks.class);
+
+    /**
+     * One delivery in flight. It starts with one unit held by whoever handles it; each message
+     * handed to persistence adds one. The delivery is done when every unit has completed, and
+     * requeued if any of them failed.
+     */
+    public final class Pending {
+        private final ChannelTags tags;
+        private final long tag;
+        private final AtomicInteger remaining = new AtomicInteger(1);
+        private volatile boolean failed;
+
+        private Pending(ChannelTags tags, long tag) {
+            this.tags = tags;
+            this.tag = tag;
+        }
+
+        public void expect() {
+            remaining.incrementAndGet();
+        }
+
+        public void complete() {
+            if (remaining.decrementAndGet() == 0) {
+                tags.finish(tag, !failed);
+            }
+        }
+
+        public void fail() {
+            failed = true;
+            if (remaining.decrementAndGet() == 0) {
+                tags.finish(tag, false);
+            }
+        }
+    }
+
+    private final class ChannelTags {
+        final Channel channel;
+        // Delivery tag -> done. Tags arrive in increasing order on a channel.
+        final TreeMap<Long, Boolean> outstanding = new TreeMap<>();
+
+        ChannelTags(Channel channel) {
+            this.channel = channel;
+        }
+
+        synchronized void add(long tag) {
+            outstanding.put(tag, false);
+        }
+
+        synchronized void finish(long tag, boolean persisted) {
+            if (!outstanding.containsKey(tag)) {
+                return;
+            }
+            try {
+                if (persisted) {
+                    outstanding.put(tag, true);
+                } else {
+                    outstanding.remove(tag);
+                    requeuedCounter.increment();
+                    channel.basicNack(tag, false, true);
+                }
+                long ackUpTo = -1;
+                while (!outstanding.isEmpty() && outstanding.firstEntry().getValue()) {
+                    ackUpTo = outstanding.pollFirstEntry().getKey();
+                }
+                if (ackUpTo >= 0) {
+                    channel.basicAck(ackUpTo, true);
+                }
+            } catch (Exception e) {
+                // The channel is gone and the broker requeues its unacked deliveries; the
+                // redeliveries are persisted again, which is idempotent.
+                logger.warn("Dropping ack state for a closed channel: {}", e.getMessage());
+                channels.remove(channel, this);
+            }
+        }
+
+        int size() {
+            return outstanding.size();
+        }
+    }
+
+    private final boolean enabled;
+    private final Map<Channel, ChannelTags> channels = new ConcurrentHashMap<>();
+    private final Counter requeuedCounter;
+
+    public DeliveryAcks(MeterRegistry meterRegistry,
+                        @Value("${chat.consumer.at-least-once.enabled:false}") boolean enabled) {
+        this.enabled = enabled;
+        this.requeuedCounter = Counter.builder("chat.consumer.ack.requeued")
+                .description("Deliveries nacked for redelivery because persisting them failed")
+                .register(meterRegistry);
+        Gauge.builder("chat.consumer.ack.pending", this, DeliveryAcks::pendingDeliveries)
+                .description("Room-queue deliveries received but not yet acked")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts tracking a delivery. Must be called on the listener thread, in delivery order,
+     * before any work for it is handed off.
+     */
+    public Pending track(Channel channel, long tag) {
+        ChannelTags tags = channels.computeIfAbsent(channel, this::register);
+        tags.add(tag);
+        return new Pending(tags, tag);
+    }
+
+    private ChannelTags register(Channel channel) {
+        ChannelTags tags = new ChannelTags(channel);
+        channel.addShutdownListener(cause -> channels.remove(channel, tags));
+        return tags;
+    }
+
+    private double pendingDeliveries() {
+        int pending = 0;
+        for (ChannelTags tags : channels.values()) {
+            pending += tags.size();
+        }
+        return pending;
+    }
+}
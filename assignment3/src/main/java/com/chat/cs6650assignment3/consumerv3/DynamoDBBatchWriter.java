@@ -9,6 +9,7 @@ import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.*;
@@ -33,24 +34,32 @@ public class DynamoDBBatchWriter {
     private final DlqService dlqService;
     private final Counter messagesWrittenCounter;
 
+    @Value("${chat.consumer.at-least-once.enabled:false}")
+    private boolean atLeastOnce;
+
     public DynamoDBBatchWriter(DynamoDbClient dynamoDbClient, DlqService dlqService, MeterRegistry registry) {
         this.dynamoDbClient = dynamoDbClient;
         this.dlqService = dlqService;
         this.messagesWrittenCounter = Counter.builder("db.messages.written.total").register(registry);
     }
 
+    /**
+     * Returns the messages DynamoDB left unprocessed (throttling), which were not written.
+     */
     @Timed(value = "db.write.batch")
     @CircuitBreaker(name = "dynamoDB", fallbackMethod = "fallbackWrite")
     @Retry(name = "dynamoDB")
-    public void writeLogicalBatch(List<QueueMessage> messages) {
+    public List<QueueMessage> writeLogicalBatch(List<QueueMessage> messages) {
         messagesWrittenCounter.increment(messages.size());
+        List<QueueMessage> unwritten = new ArrayList<>();
         List<List<QueueMessage>> chunks = Lists.partition(messages, DYNAMO_MAX_BATCH);
         for (List<QueueMessage> chunk : chunks) {
-            writePhysicalBatch(chunk);
+            unwritten.addAll(writePhysicalBatch(chunk));
         }
+        return unwritten;
     }
 
-    private void writePhysicalBatch(List<QueueMessage> chunk) {
+    private List<QueueMessage> writePhysicalBatch(List<QueueMessage> chunk) {
         List<WriteRequest> writeRequests = new ArrayList<>();
         for (QueueMessage msg : chunk) {
             Map<String, AttributeValue> item = new HashMap<>();
@@ -74,12 +83,31 @@ public class DynamoDBBatchWriter {
                 .requestItems(Map.of(TABLE_NAME, writeRequests)).build();
 
         BatchWriteItemResponse response = dynamoDbClient.batchWriteItem(batchRequest);
-        if (!response.unprocessedItems().isEmpty()) {
-            logger.warn("Partial failure: {} items unprocessed", response.unprocessedItems().get(TABLE_NAME).size());
+        if (response.unprocessedItems().isEmpty()) {
+            return List.of();
+        }
+        List<WriteRequest> unprocessed = response.unprocessedItems().get(TABLE_NAME);
+        logger.warn("Partial failure: {} items unprocessed", unprocessed.size());
+        Map<String, QueueMessage> byId = new HashMap<>();
+        for (QueueMessage msg : chunk) {
+            byId.put(msg.getMessageId(), msg);
         }
+        List<QueueMessage> unwritten = new ArrayList<>(unprocessed.size());
+        for (WriteRequest request : unprocessed) {
+            unwritten.add(byId.get(request.putRequest().item().get("messageId").s()));
+        }
+        return unwritten;
     }
 
-    public void fallbackWrite(List<QueueMessage> messages, Throwable t) {
+    /**
+     * In at-least-once mode the batch goes back to the caller so its deliveries are requeued;
+     * the in-memory DLQ would not survive a restart.
+     */
+    public List<QueueMessage> fallbackWrite(List<QueueMessage> messages, Throwable t) {
+        if (atLeastOnce) {
+            return messages;
+        }
         for (QueueMessage msg : messages) dlqService.sendToDlq(msg);
+        return List.of();
     }
 }
\ No newline at end of file
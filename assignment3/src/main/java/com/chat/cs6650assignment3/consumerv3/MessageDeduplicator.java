@@ -0,0 +1,225 @@
+package com.chat.cs6650assignment3.consumerv3;
+
+import com.chat.cs6650assignment3.model.MessageIdGenerator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Remembers recently processed message IDs for a fixed amount of memory. IDs go into the
+ * current of several generations, each an open-addressing table of longs; every
+ * horizon / (generations - 1) the oldest generation is cleared and becomes the current one,
+ * so any ID seen within the horizon is still present. Lookups are exact: no false positives.
+ *
+ * A generation that fills up before its time rotates early, which shortens the horizon
+ * actually covered (chat.dedup.horizon.effective) instead of growing the heap. The tables are
+ * split into stripes by ID so consumer threads rarely share a lock.
+ */
+@Component
+public class MessageDeduplicator {
+
+    private static final long EMPTY = 0;
+    private static final double MAX_LOAD = 0.75;
+
+    private static final class Stripe {
+        final ReentrantLock lock = new ReentrantLock();
+        final long[][] tables;
+        final int[] sizes;
+        final long[] startMillis;
+        int current;
+
+        Stripe(int generations, int slots, long now) {
+            this.tables = new long[generations][slots];
+            this.sizes = new int[generations];
+            this.startMillis = new long[generations];
+            Arrays.fill(startMillis, now);
+        }
+    }
+
+    private final Stripe[] stripes;
+    private final int slotsPerTable;
+    private final int maxEntriesPerTable;
+    private final long generationMillis;
+    private final long horizonMillis;
+
+    private final Counter timeRotationCounter;
+    private final Counter capacityRotationCounter;
+    private final Counter beyondHorizonCounter;
+
+    public MessageDeduplicator(MeterRegistry meterRegistry,
+                               @Value("${chat.dedup.horizon-ms:360000}") long horizonMillis,
+                               @Value("${chat.dedup.generations:4}") int generations,
+                               @Value("${chat.dedup.max-ids:2097152}") int maxIds,
+                               @Value("${chat.dedup.stripes:16}") int stripeCount) {
+        if (generations < 2) {
+            throw new IllegalArgumentException("chat.dedup.generations must be at least 2");
+        }
+        this.horizonMillis = horizonMillis;
+        this.generationMillis = Math.max(1, horizonMillis / (generations - 1));
+        int perTable = Math.max(16, maxIds / (stripeCount * generations));
+        this.slotsPerTable = Integer.highestOneBit((int) Math.ceil(perTable / MAX_LOAD) - 1) << 1;
+        this.maxEntriesPerTable = (int) (slotsPerTable * MAX_LOAD);
+
+        long now = System.currentTimeMillis();
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(generations, slotsPerTable, now);
+        }
+
+        this.timeRotationCounter = meterRegistry.counter("chat.dedup.rotations", "trigger", "time");
+        this.capacityRotationCounter = meterRegistry.counter("chat.dedup.rotations", "trigger", "capacity");
+        this.beyondHorizonCounter = Counter.builder("chat.dedup.beyond_horizon")
+                .description("Messages older than the dedup horizon; a redelivery of these may not be caught")
+                .register(meterRegistry);
+        Gauge.builder("chat.dedup.memory.bytes", this, d -> (double) d.stripes.length * generations * d.slotsPerTable * Long.BYTES)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("chat.dedup.entries", this, MessageDeduplicator::entries)
+                .register(meterRegistry);
+        Gauge.builder("chat.dedup.horizon.effective", this, MessageDeduplicator::effectiveHorizonMillis)
+                .description("How far back IDs are currently remembered")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Records the ID and returns true if it was not seen within the horizon.
+     */
+    public boolean firstSeen(long id) {
+        long now = System.currentTimeMillis();
+        if (now - MessageIdGenerator.timestampMillis(id) > horizonMillis) {
+            beyondHorizonCounter.increment();
+        }
+        Stripe stripe = stripeOf(id);
+        stripe.lock.lock();
+        try {
+            for (long[] table : stripe.tables) {
+                if (indexOf(table, id) >= 0) {
+                    return false;
+                }
+            }
+            if (now - stripe.startMillis[stripe.current] >= generationMillis) {
+                rotate(stripe, now);
+                timeRotationCounter.increment();
+            } else if (stripe.sizes[stripe.current] >= maxEntriesPerTable) {
+                rotate(stripe, now);
+                capacityRotationCounter.increment();
+            }
+            insert(stripe.tables[stripe.current], id);
+            stripe.sizes[stripe.current]++;
+            return true;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Drops the ID so a redelivery of a message that failed processing is not taken for a
+     * duplicate.
+     */
+    public void forget(long id) {
+        Stripe stripe = stripeOf(id);
+        stripe.lock.lock();
+        try {
+            for (int g = 0; g < stripe.tables.length; g++) {
+                if (remove(stripe.tables[g], id)) {
+                    stripe.sizes[g]--;
+                    return;
+                }
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    private void rotate(Stripe stripe, long now) {
+        int next = (stripe.current + 1) % stripe.tables.length;
+        Arrays.fill(stripe.tables[next], EMPTY);
+        stripe.sizes[next] = 0;
+        stripe.startMillis[next] = now;
+        stripe.current = next;
+    }
+
+    private Stripe stripeOf(long id) {
+        return stripes[(int) ((mix(id) >>> 32) % stripes.length)];
+    }
+
+    private int indexOf(long[] table, long id) {
+        int mask = table.length - 1;
+        for (int i = (int) mix(id) & mask; ; i = (i + 1) & mask) {
+            long slot = table[i];
+            if (slot == id) {
+                return i;
+            }
+            if (slot == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    private void insert(long[] table, long id) {
+        int mask = table.length - 1;
+        int i = (int) mix(id) & mask;
+        while (table[i] != EMPTY) {
+            i = (i + 1) & mask;
+        }
+        table[i] = id;
+    }
+
+    /**
+     * Linear-probing delete: shifts later entries of the same run back so lookups that
+     * would have passed over the removed slot still find them.
+     */
+    private boolean remove(long[] table, long id) {
+        int i = indexOf(table, id);
+        if (i < 0) {
+            return false;
+        }
+        int mask = table.length - 1;
+        int hole = i;
+        for (int j = (hole + 1) & mask; table[j] != EMPTY; j = (j + 1) & mask) {
+            int home = (int) mix(table[j]) & mask;
+            // Move the entry if its home slot is not in (hole, j], i.e. the hole is on its probe path.
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                table[hole] = table[j];
+                hole = j;
+            }
+        }
+        table[hole] = EMPTY;
+        return true;
+    }
+
+    /**
+     * Snowflake IDs of one node differ mostly in their low bits; spread them over the table.
+     */
+    static long mix(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    private double entries() {
+        long total = 0;
+        for (Stripe stripe : stripes) {
+            for (int size : stripe.sizes) {
+                total += size;
+            }
+        }
+        return total;
+    }
+
+    private double effectiveHorizonMillis() {
+        long now = System.currentTimeMillis();
+        long shortest = Long.MAX_VALUE;
+        for (Stripe stripe : stripes) {
+            // The generation after the current one is the oldest still held.
+            int oldest = (stripe.current + 1) % stripe.startMillis.length;
+            shortest = Math.min(shortest, now - stripe.startMillis[oldest]);
+        }
+        return shortest;
+    }
+}
@@ -1,6 +1,10 @@
 package com.chat.cs6650assignment3.consumerv3;
 
 import com.chat.cs6650assignment3.model.QueueMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
@@ -10,63 +14,175 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Service
 public class MessagePersistenceService {
 
     private static final Logger logger = LoggerFactory.getLogger(MessagePersistenceService.class);
+    private static final int BUFFER_CAPACITY = 50000;
 
-    private final BlockingQueue<QueueMessage> messageBuffer;
+    // delivery is set in at-least-once mode and told when the write succeeds or fails.
+    private record Entry(QueueMessage message, DeliveryAcks.Pending delivery) {
+    }
+
+    private final BlockingQueue<Entry> messageBuffer;
     private final DynamoDBBatchWriter writer;
     private final Executor dbWriterPool;
 
     private final Thread coordinatorThread;
     private volatile boolean running = true;
 
+    // Backpressure: pause above the high watermark, resume at or below the low one.
+    private final AtomicBoolean backpressure = new AtomicBoolean();
+    private final ExecutorService backpressureExecutor =
+            Executors.newSingleThreadExecutor(r -> new Thread(r, "Buffer-Backpressure"));
+    private volatile Runnable pauseConsumers = () -> { };
+    private volatile Runnable resumeConsumers = () -> { };
+    private volatile long backpressureSinceNanos;
+    private int highWatermark;
+    private int lowWatermark;
+    private final Counter highCrossings;
+    private final Counter lowCrossings;
+    private final Timer pauseTimer;
+    private final Counter droppedCounter;
+    private final Counter inlineWriteCounter;
+
     @Value("${chat.db.batch-size:100}")
     private int batchSize;
 
     @Value("${chat.db.flush-interval-ms:100}")
     private long flushIntervalMs;
 
+    @Value("${chat.db.backpressure.high-watermark:0.8}")
+    private double highWatermarkRatio;
+
+    @Value("${chat.db.backpressure.low-watermark:0.5}")
+    private double lowWatermarkRatio;
+
     public MessagePersistenceService(DynamoDBBatchWriter writer,
-                                     @Qualifier("dbWriterPool") Executor dbWriterPool) {
+                                     @Qualifier("dbWriterPool") Executor dbWriterPool,
+                                     MeterRegistry meterRegistry) {
         this.writer = writer;
         this.dbWriterPool = dbWriterPool;
-        this.messageBuffer = new LinkedBlockingQueue<>(50000);
+        this.messageBuffer = new LinkedBlockingQueue<>(BUFFER_CAPACITY);
         this.coordinatorThread = new Thread(this::processBufferLoop, "Buffer-Coordinator");
+
+        this.highCrossings = meterRegistry.counter("chat.persistence.backpressure.crossings", "watermark", "high");
+        this.lowCrossings = meterRegistry.counter("chat.persistence.backpressure.crossings", "watermark", "low");
+        this.pauseTimer = Timer.builder("chat.persistence.backpressure.pause")
+                .description("How long room consumers stayed paused for a full write buffer")
+                .register(meterRegistry);
+        this.droppedCounter = Counter.builder("chat.persistence.buffer.dropped")
+                .description("Messages not persisted because the write buffer was full")
+                .register(meterRegistry);
+        this.inlineWriteCounter = Counter.builder("chat.persistence.writer.inline")
+                .description("Batches written on the coordinator thread because the writer pool was saturated")
+                .register(meterRegistry);
+        Gauge.builder("chat.persistence.buffer.size", messageBuffer, BlockingQueue::size)
+                .register(meterRegistry);
+        Gauge.builder("chat.persistence.backpressure.active", backpressure, b -> b.get() ? 1 : 0)
+                .register(meterRegistry);
     }
 
     @PostConstruct
     public void init() {
+        highWatermark = (int) (BUFFER_CAPACITY * highWatermarkRatio);
+        lowWatermark = (int) (BUFFER_CAPACITY * lowWatermarkRatio);
         coordinatorThread.start();
     }
 
+    /**
+     * Called by DynamicConsumerConfig: pause runs once the buffer passes the high watermark and
+     * resume once the coordinator has drained it to the low one. Both run on their own thread,
+     * in crossing order.
+     */
+    public void onBackpressure(Runnable pause, Runnable resume) {
+        this.pauseConsumers = pause;
+        this.resumeConsumers = resume;
+    }
+
     public void persistAsync(QueueMessage message) {
-        messageBuffer.offer(message);
+        offer(new Entry(message, null));
+    }
+
+    /**
+     * Persists the message and completes one unit of the delivery once it is written, or fails
+     * it if the buffer is full or the write fails, so the delivery is requeued rather than lost.
+     */
+    public void persistAsync(QueueMessage message, DeliveryAcks.Pending delivery) {
+        delivery.expect();
+        if (!offer(new Entry(message, delivery))) {
+            delivery.fail();
+        }
+    }
+
+    public void persistAllAsync(List<QueueMessage> messages) {
+        for (QueueMessage message : messages) {
+            persistAsync(message);
+        }
+    }
+
+    private boolean offer(Entry entry) {
+        boolean accepted = messageBuffer.offer(entry);
+        if (!accepted) {
+            droppedCounter.increment();
+        }
+        if (messageBuffer.size() > highWatermark && backpressure.compareAndSet(false, true)) {
+            backpressureSinceNanos = System.nanoTime();
+            highCrossings.increment();
+            logger.warn("Write buffer above {} messages, pausing room consumers", highWatermark);
+            backpressureExecutor.execute(pauseConsumers);
+        }
+        return accepted;
+    }
+
+    private void relieveBackpressure() {
+        if (messageBuffer.size() <= lowWatermark && backpressure.compareAndSet(true, false)) {
+            long pausedNanos = System.nanoTime() - backpressureSinceNanos;
+            pauseTimer.record(pausedNanos, TimeUnit.NANOSECONDS);
+            lowCrossings.increment();
+            logger.info("Write buffer down to {} messages after {} ms, resuming room consumers",
+                    messageBuffer.size(), TimeUnit.NANOSECONDS.toMillis(pausedNanos));
+            backpressureExecutor.execute(resumeConsumers);
+        }
     }
 
     private void processBufferLoop() {
-        List<QueueMessage> batch = new ArrayList<>(batchSize);
+        List<Entry> batch = new ArrayList<>(batchSize);
         while (running || !messageBuffer.isEmpty()) {
             try {
-                QueueMessage msg = messageBuffer.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                Entry msg = messageBuffer.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
                 if (msg != null) {
                     batch.add(msg);
                     messageBuffer.drainTo(batch, batchSize - 1);
                 }
+                relieveBackpressure();
 
                 if (!batch.isEmpty()) {
-                    List<QueueMessage> batchToProcess = new ArrayList<>(batch);
-
-                    dbWriterPool.execute(() -> writer.writeLogicalBatch(batchToProcess));
-
+                    List<Entry> batchToProcess = new ArrayList<>(batch);
                     batch.clear();
+
+                    try {
+                        dbWriterPool.execute(() -> write(batchToProcess));
+                    } catch (RejectedExecutionException e) {
+                        // Writer pool saturated: write it here, which holds the coordinator
+                        // back until DynamoDB catches up and lets the buffer rise to the
+                        // high watermark rather than losing the batch.
+                        inlineWriteCounter.increment();
+                        write(batchToProcess);
+                    }
                 }
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
@@ -77,9 +193,36 @@ public class MessagePersistenceService {
         }
     }
 
+    private void write(List<Entry> entries) {
+        List<QueueMessage> messages = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            messages.add(entry.message());
+        }
+        List<QueueMessage> unwritten;
+        try {
+            unwritten = writer.writeLogicalBatch(messages);
+        } catch (RuntimeException e) {
+            logger.error("Failed to write a batch of {} messages", messages.size(), e);
+            unwritten = messages;
+        }
+        Set<QueueMessage> failed = Collections.newSetFromMap(new IdentityHashMap<>());
+        failed.addAll(unwritten);
+        for (Entry entry : entries) {
+            if (entry.delivery() == null) {
+                continue;
+            }
+            if (failed.contains(entry.message())) {
+                entry.delivery().fail();
+            } else {
+                entry.delivery().complete();
+            }
+        }
+    }
+
     @PreDestroy
     public void stop() {
         running = false;
+        backpressureExecutor.shutdownNow();
         try {
             coordinatorThread.join(5000);
         } catch (InterruptedException e) {
@@ -1,41 +1,60 @@
 package com.chat.cs6650assignment3.consumerv3;
 
+import com.chat.cs6650assignment3.bus.MessageBus;
+import com.chat.cs6650assignment3.bus.RoomMessageListener;
+import com.chat.cs6650assignment3.config.QueueMessageConverter;
+import com.chat.cs6650assignment3.model.MessageIdGenerator;
 import com.chat.cs6650assignment3.model.QueueMessage;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.chat.cs6650assignment3.model.QueueMessageBatch;
 import com.rabbitmq.client.Channel;
 import io.micrometer.core.annotation.Timed;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.listener.api.ChannelAwareMessageListener;
+import org.springframework.amqp.support.converter.MessageConversionException;
 import org.springframework.stereotype.Service;
 import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 
-import java.util.Collections;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
 
 @Service
-public class RabbitMQConsumerService implements ChannelAwareMessageListener {
+public class RabbitMQConsumerService implements ChannelAwareMessageListener, RoomMessageListener {
     private static final Logger logger = LoggerFactory.getLogger(RabbitMQConsumerService.class);
 
     private final Counter messagesProcessedCounter;
     private final Counter duplicateMessagesCounter;
     private final Counter failedMessagesCounter;
+    private final Counter rejectedMessagesCounter;
+    private final DistributionSummary batchSizeSummary;
+    private final Timer processingTimer;
 
-    private final ObjectMapper objectMapper;
-    private final Set<String> processedMessageIds = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final QueueMessageConverter messageConverter;
+    private final MessageDeduplicator deduplicator;
+    private final RoomPartitionedExecutor partitionedExecutor;
+    private final DeliveryAcks deliveryAcks;
 
-    private final BroadcastPublisherService broadcastPublisher;
+    private final MessageBus messageBus;
     private final MessagePersistenceService persistenceService; // New dependency
 
-    public RabbitMQConsumerService(ObjectMapper objectMapper,
+    public RabbitMQConsumerService(QueueMessageConverter messageConverter,
                                    MeterRegistry meterRegistry,
-                                   BroadcastPublisherService broadcastPublisher,
-                                   MessagePersistenceService persistenceService) {
-        this.objectMapper = objectMapper;
-        this.broadcastPublisher = broadcastPublisher;
+                                   MessageBus messageBus,
+                                   MessagePersistenceService persistenceService,
+                                   MessageDeduplicator deduplicator,
+                                   RoomPartitionedExecutor partitionedExecutor,
+                                   DeliveryAcks deliveryAcks) {
+        this.messageConverter = messageConverter;
+        this.deduplicator = deduplicator;
+        this.partitionedExecutor = partitionedExecutor;
+        this.deliveryAcks = deliveryAcks;
+        this.messageBus = messageBus;
         this.persistenceService = persistenceService; // Set dependency
 
         this.messagesProcessedCounter = Counter.builder("chat.messages.processed")
@@ -45,32 +64,315 @@ public class RabbitMQConsumerService implements ChannelAwareMessageListener {
                 .register(meterRegistry);
         this.failedMessagesCounter = Counter.builder("chat.messages.failed")
                 .register(meterRegistry);
+        this.rejectedMessagesCounter = Counter.builder("chat.messages.rejected")
+                .description("Deliveries that could not be decoded, rejected without requeue")
+                .register(meterRegistry);
+        this.processingTimer = Timer.builder("chat.message.processing.time")
+                .description("Time to process one room-queue delivery, on its lane when lanes are enabled")
+                .register(meterRegistry);
+        this.batchSizeSummary = DistributionSummary.builder("chat.consumer.batch.size")
+                .description("Deliveries per consumer batch (batch listener mode only)")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
     }
 
     @Override
-    @Timed("chat.message.processing.time")
     public void onMessage(Message message, Channel channel) throws Exception {
         long tag = message.getMessageProperties().getDeliveryTag();
-        QueueMessage payload = objectMapper.readValue(message.getBody(), QueueMessage.class);
-
-        if (!processedMessageIds.add(payload.getMessageId())) {
-            duplicateMessagesCounter.increment();
-            channel.basicAck(tag, false);
+        boolean redelivered = Boolean.TRUE.equals(message.getMessageProperties().isRedelivered());
+        Object decoded;
+        try {
+            decoded = messageConverter.fromMessage(message);
+        } catch (MessageConversionException e) {
+            // Redelivering it would fail the same way.
+            logger.error("Cannot decode delivery {}; rejecting it", tag, e);
+            rejectedMessagesCounter.increment();
+            channel.basicReject(tag, false);
             return;
         }
+        DeliveryAcks.Pending delivery = deliveryAcks.isEnabled() ? deliveryAcks.track(channel, tag) : null;
+        if (!partitionedExecutor.isEnabled()) {
+            timedHandle(decoded, tag, redelivered, channel, delivery);
+            return;
+        }
+        // The lane processes and acks; the listener thread goes back for the next delivery.
+        String roomId = decoded instanceof QueueMessageBatch batch
+                ? batch.getRoomId() : ((QueueMessage) decoded).getRoomId();
+        String queue = Objects.requireNonNullElse(message.getMessageProperties().getConsumerQueue(), roomId);
+        boolean queued = partitionedExecutor.execute(roomId, queue, () -> {
+            try {
+                timedHandle(decoded, tag, redelivered, channel, delivery);
+            } catch (IOException e) {
+                // The channel closed under us; the broker redelivers and dedup drops what was done.
+                logger.error("Failed to ack delivery {} from a consumer lane", tag, e);
+            }
+        });
+        if (!queued) {
+            // The queue is being drained for its container to stop; give the delivery back.
+            requeue(channel, tag, delivery);
+        }
+    }
 
+    /**
+     * Times the processing itself, which with partitioned lanes runs after onMessage returns.
+     */
+    private void timedHandle(Object decoded, long tag, boolean redelivered, Channel channel,
+                             DeliveryAcks.Pending delivery) throws IOException {
+        Timer.Sample sample = Timer.start();
         try {
-            broadcastPublisher.publishBroadcast(payload);
+            handle(decoded, tag, redelivered, channel, delivery);
+        } finally {
+            sample.stop(processingTimer);
+        }
+    }
 
-            persistenceService.persistAsync(payload);
+    /**
+     * delivery is null unless at-least-once mode is on; then acks and nacks go through it and
+     * the ack waits for the messages to be persisted.
+     */
+    private void handle(Object decoded, long tag, boolean redelivered, Channel channel,
+                        DeliveryAcks.Pending delivery) throws IOException {
+        if (decoded instanceof QueueMessageBatch batch) {
+            onEnvelope(batch, tag, redelivered, channel, delivery);
+            return;
+        }
+        QueueMessage payload = (QueueMessage) decoded;
 
-            messagesProcessedCounter.increment();
-            channel.basicAck(tag, false);
+        if (isDuplicate(payload)) {
+            rewriteIfRedelivered(payload, redelivered, delivery);
+            ack(channel, tag, delivery);
+            return;
+        }
+
+        try {
+            process(payload, delivery);
+            ack(channel, tag, delivery);
 
         } catch (Exception e) {
             logger.error("Error processing message {}. NACKing.", payload.getMessageId(), e);
             failedMessagesCounter.increment();
+            forget(payload);
+            requeue(channel, tag, delivery);
+        }
+    }
+
+    /**
+     * Batch-listener entry point (chat.consumer.batch.enabled). Dedups every delivery of the
+     * batch, broadcasts and persists what is new in bulk and acks once with multiple=true.
+     * A delivery that cannot be decoded is rejected without requeue and the rest of the batch
+     * goes on. If a broadcast fails, the deliveries with messages that were not broadcast are
+     * requeued and the others acked. In at-least-once mode the acks go through DeliveryAcks
+     * once the writes land instead.
+     */
+    @Timed("chat.message.batch.processing.time")
+    public void onMessageBatch(List<Message> deliveries, Channel channel) {
+        batchSizeSummary.record(deliveries.size());
+        List<QueueMessage> fresh = new ArrayList<>(deliveries.size());
+        // fresh[freshEnd[i - 1], freshEnd[i]) belong to delivery i
+        int[] freshEnd = new int[deliveries.size()];
+        boolean[] poison = new boolean[deliveries.size()];
+        // At-least-once mode: duplicates of redeliveries, to be persisted again.
+        List<List<QueueMessage>> rewrites = new ArrayList<>();
+        for (int i = 0; i < deliveries.size(); i++) {
+            List<QueueMessage> rewrite = new ArrayList<>(0);
+            rewrites.add(rewrite);
+            try {
+                Object payload = messageConverter.fromMessage(deliveries.get(i));
+                List<QueueMessage> items = payload instanceof QueueMessageBatch batch
+                        ? batch.getMessages() : List.of((QueueMessage) payload);
+                boolean redelivered = Boolean.TRUE.equals(deliveries.get(i).getMessageProperties().isRedelivered());
+                for (QueueMessage item : items) {
+                    if (!isDuplicate(item)) {
+                        fresh.add(item);
+                    } else if (redelivered && deliveryAcks.isEnabled()) {
+                        rewrite.add(item);
+                    }
+                }
+            } catch (RuntimeException e) {
+                logger.error("Cannot decode delivery {} of a {}-delivery batch; rejecting it", i, deliveries.size(), e);
+                poison[i] = true;
+            }
+            freshEnd[i] = fresh.size();
+        }
+
+        int sent = messageBus.broadcastAll(fresh);
+        messagesProcessedCounter.increment(sent);
+
+        // broadcastAll stops at the first failure, so these are the deliveries from the first
+        // one with an unsent message on, less those that had nothing new to send.
+        boolean[] unsent = new boolean[deliveries.size()];
+        int failedFrom = sent;
+        int requeued = 0;
+        for (int i = 0; i < deliveries.size(); i++) {
+            int freshStart = i == 0 ? 0 : freshEnd[i - 1];
+            if (freshEnd[i] > sent && freshEnd[i] > freshStart) {
+                unsent[i] = true;
+                failedFrom = Math.min(failedFrom, freshStart);
+                requeued++;
+            }
+        }
+        try {
+            // Settled before anything is acked: a multiple ack would cover them too.
+            for (int i = 0; i < deliveries.size(); i++) {
+                if (poison[i]) {
+                    rejectedMessagesCounter.increment();
+                    channel.basicReject(deliveryTag(deliveries.get(i)), false);
+                } else if (unsent[i]) {
+                    channel.basicNack(deliveryTag(deliveries.get(i)), false, true);
+                }
+            }
+            if (requeued > 0) {
+                failedMessagesCounter.increment();
+                for (QueueMessage item : fresh.subList(sent, fresh.size())) {
+                    forget(item);
+                }
+                logger.error("Requeued {} of {} deliveries after a broadcast failed", requeued, deliveries.size());
+            }
+        } catch (IOException e) {
+            // The channel is gone; the broker requeues everything unacked.
+            logger.error("Failed to ack a batch of {} deliveries", deliveries.size(), e);
+            return;
+        }
+
+        if (deliveryAcks.isEnabled()) {
+            // Tracked in tag order before any of their writes can complete.
+            for (int i = 0; i < deliveries.size(); i++) {
+                if (poison[i] || unsent[i]) {
+                    continue;
+                }
+                DeliveryAcks.Pending delivery = deliveryAcks.track(channel, deliveryTag(deliveries.get(i)));
+                for (QueueMessage item : fresh.subList(i == 0 ? 0 : freshEnd[i - 1], freshEnd[i])) {
+                    persistenceService.persistAsync(item, delivery);
+                }
+                for (QueueMessage item : rewrites.get(i)) {
+                    persistenceService.persistAsync(item, delivery);
+                }
+                delivery.complete();
+            }
+            // What a requeued delivery did broadcast is written untracked; its redelivery
+            // writes it again.
+            persistenceService.persistAllAsync(fresh.subList(failedFrom, sent));
+            return;
+        }
+        persistenceService.persistAllAsync(fresh.subList(0, sent));
+        for (int i = deliveries.size() - 1; i >= 0; i--) {
+            if (!poison[i] && !unsent[i]) {
+                try {
+                    channel.basicAck(deliveryTag(deliveries.get(i)), true);
+                } catch (IOException e) {
+                    logger.error("Failed to ack a batch of {} deliveries", deliveries.size(), e);
+                }
+                return;
+            }
+        }
+    }
+
+    private static long deliveryTag(Message message) {
+        return message.getMessageProperties().getDeliveryTag();
+    }
+
+    /**
+     * Entry point for buses that deliver decoded messages (InProcessMessageBus). There is no
+     * redelivery, so a failure is counted and rethrown to the bus.
+     */
+    @Override
+    public void onRoomMessage(QueueMessage payload) {
+        if (isDuplicate(payload)) {
+            return;
+        }
+        try {
+            process(payload, null);
+        } catch (RuntimeException e) {
+            failedMessagesCounter.increment();
+            forget(payload);
+            throw e;
+        }
+    }
+
+    /**
+     * Processes every message of a batching publisher envelope and acks the envelope once.
+     * If one fails the whole envelope is requeued; the messages already processed are
+     * dropped as duplicates on redelivery.
+     */
+    private void onEnvelope(QueueMessageBatch batch, long tag, boolean redelivered, Channel channel,
+                            DeliveryAcks.Pending delivery) throws IOException {
+        QueueMessage current = null;
+        try {
+            for (QueueMessage payload : batch.getMessages()) {
+                current = payload;
+                if (isDuplicate(payload)) {
+                    rewriteIfRedelivered(payload, redelivered, delivery);
+                } else {
+                    process(payload, delivery);
+                }
+            }
+            ack(channel, tag, delivery);
+
+        } catch (Exception e) {
+            logger.error("Error processing message {} of a {}-message envelope. NACKing the envelope.",
+                    current.getMessageId(), batch.getMessages().size(), e);
+            failedMessagesCounter.increment();
+            forget(current);
+            requeue(channel, tag, delivery);
+        }
+    }
+
+    private void ack(Channel channel, long tag, DeliveryAcks.Pending delivery) throws IOException {
+        if (delivery != null) {
+            delivery.complete();
+        } else {
+            channel.basicAck(tag, false);
+        }
+    }
+
+    private void requeue(Channel channel, long tag, DeliveryAcks.Pending delivery) throws IOException {
+        if (delivery != null) {
+            delivery.fail();
+        } else {
             channel.basicNack(tag, false, true);
         }
     }
+
+    /**
+     * At-least-once mode: a redelivered duplicate was broadcast before, but its write may be
+     * what failed, so it is persisted again (writes are keyed by room, timestamp and ID, so this
+     * is idempotent) instead of being broadcast twice.
+     */
+    private void rewriteIfRedelivered(QueueMessage payload, boolean redelivered, DeliveryAcks.Pending delivery) {
+        if (delivery != null && redelivered) {
+            persistenceService.persistAsync(payload, delivery);
+        }
+    }
+
+    private boolean isDuplicate(QueueMessage payload) {
+        long messageId = MessageIdGenerator.parse(payload.getMessageId());
+        // IDs that don't parse come from producers older than MessageIdGenerator and skip dedup.
+        if (messageId >= 0 && !deduplicator.firstSeen(messageId)) {
+            duplicateMessagesCounter.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Lets the redelivery of a failed message through dedup.
+     */
+    private void forget(QueueMessage payload) {
+        long messageId = MessageIdGenerator.parse(payload.getMessageId());
+        if (messageId >= 0) {
+            deduplicator.forget(messageId);
+        }
+    }
+
+    private void process(QueueMessage payload, DeliveryAcks.Pending delivery) {
+        messageBus.broadcast(payload);
+
+        if (delivery != null) {
+            persistenceService.persistAsync(payload, delivery);
+        } else {
+            persistenceService.persistAsync(payload);
+        }
+
+        messagesProcessedCounter.increment();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,209 @@
+package com.chat.cs6650assignment3.consumerv3;
+
+import com.chat.cs6650assignment3.bus.RingBuffer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs room-consumer work on a fixed set of single-threaded lanes, one room always on the
+ * same lane, so a room's messages are processed, broadcast and persisted in arrival order while
+ * different rooms run in parallel. Listener threads hand off through a RingBuffer per lane
+ * and return to the broker straight away; a full lane makes them wait.
+ *
+ * Order is kept from the point of hand-off, so each queue must still have a single consumer;
+ * ConsumerAutoscaler holds containers at one consumer while the lanes are enabled.
+ *
+ * Tasks are counted per source queue. A container's stop() recovers (requeues) whatever its
+ * channels have not acked, so before stopping one DynamicConsumerConfig drains its queues:
+ * new tasks from them are refused and the lanes finish the ones already queued. Lane time is
+ * also kept per source queue, for ConsumerAutoscaler to read as its containers' utilization.
+ */
+@Component
+public class RoomPartitionedExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(RoomPartitionedExecutor.class);
+    private static final int DRAIN_BATCH = 256;
+    private static final long DRAIN_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final class Lane {
+        final RingBuffer<Runnable> ring;
+        final Thread thread;
+        final Counter tasks;
+        // Written by the lane thread only.
+        volatile long busyNanos;
+        long sampledAtNanos = System.nanoTime();
+        long sampledBusyNanos;
+
+        Lane(int index, int capacity, MeterRegistry meterRegistry) {
+            this.ring = new RingBuffer<>(capacity);
+            this.tasks = Counter.builder("chat.consumer.lane.tasks")
+                    .tag("lane", String.valueOf(index))
+                    .register(meterRegistry);
+            Gauge.builder("chat.consumer.lane.backlog", ring, RingBuffer::backlog)
+                    .description("Messages waiting for a consumer lane")
+                    .tag("lane", String.valueOf(index))
+                    .register(meterRegistry);
+            Gauge.builder("chat.consumer.lane.utilization", this, Lane::utilizationSinceLastSample)
+                    .description("Share of time the lane thread was busy since the previous reading")
+                    .tag("lane", String.valueOf(index))
+                    .register(meterRegistry);
+            this.thread = new Thread(this::run, "Consumer-Lane-" + index);
+        }
+
+        void run() {
+            while (running || ring.backlog() > 0) {
+                ring.drain(this::runTask, DRAIN_BATCH);
+            }
+        }
+
+        void runTask(Runnable task) {
+            long start = System.nanoTime();
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                logger.error("Consumer lane task failed", e);
+            } finally {
+                busyNanos += System.nanoTime() - start;
+                tasks.increment();
+            }
+        }
+
+        synchronized double utilizationSinceLastSample() {
+            long now = System.nanoTime();
+            long busy = busyNanos;
+            double utilization = now > sampledAtNanos ? (double) (busy - sampledBusyNanos) / (now - sampledAtNanos) : 0;
+            sampledAtNanos = now;
+            sampledBusyNanos = busy;
+            return Math.min(1.0, utilization);
+        }
+    }
+
+    private static final class Source {
+        final AtomicInteger tasks = new AtomicInteger();
+        final LongAdder busyNanos = new LongAdder();
+        volatile boolean draining;
+    }
+
+    private final boolean enabled;
+    private final Lane[] lanes;
+    private final ConcurrentHashMap<String, Source> sources = new ConcurrentHashMap<>();
+    private volatile boolean running = true;
+
+    public RoomPartitionedExecutor(MeterRegistry meterRegistry,
+                                   @Value("${chat.consumer.partitioned.enabled:false}") boolean enabled,
+                                   @Value("${chat.consumer.partitioned.lanes:0}") int laneCount,
+                                   @Value("${chat.consumer.partitioned.lane-capacity:8192}") int laneCapacity) {
+        this.enabled = enabled;
+        if (!enabled) {
+            this.lanes = new Lane[0];
+            return;
+        }
+        int count = laneCount > 0 ? laneCount : Runtime.getRuntime().availableProcessors();
+        this.lanes = new Lane[count];
+        for (int i = 0; i < count; i++) {
+            lanes[i] = new Lane(i, laneCapacity, meterRegistry);
+            lanes[i].thread.start();
+        }
+        logger.info("Room-partitioned consumer executor running {} lanes", count);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queues the task on the room's lane, behind earlier tasks for the same room. Returns false
+     * without queuing it while source is being drained.
+     */
+    public boolean execute(String roomId, String source, Runnable task) {
+        Source counted = sources.computeIfAbsent(source, k -> new Source());
+        // Counted before the check, so drain either sees this task or this task sees drain.
+        counted.tasks.incrementAndGet();
+        if (counted.draining) {
+            counted.tasks.decrementAndGet();
+            return false;
+        }
+        lanes[Math.floorMod(roomId.hashCode(), lanes.length)].ring.put(() -> {
+            long start = System.nanoTime();
+            try {
+                task.run();
+            } finally {
+                counted.busyNanos.add(System.nanoTime() - start);
+                counted.tasks.decrementAndGet();
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Refuses new tasks from the given queues and waits up to timeoutMillis for the queued
+     * ones to finish. Returns false on timeout. Call resume once the container has stopped.
+     */
+    public boolean drain(Collection<String> queues, long timeoutMillis) {
+        if (!enabled || queues.isEmpty()) {
+            return true;
+        }
+        List<Source> draining = new ArrayList<>();
+        for (String queue : queues) {
+            Source source = sources.computeIfAbsent(queue, k -> new Source());
+            source.draining = true;
+            draining.add(source);
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        for (Source source : draining) {
+            while (source.tasks.get() > 0) {
+                if (System.nanoTime() - deadline > 0) {
+                    return false;
+                }
+                LockSupport.parkNanos(DRAIN_POLL_NANOS);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Lane time spent on tasks from the given queues since the previous call, which resets it.
+     */
+    public long takeBusyNanos(Collection<String> queues) {
+        long busy = 0;
+        for (String queue : queues) {
+            Source source = sources.get(queue);
+            if (source != null) {
+                busy += source.busyNanos.sumThenReset();
+            }
+        }
+        return busy;
+    }
+
+    public void resume(Collection<String> queues) {
+        for (String queue : queues) {
+            Source source = sources.get(queue);
+            if (source != null) {
+                source.draining = false;
+            }
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        for (Lane lane : lanes) {
+            lane.thread.join(5000);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.chat.cs6650assignment3.controller;
+
+import com.chat.cs6650assignment3.consumerv3.ConsumerAutoscaler;
+import org.springframework.context.annotation.Profile;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/consumers")
+@Profile("!inprocess")
+public class ConsumerAutoscalerController {
+
+    private final ConsumerAutoscaler autoscaler;
+
+    public ConsumerAutoscalerController(ConsumerAutoscaler autoscaler) {
+        this.autoscaler = autoscaler;
+    }
+
+    /**
+     * Latest reading per room-consumer container and the recent scale-ups and scale-downs.
+     */
+    @GetMapping("/autoscaler")
+    public Map<String, Object> getAutoscalerState() {
+        return Map.of(
+                "enabled", autoscaler.isEnabled(),
+                "containers", autoscaler.current(),
+                "decisions", autoscaler.history()
+        );
+    }
+}
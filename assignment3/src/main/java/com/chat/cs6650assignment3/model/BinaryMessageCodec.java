@@ -0,0 +1,128 @@
+package com.chat.cs6650assignment3.model;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+/**
+ * Compact binary encoding used on the "chat.binary.v1" WebSocket subprotocol.
+ *
+ * Chat message: [u8 version][u8 messageType ordinal][i64 timestamp epoch-millis]
+ *               [str messageId][str userId][str username][str message]
+ * Ack:          [u8 version][str status][i64 serverTimestamp epoch-millis]
+ *               [str originalMessageId][str message]
+ *
+ * A str is a u16 byte length followed by UTF-8 bytes; 0xFFFF marks null.
+ */
+public final class BinaryMessageCodec {
+
+    public static final String SUBPROTOCOL = "chat.binary.v1";
+    public static final String JSON_SUBPROTOCOL = "chat.json.v1";
+
+    private static final byte VERSION = 1;
+    private static final int NULL_LENGTH = 0xFFFF;
+    private static final ChatMessage.MessageType[] MESSAGE_TYPES = ChatMessage.MessageType.values();
+
+    private BinaryMessageCodec() {
+    }
+
+    public static byte[] encodeChatMessage(ChatMessage msg) {
+        byte[] messageId = utf8(msg.getMessageId());
+        byte[] userId = utf8(msg.getUserId());
+        byte[] username = utf8(msg.getUsername());
+        byte[] message = utf8(msg.getMessage());
+
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 1 + 8
+                + sizeOf(messageId) + sizeOf(userId) + sizeOf(username) + sizeOf(message));
+        buffer.put(VERSION);
+        buffer.put(msg.getMessageType() == null ? (byte) -1 : (byte) msg.getMessageType().ordinal());
+        buffer.putLong(msg.getTimestamp() == null ? Long.MIN_VALUE : Instant.parse(msg.getTimestamp()).toEpochMilli());
+        putString(buffer, messageId);
+        putString(buffer, userId);
+        putString(buffer, username);
+        putString(buffer, message);
+        return buffer.array();
+    }
+
+    public static ChatMessage decodeChatMessage(ByteBuffer buffer) {
+        checkVersion(buffer);
+        int typeOrdinal = buffer.get();
+        long timestamp = buffer.getLong();
+
+        ChatMessage msg = new ChatMessage();
+        msg.setMessageType(typeOrdinal >= 0 && typeOrdinal < MESSAGE_TYPES.length ? MESSAGE_TYPES[typeOrdinal] : null);
+        msg.setTimestamp(timestamp == Long.MIN_VALUE ? null : Instant.ofEpochMilli(timestamp).toString());
+        msg.setMessageId(getString(buffer));
+        msg.setUserId(getString(buffer));
+        msg.setUsername(getString(buffer));
+        msg.setMessage(getString(buffer));
+        return msg;
+    }
+
+    public static byte[] encodeAck(String status, long serverTimestampMillis, String originalMessageId, String message) {
+        byte[] statusBytes = utf8(status);
+        byte[] originalIdBytes = utf8(originalMessageId);
+        byte[] messageBytes = utf8(message);
+
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 8
+                + sizeOf(statusBytes) + sizeOf(originalIdBytes) + sizeOf(messageBytes));
+        buffer.put(VERSION);
+        putString(buffer, statusBytes);
+        buffer.putLong(serverTimestampMillis);
+        putString(buffer, originalIdBytes);
+        putString(buffer, messageBytes);
+        return buffer.array();
+    }
+
+    public static ServerResponse decodeAck(ByteBuffer buffer) {
+        checkVersion(buffer);
+        String status = getString(buffer);
+        long serverTimestamp = buffer.getLong();
+        ServerResponse response = new ServerResponse(status, Instant.ofEpochMilli(serverTimestamp).toString());
+        response.setOriginalMessageId(getString(buffer));
+        response.setMessage(getString(buffer));
+        return response;
+    }
+
+    private static void checkVersion(ByteBuffer buffer) {
+        byte version = buffer.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported binary frame version: " + version);
+        }
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int sizeOf(byte[] bytes) {
+        return 2 + (bytes == null ? 0 : bytes.length);
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putShort((short) NULL_LENGTH);
+            return;
+        }
+        if (bytes.length >= NULL_LENGTH) {
+            throw new IllegalArgumentException("Field exceeds maximum encoded length of " + (NULL_LENGTH - 1) + " bytes.");
+        }
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        if (buffer.hasArray()) {
+            int offset = buffer.arrayOffset() + buffer.position();
+            buffer.position(buffer.position() + length);
+            return new String(buffer.array(), offset, length, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
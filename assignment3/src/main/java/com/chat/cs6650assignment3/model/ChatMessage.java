@@ -1,9 +1,10 @@
 package com.chat.cs6650assignment3.model;
 
 import java.time.Instant;
-import java.util.UUID;
 
 public class ChatMessage {
+    private static final MessageIdGenerator ID_GENERATOR = MessageIdGenerator.withRandomNode();
+
     private String messageId;
     private String userId;
     private String username;
@@ -16,7 +17,7 @@ public class ChatMessage {
     }
 
     public ChatMessage() {
-        this.messageId = UUID.randomUUID().toString();
+        this.messageId = ID_GENERATOR.nextIdString();
         this.timestamp = Instant.now().toString();
     }
 
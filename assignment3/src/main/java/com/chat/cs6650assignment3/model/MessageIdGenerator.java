@@ -0,0 +1,97 @@
+package com.chat.cs6650assignment3.model;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Snowflake-style 64-bit message IDs: 41 bits of milliseconds since 2024-01-01, 10 bits of
+ * node id and a 12-bit per-millisecond sequence. IDs from one generator are strictly
+ * increasing, even if the clock steps back or a millisecond's sequence runs out (the
+ * sequence then borrows from the next millisecond), and the hot path is a single CAS.
+ *
+ * The string form is 13 characters of Crockford base32, fixed width, so string order
+ * matches numeric order and therefore time order.
+ */
+public final class MessageIdGenerator {
+
+    public static final long EPOCH_MILLIS = 1704067200000L; // 2024-01-01T00:00:00Z
+    public static final int ENCODED_LENGTH = 13;
+
+    private static final int NODE_BITS = 10;
+    /** Number of distinct node ids, 0 to NODE_IDS - 1. */
+    public static final int NODE_IDS = 1 << NODE_BITS;
+    private static final int SEQUENCE_BITS = 12;
+    private static final int MAX_NODE_ID = NODE_IDS - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    private static final byte[] DECODE = new byte[128];
+
+    static {
+        Arrays.fill(DECODE, (byte) -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            DECODE[ALPHABET[i]] = (byte) i;
+            DECODE[Character.toLowerCase(ALPHABET[i])] = (byte) i;
+        }
+    }
+
+    private final long nodeBits;
+    // Last issued (millis << SEQUENCE_BITS | sequence), i.e. the ID without its node bits.
+    private final AtomicLong lastTimeAndSequence = new AtomicLong();
+
+    public MessageIdGenerator(int nodeId) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Node id must be between 0 and " + MAX_NODE_ID + ": " + nodeId);
+        }
+        this.nodeBits = (long) nodeId << SEQUENCE_BITS;
+    }
+
+    public static MessageIdGenerator withRandomNode() {
+        return new MessageIdGenerator(ThreadLocalRandom.current().nextInt(NODE_IDS));
+    }
+
+    public long nextId() {
+        long candidate = (System.currentTimeMillis() - EPOCH_MILLIS) << SEQUENCE_BITS;
+        long next = lastTimeAndSequence.accumulateAndGet(candidate, (last, now) -> Math.max(now, last + 1));
+        return ((next & ~SEQUENCE_MASK) << NODE_BITS) | nodeBits | (next & SEQUENCE_MASK);
+    }
+
+    public String nextIdString() {
+        return encode(nextId());
+    }
+
+    public static long timestampMillis(long id) {
+        return (id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH_MILLIS;
+    }
+
+    public static String encode(long id) {
+        char[] chars = new char[ENCODED_LENGTH];
+        for (int i = ENCODED_LENGTH - 1; i >= 0; i--) {
+            chars[i] = ALPHABET[(int) (id & 31)];
+            id >>>= 5;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Parses the 13-character form. Returns -1 for anything else, e.g. a UUID from an older
+     * producer, so callers can fall back without catching exceptions.
+     */
+    public static long parse(CharSequence value) {
+        if (value == null || value.length() != ENCODED_LENGTH) {
+            return -1;
+        }
+        long id = 0;
+        for (int i = 0; i < ENCODED_LENGTH; i++) {
+            char c = value.charAt(i);
+            int digit = c < 128 ? DECODE[c] : -1;
+            // 13 chars carry 65 bits; the top char may only use the low 3 to stay non-negative.
+            if (digit < 0 || (i == 0 && digit > 7)) {
+                return -1;
+            }
+            id = (id << 5) | digit;
+        }
+        return id;
+    }
+}
@@ -0,0 +1,37 @@
+package com.chat.cs6650assignment3.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Envelope for several QueueMessages of one room, published as a single AMQP message.
+ * Marked with the RabbitMQConfig.BATCH_SIZE_HEADER so consumers can tell it apart.
+ */
+public class QueueMessageBatch {
+    private String roomId;
+    private List<QueueMessage> messages = new ArrayList<>();
+
+    public QueueMessageBatch() {
+    }
+
+    public QueueMessageBatch(String roomId, List<QueueMessage> messages) {
+        this.roomId = roomId;
+        this.messages = messages;
+    }
+
+    public String getRoomId() {
+        return roomId;
+    }
+
+    public void setRoomId(String roomId) {
+        this.roomId = roomId;
+    }
+
+    public List<QueueMessage> getMessages() {
+        return messages;
+    }
+
+    public void setMessages(List<QueueMessage> messages) {
+        this.messages = messages;
+    }
+}
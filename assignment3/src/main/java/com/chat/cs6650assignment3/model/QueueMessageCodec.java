@@ -0,0 +1,384 @@
+package com.chat.cs6650assignment3.model;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compact binary encoding of QueueMessage and QueueMessageBatch for the room queues.
+ *
+ * Frame:   [u8 version][u8 flags][body], or with FLAG_DEFLATE [u8 version][u8 flags]
+ *          [varint body length][deflated body]
+ * Body:    [u8 kind] then a message, or for a batch [str roomId][varint count][message...]
+ * Message: [id messageId][str roomId][str userId][str username][str message][time timestamp]
+ *          [u8 messageType code][str serverId][str clientIp][str clientMessageId]
+ *
+ * A str is a varint of (UTF-8 length + 1), 0 meaning null. An id is a Snowflake ID as
+ * [u8 1][varint], anything else as [u8 2][str]; a time is [u8 1][varint epoch seconds]
+ * [varint nanos] when it is an ISO instant that prints back to the same string, otherwise
+ * [u8 2][str]. Message type codes are ordinal + 1, 0 meaning null.
+ */
+public final class QueueMessageCodec {
+
+    private static final byte VERSION = 1;
+    private static final byte FLAG_DEFLATE = 1;
+    private static final byte KIND_MESSAGE = 1;
+    private static final byte KIND_BATCH = 2;
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_COMPACT = 1;
+    private static final byte TAG_STRING = 2;
+    private static final ChatMessage.MessageType[] MESSAGE_TYPES = ChatMessage.MessageType.values();
+
+    private QueueMessageCodec() {
+    }
+
+    /**
+     * Encodes a QueueMessage or QueueMessageBatch, deflating bodies of at least
+     * compressThreshold bytes when that makes them smaller. A threshold of 0 disables it.
+     */
+    public static byte[] encode(Object payload, int compressThreshold) {
+        Output body = new Output(256);
+        if (payload instanceof QueueMessageBatch batch) {
+            body.write(KIND_BATCH);
+            body.writeString(batch.getRoomId());
+            body.writeVarint(batch.getMessages().size());
+            for (QueueMessage message : batch.getMessages()) {
+                writeMessage(body, message);
+            }
+        } else if (payload instanceof QueueMessage message) {
+            body.write(KIND_MESSAGE);
+            writeMessage(body, message);
+        } else {
+            throw new IllegalArgumentException("Cannot encode " + payload.getClass().getName());
+        }
+
+        if (compressThreshold > 0 && body.size() >= compressThreshold) {
+            byte[] deflated = deflate(body.buffer, body.size());
+            if (deflated.length + 5 < body.size()) {
+                Output frame = new Output(deflated.length + 7);
+                frame.write(VERSION);
+                frame.write(FLAG_DEFLATE);
+                frame.writeVarint(body.size());
+                frame.write(deflated, deflated.length);
+                return frame.toByteArray();
+            }
+        }
+        Output frame = new Output(body.size() + 2);
+        frame.write(VERSION);
+        frame.write((byte) 0);
+        frame.write(body.buffer, body.size());
+        return frame.toByteArray();
+    }
+
+    /**
+     * Returns a QueueMessage or a QueueMessageBatch.
+     */
+    public static Object decode(byte[] frame) {
+        Input input = new Input(frame, 0);
+        byte version = input.read();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported queue message version: " + version);
+        }
+        byte flags = input.read();
+        if ((flags & FLAG_DEFLATE) != 0) {
+            int length = input.readVarint();
+            input = new Input(inflate(frame, input.position, length), 0);
+        }
+
+        byte kind = input.read();
+        if (kind == KIND_MESSAGE) {
+            return readMessage(input);
+        }
+        if (kind != KIND_BATCH) {
+            throw new IllegalArgumentException("Unknown queue message kind: " + kind);
+        }
+        String roomId = input.readString();
+        int count = input.readVarint();
+        List<QueueMessage> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            messages.add(readMessage(input));
+        }
+        return new QueueMessageBatch(roomId, messages);
+    }
+
+    private static void writeMessage(Output out, QueueMessage message) {
+        long id = MessageIdGenerator.parse(message.getMessageId());
+        if (message.getMessageId() == null) {
+            out.write(TAG_NULL);
+        } else if (id >= 0 && isUpperCase(message.getMessageId())) {
+            out.write(TAG_COMPACT);
+            out.writeVarint(id);
+        } else {
+            out.write(TAG_STRING);
+            out.writeString(message.getMessageId());
+        }
+        out.writeString(message.getRoomId());
+        out.writeString(message.getUserId());
+        out.writeString(message.getUsername());
+        out.writeString(message.getMessage());
+        writeTimestamp(out, message.getTimestamp());
+        out.write(message.getMessageType() == null ? 0 : (byte) (message.getMessageType().ordinal() + 1));
+        out.writeString(message.getServerId());
+        out.writeString(message.getClientIp());
+        out.writeString(message.getClientMessageId());
+    }
+
+    private static QueueMessage readMessage(Input in) {
+        QueueMessage message = new QueueMessage();
+        byte idTag = in.read();
+        message.setMessageId(switch (idTag) {
+            case TAG_NULL -> null;
+            case TAG_COMPACT -> MessageIdGenerator.encode(in.readVarint64());
+            default -> in.readString();
+        });
+        message.setRoomId(in.readString());
+        message.setUserId(in.readString());
+        message.setUsername(in.readString());
+        message.setMessage(in.readString());
+        byte timeTag = in.read();
+        message.setTimestamp(switch (timeTag) {
+            case TAG_NULL -> null;
+            case TAG_COMPACT -> Instant.ofEpochSecond(in.readVarint64(), in.readVarint()).toString();
+            default -> in.readString();
+        });
+        int typeCode = in.read();
+        message.setMessageType(typeCode > 0 && typeCode <= MESSAGE_TYPES.length ? MESSAGE_TYPES[typeCode - 1] : null);
+        message.setServerId(in.readString());
+        message.setClientIp(in.readString());
+        message.setClientMessageId(in.readString());
+        return message;
+    }
+
+    /**
+     * parse also accepts lower case; only the upper-case form is what encode gives back.
+     */
+    private static boolean isUpperCase(String id) {
+        for (int i = 0; i < id.length(); i++) {
+            if (Character.isLowerCase(id.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeTimestamp(Output out, String timestamp) {
+        if (timestamp == null) {
+            out.write(TAG_NULL);
+            return;
+        }
+        long[] instant = parseCanonicalInstant(timestamp);
+        if (instant != null) {
+            out.write(TAG_COMPACT);
+            out.writeVarint(instant[0]);
+            out.writeVarint(instant[1]);
+            return;
+        }
+        out.write(TAG_STRING);
+        out.writeString(timestamp);
+    }
+
+    /**
+     * Parses yyyy-MM-ddTHH:mm:ss[.fff[fff[fff]]]Z, as printed by Instant.toString for years
+     * 1970-9999, into {epochSecond, nanos}. Returns null for anything Instant.toString would
+     * not print exactly this way, so decoding always gives back the same string. Much cheaper
+     * than Instant.parse on the publish path.
+     */
+    static long[] parseCanonicalInstant(String s) {
+        int length = s.length();
+        if (length < 20 || s.charAt(4) != '-' || s.charAt(7) != '-' || s.charAt(10) != 'T'
+                || s.charAt(13) != ':' || s.charAt(16) != ':' || s.charAt(length - 1) != 'Z') {
+            return null;
+        }
+        int year = digits(s, 0, 4);
+        int month = digits(s, 5, 2);
+        int day = digits(s, 8, 2);
+        int hour = digits(s, 11, 2);
+        int minute = digits(s, 14, 2);
+        int second = digits(s, 17, 2);
+        if (year < 1970 || month < 1 || month > 12 || day < 1 || day > 31
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return null;
+        }
+
+        int nanos = 0;
+        int fractionDigits = length - 21;
+        if (length != 20) {
+            if (s.charAt(19) != '.' || (fractionDigits != 3 && fractionDigits != 6 && fractionDigits != 9)) {
+                return null;
+            }
+            int fraction = digits(s, 20, fractionDigits);
+            if (fraction < 0) {
+                return null;
+            }
+            nanos = fraction * (fractionDigits == 3 ? 1_000_000 : fractionDigits == 6 ? 1_000 : 1);
+            // Instant.toString uses the shortest of 3, 6 or 9 digits and omits a zero fraction.
+            int canonicalDigits = nanos == 0 ? 0 : nanos % 1_000_000 == 0 ? 3 : nanos % 1_000 == 0 ? 6 : 9;
+            if (canonicalDigits != fractionDigits) {
+                return null;
+            }
+        }
+        if (day > YearMonth.of(year, month).lengthOfMonth()) {
+            return null;
+        }
+        long epochDay = LocalDate.of(year, month, day).toEpochDay();
+        return new long[]{epochDay * 86400 + hour * 3600L + minute * 60L + second, nanos};
+    }
+
+    /**
+     * Parses count ASCII digits at offset, or returns -1 if any is not a digit.
+     */
+    private static int digits(String s, int offset, int count) {
+        int value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            int digit = s.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static byte[] deflate(byte[] bytes, int length) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(bytes, 0, length);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(length / 2 + 16);
+            byte[] chunk = new byte[Math.max(64, length)];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(chunk);
+                out.write(chunk, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] frame, int offset, int length) {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(frame, offset, frame.length - offset);
+            byte[] body = new byte[length];
+            int read = 0;
+            while (read < length) {
+                int n = inflater.inflate(body, read, length - read);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IllegalArgumentException("Truncated compressed queue message");
+                }
+                read += n;
+            }
+            return body;
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupt compressed queue message", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static final class Output {
+        byte[] buffer;
+        int position;
+
+        Output(int capacity) {
+            this.buffer = new byte[capacity];
+        }
+
+        int size() {
+            return position;
+        }
+
+        void write(byte b) {
+            ensure(1);
+            buffer[position++] = b;
+        }
+
+        void write(int b) {
+            write((byte) b);
+        }
+
+        void write(byte[] bytes, int length) {
+            ensure(length);
+            System.arraycopy(bytes, 0, buffer, position, length);
+            position += length;
+        }
+
+        void writeVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void writeString(String value) {
+            if (value == null) {
+                writeVarint(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length + 1L);
+            write(bytes, bytes.length);
+        }
+
+        byte[] toByteArray() {
+            return position == buffer.length ? buffer : Arrays.copyOf(buffer, position);
+        }
+
+        private void ensure(int extra) {
+            if (position + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+            }
+        }
+    }
+
+    private static final class Input {
+        final byte[] buffer;
+        int position;
+
+        Input(byte[] buffer, int position) {
+            this.buffer = buffer;
+            this.position = position;
+        }
+
+        byte read() {
+            return buffer[position++];
+        }
+
+        int readVarint() {
+            return Math.toIntExact(readVarint64());
+        }
+
+        long readVarint64() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = buffer[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        String readString() {
+            int length = readVarint() - 1;
+            if (length < 0) {
+                return null;
+            }
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
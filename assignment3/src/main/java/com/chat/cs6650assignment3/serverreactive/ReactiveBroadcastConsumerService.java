@@ -0,0 +1,103 @@
+package com.chat.cs6650assignment3.serverreactive;
+
+import com.chat.cs6650assignment3.bus.BroadcastListener;
+import com.chat.cs6650assignment3.config.RabbitMQConfig;
+import com.chat.cs6650assignment3.serverv3.BroadcastCoalescer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+
+import java.util.Set;
+
+/**
+ * Reactive counterpart of BroadcastConsumerService: the same per-room broadcast queue,
+ * raw-body pass-through and optional coalescing, delivered to reactive sessions.
+ */
+@Service
+@Profile("reactive")
+public class ReactiveBroadcastConsumerService implements BroadcastListener {
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveBroadcastConsumerService.class);
+    private final ReactiveSessionManager sessionManager;
+    private final ObjectMapper objectMapper;
+    private final BroadcastCoalescer coalescer;
+    private final Counter noLocalRecipientsCounter;
+
+    @Value("${chat.broadcast.coalesce.enabled:false}")
+    private boolean coalesceEnabled;
+
+    public ReactiveBroadcastConsumerService(ReactiveSessionManager sessionManager, ObjectMapper objectMapper,
+                                            BroadcastCoalescer coalescer, MeterRegistry meterRegistry) {
+        this.sessionManager = sessionManager;
+        this.objectMapper = objectMapper;
+        this.coalescer = coalescer;
+        coalescer.setRoomSink(this::sendToRoom);
+        this.noLocalRecipientsCounter = Counter.builder("chat.broadcast.no_local_recipients")
+                .description("Broadcasts received for a room with no sessions on this node")
+                .register(meterRegistry);
+    }
+
+    @RabbitListener(queues = "#{serverBroadcastQueue.name}")
+    public void receiveBroadcast(Message message) {
+        try {
+            byte[] body = message.getBody();
+            String roomId = resolveRoomId(message, body);
+            if (roomId == null) {
+                logger.warn("Dropping broadcast without a roomId");
+                return;
+            }
+            onBroadcast(roomId, body);
+        } catch (Exception e) {
+            logger.error("Critical error processing broadcast message", e);
+        }
+    }
+
+    @Override
+    public void onBroadcast(String roomId, byte[] body) {
+        try {
+            Set<ReactiveSessionContext> sessionsInRoom = sessionManager.getSessions(roomId);
+            if (sessionsInRoom.isEmpty()) {
+                noLocalRecipientsCounter.increment();
+                return;
+            }
+
+            if (coalesceEnabled) {
+                coalescer.add(roomId, body);
+                return;
+            }
+
+            sendToRoom(roomId, body);
+        } catch (Exception e) {
+            logger.error("Critical error processing broadcast message", e);
+        }
+    }
+
+    private void sendToRoom(String roomId, byte[] frame) {
+        for (ReactiveSessionContext context : sessionManager.getSessions(roomId)) {
+            WebSocketSession session = context.getSession();
+            if (session.isOpen()) {
+                // wrap() shares the body; each session needs its own buffer view.
+                sessionManager.send(context,
+                        new WebSocketMessage(WebSocketMessage.Type.TEXT, session.bufferFactory().wrap(frame)));
+            }
+        }
+    }
+
+    private String resolveRoomId(Message message, byte[] body) throws Exception {
+        Object header = message.getMessageProperties().getHeader(RabbitMQConfig.ROOM_ID_HEADER);
+        if (header != null) {
+            return header.toString();
+        }
+        JsonNode roomId = objectMapper.readTree(body).get("roomId");
+        return roomId == null || roomId.isNull() ? null : roomId.asText();
+    }
+}
@@ -0,0 +1,156 @@
+package com.chat.cs6650assignment3.serverreactive;
+
+import com.chat.cs6650assignment3.model.BinaryMessageCodec;
+import com.chat.cs6650assignment3.serverv3.ChatFrameHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.socket.CloseStatus;
+import org.springframework.web.reactive.socket.WebSocketHandler;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * WebFlux/Reactor Netty version of ChatWebSocketHandler, active under the "reactive" profile.
+ * Same endpoints (/chat/{roomId} and multiplexed /chat) and subprotocols; the protocol itself
+ * is ChatFrameHandler, shared with the servlet stack, so only the transport differs.
+ *
+ * Inbound frames are copied off the event loop and handled in order on boundedElastic, since
+ * the RabbitMQ publish blocks. Outbound frames go through the session's bounded sink.
+ */
+@Component
+@Profile("reactive")
+public class ReactiveChatWebSocketHandler implements WebSocketHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveChatWebSocketHandler.class);
+
+    public static final String MULTIPLEXED_PATH = ChatFrameHandler.MULTIPLEXED_PATH;
+
+    private final ReactiveSessionManager sessionManager;
+    private final ChatFrameHandler frameHandler;
+
+    @Value("${chat.ws.outbound.capacity:1000}")
+    private int outboundCapacity;
+
+    public ReactiveChatWebSocketHandler(ReactiveSessionManager sessionManager, ChatFrameHandler frameHandler) {
+        this.sessionManager = sessionManager;
+        this.frameHandler = frameHandler;
+    }
+
+    /**
+     * Adapts a reactive session to the shared chat protocol; sends go through its bounded sink.
+     */
+    private final class ReactiveConnection implements ChatFrameHandler.Connection {
+        private final ReactiveSessionContext context;
+
+        ReactiveConnection(ReactiveSessionContext context) {
+            this.context = context;
+        }
+
+        @Override
+        public boolean isMultiplexed() {
+            return context.isMultiplexed();
+        }
+
+        @Override
+        public String getRoomId() {
+            return context.getRoomId();
+        }
+
+        @Override
+        public Set<String> getRooms() {
+            return context.getRooms();
+        }
+
+        @Override
+        public void join(String roomId) {
+            sessionManager.addSession(roomId, context);
+        }
+
+        @Override
+        public void leave(String roomId) {
+            sessionManager.removeSession(roomId, context);
+        }
+
+        @Override
+        public String getClientAddress() {
+            return String.valueOf(context.getSession().getHandshakeInfo().getRemoteAddress());
+        }
+
+        @Override
+        public void sendText(String text) {
+            sessionManager.send(context, context.getSession().textMessage(text));
+        }
+
+        @Override
+        public void sendBinary(byte[] bytes) {
+            WebSocketSession session = context.getSession();
+            sessionManager.send(context, session.binaryMessage(factory -> factory.wrap(bytes)));
+        }
+    }
+
+    @Override
+    public List<String> getSubProtocols() {
+        return List.of(BinaryMessageCodec.SUBPROTOCOL, BinaryMessageCodec.JSON_SUBPROTOCOL);
+    }
+
+    @Override
+    public Mono<Void> handle(WebSocketSession session) {
+        String path = session.getHandshakeInfo().getUri().getPath();
+        boolean multiplexed = ChatFrameHandler.isMultiplexedPath(path);
+        String roomId = multiplexed ? null : ChatFrameHandler.roomIdFromPath(path);
+        if (!multiplexed && (roomId == null || roomId.isBlank())) {
+            return session.close(CloseStatus.BAD_DATA.withReason("Room ID is missing or invalid."));
+        }
+
+        ReactiveSessionContext context = new ReactiveSessionContext(session, multiplexed, roomId, outboundCapacity);
+        ReactiveConnection connection = new ReactiveConnection(context);
+        sessionManager.open(context);
+        if (!multiplexed) {
+            sessionManager.addSession(roomId, context);
+        }
+
+        Mono<Void> input = session.receive()
+                .map(ReactiveChatWebSocketHandler::copyPayload)
+                .publishOn(Schedulers.boundedElastic())
+                .doOnNext(payload -> {
+                    if (payload instanceof String text) {
+                        frameHandler.handleText(connection, text);
+                    } else {
+                        frameHandler.handleBinary(connection, (ByteBuffer) payload);
+                    }
+                })
+                .doFinally(signal -> sessionManager.close(context))
+                .then();
+        Mono<Void> output = session.send(context.outbound());
+
+        return Mono.when(input, output)
+                .doFinally(signal -> {
+                    sessionManager.close(context);
+                    logger.debug("Connection {} closed ({})", session.getId(), signal);
+                });
+    }
+
+    /**
+     * Reactor Netty releases the frame buffer once the element has been emitted, so the payload
+     * must be copied before it crosses to another thread.
+     */
+    private static Object copyPayload(WebSocketMessage message) {
+        if (message.getType() == WebSocketMessage.Type.TEXT) {
+            return message.getPayloadAsText();
+        }
+        DataBuffer buffer = message.getPayload();
+        byte[] bytes = new byte[buffer.readableByteCount()];
+        buffer.read(bytes);
+        return ByteBuffer.wrap(bytes);
+    }
+}
@@ -0,0 +1,68 @@
+package com.chat.cs6650assignment3.serverreactive;
+
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.util.concurrent.Queues;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-connection state for the reactive server: the session, its bounded outbound sink and the
+ * rooms it is in. The sink plays the role SessionOutboundQueue plays on the servlet stack;
+ * Reactor Netty drains it on the connection's event loop.
+ */
+class ReactiveSessionContext {
+
+    private final WebSocketSession session;
+    private final boolean multiplexed;
+    private final String roomId;
+    private final Sinks.Many<WebSocketMessage> outbound;
+    private final Set<String> rooms = ConcurrentHashMap.newKeySet();
+
+    ReactiveSessionContext(WebSocketSession session, boolean multiplexed, String roomId, int capacity) {
+        this.session = session;
+        this.multiplexed = multiplexed;
+        this.roomId = roomId;
+        this.outbound = Sinks.many().unicast().onBackpressureBuffer(Queues.<WebSocketMessage>get(capacity).get());
+    }
+
+    WebSocketSession getSession() {
+        return session;
+    }
+
+    String getId() {
+        return session.getId();
+    }
+
+    boolean isMultiplexed() {
+        return multiplexed;
+    }
+
+    /** The room from the connection path; null for multiplexed connections. */
+    String getRoomId() {
+        return roomId;
+    }
+
+    Set<String> getRooms() {
+        return rooms;
+    }
+
+    Flux<WebSocketMessage> outbound() {
+        return outbound.asFlux();
+    }
+
+    /**
+     * Queues a frame without blocking. Producers (ack path, broadcast listener) may race, and a
+     * sink rejects concurrent emission, so emission is serialized here.
+     */
+    synchronized boolean offer(WebSocketMessage message) {
+        return outbound.tryEmitNext(message).isSuccess();
+    }
+
+    synchronized void complete() {
+        outbound.tryEmitComplete();
+    }
+}
@@ -0,0 +1,96 @@
+package com.chat.cs6650assignment3.serverreactive;
+
+import com.chat.cs6650assignment3.bus.MessageBus;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reactive counterpart of SessionManager: room membership for reactive sessions, kept in
+ * sync with the broadcast subscriptions through MessageBus, plus the outbound send path.
+ */
+@Service
+@Profile("reactive")
+public class ReactiveSessionManager {
+    private final ConcurrentHashMap<String, Set<ReactiveSessionContext>> roomSessions = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ReactiveSessionContext> sessions = new ConcurrentHashMap<>();
+    private final MessageBus messageBus;
+    private final Counter droppedCounter;
+
+    public ReactiveSessionManager(MessageBus messageBus, MeterRegistry meterRegistry) {
+        this.messageBus = messageBus;
+        this.droppedCounter = Counter.builder("chat.ws.outbound.dropped")
+                .tag("policy", "DROP_NEWEST")
+                .register(meterRegistry);
+        Gauge.builder("chat.ws.outbound.sessions", sessions, ConcurrentHashMap::size)
+                .register(meterRegistry);
+    }
+
+    void open(ReactiveSessionContext context) {
+        sessions.put(context.getId(), context);
+    }
+
+    /**
+     * Drops the session from every room and completes its outbound stream.
+     */
+    void close(ReactiveSessionContext context) {
+        if (sessions.remove(context.getId()) == null) {
+            return;
+        }
+        for (String roomId : context.getRooms()) {
+            leaveRoom(roomId, context);
+        }
+        context.getRooms().clear();
+        context.complete();
+    }
+
+    /**
+     * Registered before the room is bound, as in SessionManager, so a pending unbind sees the
+     * room occupied.
+     */
+    void addSession(String roomId, ReactiveSessionContext context) {
+        context.getRooms().add(roomId);
+        roomSessions.computeIfAbsent(roomId, k -> ConcurrentHashMap.newKeySet()).add(context);
+        try {
+            messageBus.subscribeBroadcasts(roomId);
+        } catch (RuntimeException e) {
+            removeSession(roomId, context);
+            throw e;
+        }
+    }
+
+    void removeSession(String roomId, ReactiveSessionContext context) {
+        if (context.getRooms().remove(roomId)) {
+            leaveRoom(roomId, context);
+        }
+    }
+
+    Set<ReactiveSessionContext> getSessions(String roomId) {
+        return roomSessions.getOrDefault(roomId, Collections.emptySet());
+    }
+
+    boolean send(ReactiveSessionContext context, WebSocketMessage message) {
+        if (context.offer(message)) {
+            return true;
+        }
+        droppedCounter.increment();
+        return false;
+    }
+
+    private void leaveRoom(String roomId, ReactiveSessionContext context) {
+        Set<ReactiveSessionContext> remaining = roomSessions.computeIfPresent(roomId, (k, v) -> {
+            v.remove(context);
+            return v.isEmpty() ? null : v;
+        });
+        if (remaining == null) {
+            messageBus.unsubscribeBroadcasts(roomId, () -> !roomSessions.containsKey(roomId));
+        }
+    }
+}
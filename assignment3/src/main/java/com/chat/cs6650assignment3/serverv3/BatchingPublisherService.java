@@ -0,0 +1,201 @@
+package com.chat.cs6650assignment3.serverv3;
+
+import com.chat.cs6650assignment3.model.QueueMessage;
+import com.chat.cs6650assignment3.model.QueueMessageBatch;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sits in front of RabbitMQProducerService and groups messages per room into one
+ * QueueMessageBatch envelope, flushed when it holds max-messages or window-ms after its first
+ * message, whichever comes first. Each caller's future completes when its envelope is
+ * published (or confirmed, with publisher confirms on).
+ *
+ * Envelopes of a room are published in the order they were taken, whichever thread flushed
+ * them: a window flush on the timer thread and a size flush on a caller's thread queue up
+ * behind each other, and one thread at a time sends the room's queue.
+ *
+ * With chat.rabbitmq.batch.enabled=false messages go straight to publishMessage.
+ */
+@Service
+public class BatchingPublisherService {
+
+    private static final class RoomBatch {
+        final String roomId;
+        List<QueueMessage> messages = new ArrayList<>();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        long firstNanos;
+        // Taken but not yet published, oldest first; sending is set while a thread drains it.
+        final ArrayDeque<Flush> pending = new ArrayDeque<>();
+        boolean sending;
+
+        RoomBatch(String roomId) {
+            this.roomId = roomId;
+        }
+    }
+
+    private record Flush(String roomId, List<QueueMessage> messages, List<CompletableFuture<Void>> futures) {
+    }
+
+    private final ConcurrentHashMap<String, RoomBatch> batches = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "Publish-Batcher"));
+
+    private final RabbitMQProducerService producerService;
+    private final DistributionSummary batchSizeSummary;
+    private final Timer batchDelayTimer;
+    private final MeterRegistry meterRegistry;
+
+    private final boolean enabled;
+    private final long windowNanos;
+    private final int maxMessages;
+
+    public BatchingPublisherService(RabbitMQProducerService producerService,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${chat.rabbitmq.batch.enabled:false}") boolean enabled,
+                                    @Value("${chat.rabbitmq.batch.window-ms:5}") long windowMs,
+                                    @Value("${chat.rabbitmq.batch.max-messages:100}") int maxMessages) {
+        this.producerService = producerService;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        this.maxMessages = maxMessages;
+
+        this.batchSizeSummary = DistributionSummary.builder("chat.rabbitmq.batch.size")
+                .description("Messages per published envelope")
+                .publishPercentiles(0.5, 0.99)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.batchDelayTimer = Timer.builder("chat.rabbitmq.batch.delay")
+                .description("Time the oldest message in an envelope waited before it was published")
+                .publishPercentiles(0.5, 0.99)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    public CompletableFuture<Void> publish(QueueMessage message) {
+        if (!enabled) {
+            return producerService.publishMessage(message);
+        }
+
+        RoomBatch batch = batches.computeIfAbsent(message.getRoomId(), RoomBatch::new);
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        boolean drain = false;
+        synchronized (batch) {
+            if (batch.messages.isEmpty()) {
+                batch.firstNanos = System.nanoTime();
+                scheduler.schedule(() -> onTimer(batch), windowNanos, TimeUnit.NANOSECONDS);
+            }
+            batch.messages.add(message);
+            batch.futures.add(future);
+            if (batch.messages.size() >= maxMessages) {
+                drain = enqueue(batch, take(batch, "size"));
+            }
+        }
+        if (drain) {
+            sendPending(batch);
+        }
+        return future;
+    }
+
+    private void onTimer(RoomBatch batch) {
+        synchronized (batch) {
+            // Flushed by size in the meantime; a newer batch has its own timer.
+            if (batch.messages.isEmpty() || System.nanoTime() - batch.firstNanos < windowNanos
+                    || !enqueue(batch, take(batch, "window"))) {
+                return;
+            }
+        }
+        sendPending(batch);
+    }
+
+    /**
+     * Must hold the batch lock. Hands the current messages to the caller and records metrics.
+     */
+    private Flush take(RoomBatch batch, String trigger) {
+        Flush flush = new Flush(batch.roomId, batch.messages, batch.futures);
+        batch.messages = new ArrayList<>(flush.messages().size());
+        batch.futures = new ArrayList<>(flush.futures().size());
+        batchSizeSummary.record(flush.messages().size());
+        batchDelayTimer.record(System.nanoTime() - batch.firstNanos, TimeUnit.NANOSECONDS);
+        meterRegistry.counter("chat.rabbitmq.batch.flushes", "trigger", trigger).increment();
+        return flush;
+    }
+
+    /**
+     * Must hold the batch lock. Queues the flush behind the room's earlier ones and returns
+     * true if the caller is to send them, false if another thread already is.
+     */
+    private static boolean enqueue(RoomBatch batch, Flush flush) {
+        batch.pending.addLast(flush);
+        if (batch.sending) {
+            return false;
+        }
+        batch.sending = true;
+        return true;
+    }
+
+    /**
+     * Publishes the room's queued flushes in order until none are left, including any queued
+     * by other threads meanwhile.
+     */
+    private void sendPending(RoomBatch batch) {
+        while (true) {
+            Flush next;
+            synchronized (batch) {
+                next = batch.pending.pollFirst();
+                if (next == null) {
+                    batch.sending = false;
+                    return;
+                }
+            }
+            send(next);
+        }
+    }
+
+    private void send(Flush flush) {
+        CompletableFuture<Void> published;
+        try {
+            published = flush.messages().size() == 1
+                    ? producerService.publishMessage(flush.messages().get(0))
+                    : producerService.publishBatch(new QueueMessageBatch(flush.roomId(), flush.messages()));
+        } catch (RuntimeException e) {
+            published = CompletableFuture.failedFuture(e);
+        }
+        published.whenComplete((ignored, error) -> {
+            for (CompletableFuture<Void> future : flush.futures()) {
+                if (error == null) {
+                    future.complete(null);
+                } else {
+                    future.completeExceptionally(error);
+                }
+            }
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+        for (RoomBatch batch : batches.values()) {
+            synchronized (batch) {
+                if (batch.messages.isEmpty() || !enqueue(batch, take(batch, "shutdown"))) {
+                    continue;
+                }
+            }
+            sendPending(batch);
+        }
+    }
+}
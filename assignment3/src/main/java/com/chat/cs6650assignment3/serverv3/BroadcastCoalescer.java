@@ -0,0 +1,215 @@
+package com.chat.cs6650assignment3.serverv3;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Collects broadcast bodies per room and sends them as one JSON array frame per session.
+ * A room's batch is flushed when it reaches max-messages, when no new message has arrived
+ * for window-ms, or when its oldest message has waited max-latency-ms, whichever comes first.
+ * A batch of one is sent as the plain object so quiet rooms pay no framing cost.
+ *
+ * Frames go to the sink set by the active broadcast consumer (servlet or reactive), which
+ * fans them out to the room's local sessions. A room's frames reach the sink in the order
+ * their batches were taken: flushes queue up per room and one thread at a time sends them,
+ * so a timer flush still being sent is never overtaken by the next size flush.
+ */
+@Component
+public class BroadcastCoalescer {
+
+    private static final Logger logger = LoggerFactory.getLogger(BroadcastCoalescer.class);
+
+    private static final class RoomBatch {
+        final String roomId;
+        List<byte[]> bodies = new ArrayList<>();
+        long firstNanos;
+        long lastNanos;
+        boolean flushScheduled;
+        // Taken but not yet sent, oldest first; sending is set while a thread drains it.
+        final ArrayDeque<List<byte[]>> pending = new ArrayDeque<>();
+        boolean sending;
+
+        RoomBatch(String roomId) {
+            this.roomId = roomId;
+        }
+    }
+
+    private final ConcurrentHashMap<String, RoomBatch> batches = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "Broadcast-Coalescer"));
+
+    private volatile BiConsumer<String, byte[]> roomSink = (roomId, frame) -> { };
+    private final DistributionSummary batchSizeSummary;
+    private final Timer batchDelayTimer;
+    private final MeterRegistry meterRegistry;
+
+    private final long windowNanos;
+    private final long maxLatencyNanos;
+    private final int maxMessages;
+
+    public BroadcastCoalescer(MeterRegistry meterRegistry,
+                              @Value("${chat.broadcast.coalesce.window-ms:10}") long windowMs,
+                              @Value("${chat.broadcast.coalesce.max-latency-ms:50}") long maxLatencyMs,
+                              @Value("${chat.broadcast.coalesce.max-messages:50}") int maxMessages) {
+        this.meterRegistry = meterRegistry;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        this.maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(windowMs, maxLatencyMs));
+        this.maxMessages = maxMessages;
+
+        this.batchSizeSummary = DistributionSummary.builder("chat.broadcast.coalesce.batch.size")
+                .description("Messages per coalesced broadcast frame")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.batchDelayTimer = Timer.builder("chat.broadcast.coalesce.delay")
+                .description("Time the oldest message in a batch waited before the frame was sent")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Where flushed frames go: roomId and the frame body, sent as one text frame per session.
+     */
+    public void setRoomSink(BiConsumer<String, byte[]> roomSink) {
+        this.roomSink = roomSink;
+    }
+
+    public void add(String roomId, byte[] body) {
+        RoomBatch batch = batches.computeIfAbsent(roomId, RoomBatch::new);
+        boolean drain = false;
+        synchronized (batch) {
+            long now = System.nanoTime();
+            if (batch.bodies.isEmpty()) {
+                batch.firstNanos = now;
+            }
+            batch.lastNanos = now;
+            batch.bodies.add(body);
+
+            if (batch.bodies.size() >= maxMessages) {
+                drain = enqueue(batch, takeBodies(batch, "size"));
+            } else if (!batch.flushScheduled) {
+                batch.flushScheduled = true;
+                scheduler.schedule(() -> onTimer(batch), windowNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        if (drain) {
+            sendPending(batch);
+        }
+    }
+
+    private void onTimer(RoomBatch batch) {
+        synchronized (batch) {
+            if (batch.bodies.isEmpty()) {
+                batch.flushScheduled = false;
+                return;
+            }
+            long now = System.nanoTime();
+            long windowDeadline = batch.lastNanos + windowNanos;
+            long latencyDeadline = batch.firstNanos + maxLatencyNanos;
+            long deadline = Math.min(windowDeadline, latencyDeadline);
+            if (now < deadline) {
+                // Messages kept arriving; wait out the rest of the window, but never past the cap.
+                scheduler.schedule(() -> onTimer(batch), deadline - now, TimeUnit.NANOSECONDS);
+                return;
+            }
+            batch.flushScheduled = false;
+            if (!enqueue(batch, takeBodies(batch, latencyDeadline <= windowDeadline ? "latency-cap" : "window"))) {
+                return;
+            }
+        }
+        sendPending(batch);
+    }
+
+    /**
+     * Must hold the batch lock. Hands the current bodies to the caller and records metrics.
+     */
+    private List<byte[]> takeBodies(RoomBatch batch, String trigger) {
+        List<byte[]> bodies = batch.bodies;
+        batch.bodies = new ArrayList<>(bodies.size());
+        batchSizeSummary.record(bodies.size());
+        batchDelayTimer.record(System.nanoTime() - batch.firstNanos, TimeUnit.NANOSECONDS);
+        meterRegistry.counter("chat.broadcast.coalesce.flushes", "trigger", trigger).increment();
+        return bodies;
+    }
+
+    /**
+     * Must hold the batch lock. Queues the bodies behind the room's earlier flushes and returns
+     * true if the caller is to send them, false if another thread already is.
+     */
+    private static boolean enqueue(RoomBatch batch, List<byte[]> bodies) {
+        batch.pending.addLast(bodies);
+        if (batch.sending) {
+            return false;
+        }
+        batch.sending = true;
+        return true;
+    }
+
+    /**
+     * Sends the room's queued flushes in order until none are left, including any queued by
+     * other threads meanwhile.
+     */
+    private void sendPending(RoomBatch batch) {
+        while (true) {
+            List<byte[]> next;
+            synchronized (batch) {
+                next = batch.pending.pollFirst();
+                if (next == null) {
+                    batch.sending = false;
+                    return;
+                }
+            }
+            send(batch.roomId, next);
+        }
+    }
+
+    private void send(String roomId, List<byte[]> bodies) {
+        try {
+            roomSink.accept(roomId, bodies.size() == 1 ? bodies.get(0) : toJsonArray(bodies));
+        } catch (Exception e) {
+            logger.error("Failed to send coalesced broadcast for room {}", roomId, e);
+        }
+    }
+
+    /**
+     * The bodies are already serialized JSON objects, so the array is built by splicing bytes.
+     */
+    private static byte[] toJsonArray(List<byte[]> bodies) {
+        int length = bodies.size() + 1;
+        for (byte[] body : bodies) {
+            length += body.length;
+        }
+        byte[] frame = new byte[length];
+        int pos = 0;
+        frame[pos++] = '[';
+        for (int i = 0; i < bodies.size(); i++) {
+            if (i > 0) {
+                frame[pos++] = ',';
+            }
+            byte[] body = bodies.get(i);
+            System.arraycopy(body, 0, frame, pos, body.length);
+            pos += body.length;
+        }
+        frame[pos] = ']';
+        return frame;
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+}
@@ -1,44 +1,104 @@
 package com.chat.cs6650assignment3.serverv3;
 
-import com.chat.cs6650assignment3.model.QueueMessage;
+import com.chat.cs6650assignment3.bus.BroadcastListener;
+import com.chat.cs6650assignment3.config.RabbitMQConfig;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Service;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 import java.util.Set;
 
 @Service
-public class BroadcastConsumerService {
+@Profile("!reactive")
+public class BroadcastConsumerService implements BroadcastListener {
     private static final Logger logger = LoggerFactory.getLogger(BroadcastConsumerService.class);
     private final SessionManager sessionManager;
     private final ObjectMapper objectMapper;
+    private final OutboundMessageDispatcher outboundDispatcher;
+    private final BroadcastCoalescer coalescer;
+    private final Counter noLocalRecipientsCounter;
 
-    public BroadcastConsumerService(SessionManager sessionManager, ObjectMapper objectMapper) {
+    @Value("${chat.broadcast.coalesce.enabled:false}")
+    private boolean coalesceEnabled;
+
+    public BroadcastConsumerService(SessionManager sessionManager, ObjectMapper objectMapper,
+                                    OutboundMessageDispatcher outboundDispatcher, BroadcastCoalescer coalescer,
+                                    MeterRegistry meterRegistry) {
         this.sessionManager = sessionManager;
         this.objectMapper = objectMapper;
+        this.outboundDispatcher = outboundDispatcher;
+        this.coalescer = coalescer;
+        coalescer.setRoomSink(this::sendToRoom);
+        this.noLocalRecipientsCounter = Counter.builder("chat.broadcast.no_local_recipients")
+                .description("Broadcasts received for a room with no sessions on this node")
+                .register(meterRegistry);
     }
 
+    /**
+     * Takes the broadcast body as-is: it is already the QueueMessage JSON the sessions expect, so it
+     * is wrapped once into a shared frame instead of being decoded and re-serialized per node.
+     * With chat.broadcast.coalesce.enabled the body goes to the per-room coalescer instead.
+     */
     @RabbitListener(queues = "#{serverBroadcastQueue.name}")
-    public void receiveBroadcast(QueueMessage message) {
+    public void receiveBroadcast(Message message) {
         try {
-            String messageJson = objectMapper.writeValueAsString(message);
-            TextMessage textMessage = new TextMessage(messageJson);
-
-            Set<WebSocketSession> sessionsInRoom = sessionManager.getSessions(message.getRoomId());
-            for (WebSocketSession session : sessionsInRoom) {
-                try {
-                    if (session.isOpen()) {
-                        synchronized(session) { session.sendMessage(textMessage); }
-                    }
-                } catch (Exception e) {
-                    logger.error("Failed to send broadcast to session {}", session.getId());
-                }
+            byte[] body = message.getBody();
+            String roomId = resolveRoomId(message, body);
+            if (roomId == null) {
+                logger.warn("Dropping broadcast without a roomId");
+                return;
+            }
+            onBroadcast(roomId, body);
+        } catch (Exception e) {
+            logger.error("Critical error processing broadcast message", e);
+        }
+    }
+
+    @Override
+    public void onBroadcast(String roomId, byte[] body) {
+        try {
+            Set<WebSocketSession> sessionsInRoom = sessionManager.getSessions(roomId);
+            if (sessionsInRoom.isEmpty()) {
+                noLocalRecipientsCounter.increment();
+                return;
+            }
+
+            if (coalesceEnabled) {
+                coalescer.add(roomId, body);
+                return;
             }
+
+            sendToRoom(roomId, body);
         } catch (Exception e) {
             logger.error("Critical error processing broadcast message", e);
         }
     }
-}
\ No newline at end of file
+
+    private void sendToRoom(String roomId, byte[] frame) {
+        TextMessage textMessage = new TextMessage(frame);
+        for (WebSocketSession session : sessionManager.getSessions(roomId)) {
+            if (session.isOpen()) {
+                outboundDispatcher.send(session, textMessage);
+            }
+        }
+    }
+
+    private String resolveRoomId(Message message, byte[] body) throws Exception {
+        Object header = message.getMessageProperties().getHeader(RabbitMQConfig.ROOM_ID_HEADER);
+        if (header != null) {
+            return header.toString();
+        }
+        // Publishers from before the roomId header existed; only hit during a rolling upgrade.
+        JsonNode roomId = objectMapper.readTree(body).get("roomId");
+        return roomId == null || roomId.isNull() ? null : roomId.asText();
+    }
+}
@@ -0,0 +1,249 @@
+package com.chat.cs6650assignment3.serverv3;
+
+import com.chat.cs6650assignment3.bus.MessageBus;
+import com.chat.cs6650assignment3.model.BinaryMessageCodec;
+import com.chat.cs6650assignment3.model.ChatMessage;
+import com.chat.cs6650assignment3.model.MessageIdGenerator;
+import com.chat.cs6650assignment3.model.QueueMessage;
+import com.chat.cs6650assignment3.model.ServerResponse;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * The chat protocol shared by the servlet and reactive WebSocket handlers: room-id parsing,
+ * subscribe/unsubscribe control frames, decoding and validation, message IDs, the publish and
+ * the ack/error frames. The handlers only adapt their session type to Connection.
+ */
+@Component
+public class ChatFrameHandler {
+
+    /** Connections to this path pick their rooms with subscribe/unsubscribe control frames. */
+    public static final String MULTIPLEXED_PATH = "/chat";
+    private static final int MAX_ROOM_ID_LENGTH = 64;
+
+    /**
+     * One WebSocket connection as the protocol sees it.
+     */
+    public interface Connection {
+        boolean isMultiplexed();
+
+        /** The room from the connection path; null for multiplexed connections. */
+        String getRoomId();
+
+        Set<String> getRooms();
+
+        void join(String roomId);
+
+        void leave(String roomId);
+
+        String getClientAddress();
+
+        void sendText(String text);
+
+        void sendBinary(byte[] bytes);
+    }
+
+    private final MessageBus messageBus;
+    private final ObjectMapper objectMapper;
+    private final ChatMessageDecoder messageDecoder;
+    private final MessageValidator validator;
+    private final String serverId = "server-" + java.util.UUID.randomUUID().toString().substring(0, 8);
+    private final Supplier<String> messageIds;
+
+    @Value("${chat.ws.max-rooms-per-session:50}")
+    private int maxRoomsPerSession;
+
+    /**
+     * Message IDs use chat.node-id when set. Otherwise the node id is leased from the broker, so
+     * no two connected nodes share one; the lease is taken in the background, so startup does not
+     * wait for RabbitMQ. Without a broker (inprocess) there is a single node and any id is unique.
+     */
+    public ChatFrameHandler(MessageBus messageBus, ObjectMapper objectMapper, ChatMessageDecoder messageDecoder,
+                            ObjectProvider<NodeIdLease> nodeIdLease, @Value("${chat.node-id:-1}") int nodeId) {
+        NodeIdLease lease = nodeId < 0 ? nodeIdLease.getIfAvailable() : null;
+        if (lease != null) {
+            lease.start(serverId.hashCode());
+            this.messageIds = lease::nextIdString;
+        } else {
+            MessageIdGenerator idGenerator = nodeId >= 0 ? new MessageIdGenerator(nodeId) : MessageIdGenerator.withRandomNode();
+            this.messageIds = idGenerator::nextIdString;
+        }
+        this.messageBus = messageBus;
+        this.objectMapper = objectMapper;
+        this.messageDecoder = messageDecoder;
+        this.validator = messageDecoder.getValidator();
+    }
+
+    public static boolean isMultiplexedPath(String path) {
+        return MULTIPLEXED_PATH.equals(path);
+    }
+
+    /**
+     * The room of a room-scoped connection, /chat/{roomId}; null if the path has none.
+     */
+    public static String roomIdFromPath(String path) {
+        if (path == null) {
+            return null;
+        }
+        int lastSlash = path.lastIndexOf('/');
+        if (lastSlash == -1 || lastSlash == path.length() - 1) {
+            return null;
+        }
+        return path.substring(lastSlash + 1);
+    }
+
+    public void handleText(Connection connection, String payload) {
+        try {
+            if (connection.isMultiplexed()) {
+                String action = messageDecoder.readAction(payload);
+                if (action != null) {
+                    handleControlFrame(connection, action, payload);
+                    return;
+                }
+            }
+
+            QueueMessage queueMessage = new QueueMessage();
+            MessageValidator.Result result = messageDecoder.decode(payload, queueMessage);
+            if (!result.isValid()) {
+                sendError(connection, validator.describe(result));
+                return;
+            }
+
+            String roomId;
+            if (connection.isMultiplexed()) {
+                roomId = queueMessage.getRoomId();
+                if (roomId == null || !connection.getRooms().contains(roomId)) {
+                    sendError(connection, "Not subscribed to room " + roomId + ".");
+                    return;
+                }
+            } else {
+                roomId = connection.getRoomId();
+            }
+            String clientMessageId = queueMessage.getClientMessageId();
+            // With publisher confirms the future completes on the broker confirm, not here.
+            publish(connection, roomId, queueMessage).whenComplete((ignored, error) -> {
+                try {
+                    if (error != null) {
+                        sendError(connection, RabbitMQProducerService.failureReason(error));
+                        return;
+                    }
+                    ServerResponse response = new ServerResponse("OK", Instant.now().toString(), payload);
+                    response.setOriginalMessageId(clientMessageId);
+                    connection.sendText(objectMapper.writeValueAsString(response));
+                } catch (IOException e) {
+                    System.out.println("Error while acknowledging message: " + e.getMessage());
+                }
+            });
+
+        } catch (Exception e) {
+            System.out.println("Error while publishing message to queue: " + e.getMessage());
+            try {
+                sendError(connection, e.getMessage());
+            } catch (IOException ioException) {
+
+            }
+        }
+    }
+
+    /**
+     * Subscribe/unsubscribe for multiplexed connections, e.g. {"action":"subscribe","roomId":"7"}.
+     */
+    private void handleControlFrame(Connection connection, String action, String payload) throws IOException {
+        JsonNode frame = objectMapper.readTree(payload);
+        String roomId = frame.path("roomId").asText(null);
+        if (!isValidRoomId(roomId)) {
+            sendError(connection, "Room ID is missing or invalid.");
+            return;
+        }
+
+        switch (action) {
+            case "subscribe" -> {
+                Set<String> rooms = connection.getRooms();
+                if (!rooms.contains(roomId) && rooms.size() >= maxRoomsPerSession) {
+                    sendError(connection, "Room limit of " + maxRoomsPerSession + " reached.");
+                    return;
+                }
+                connection.join(roomId);
+            }
+            case "unsubscribe" -> connection.leave(roomId);
+            default -> {
+                sendError(connection, "Unknown action " + action + ".");
+                return;
+            }
+        }
+        ServerResponse response = new ServerResponse("OK", Instant.now().toString(), action + " " + roomId);
+        connection.sendText(objectMapper.writeValueAsString(response));
+    }
+
+    public void handleBinary(Connection connection, ByteBuffer payload) {
+        if (connection.isMultiplexed()) {
+            // The binary frame layout has no room field; multiplexed connections use JSON.
+            connection.sendBinary(BinaryMessageCodec.encodeAck("ERROR", System.currentTimeMillis(), null,
+                    "Binary frames require a room-scoped connection."));
+            return;
+        }
+        try {
+            ChatMessage chatMessage = BinaryMessageCodec.decodeChatMessage(payload);
+            MessageValidator.Result result = validator.validate(chatMessage);
+            if (!result.isValid()) {
+                connection.sendBinary(BinaryMessageCodec.encodeAck("ERROR", System.currentTimeMillis(),
+                        chatMessage.getMessageId(), validator.describe(result)));
+                return;
+            }
+            QueueMessage queueMessage = new QueueMessage();
+            queueMessage.setUserId(chatMessage.getUserId());
+            queueMessage.setUsername(chatMessage.getUsername());
+            queueMessage.setMessage(chatMessage.getMessage());
+            queueMessage.setTimestamp(chatMessage.getTimestamp());
+            queueMessage.setMessageType(chatMessage.getMessageType());
+            queueMessage.setClientMessageId(chatMessage.getMessageId());
+            String clientMessageId = chatMessage.getMessageId();
+            publish(connection, connection.getRoomId(), queueMessage).whenComplete((ignored, error) -> {
+                String status = error == null ? "OK" : "ERROR";
+                String reason = error == null ? null : RabbitMQProducerService.failureReason(error);
+                connection.sendBinary(BinaryMessageCodec.encodeAck(status, System.currentTimeMillis(), clientMessageId, reason));
+            });
+
+        } catch (Exception e) {
+            System.out.println("Error while publishing message to queue: " + e.getMessage());
+            connection.sendBinary(BinaryMessageCodec.encodeAck("ERROR", System.currentTimeMillis(), null, e.getMessage()));
+        }
+    }
+
+    private CompletableFuture<Void> publish(Connection connection, String roomId, QueueMessage queueMessage) {
+        queueMessage.setMessageId(messageIds.get());
+        queueMessage.setRoomId(roomId);
+        queueMessage.setServerId(serverId);
+        queueMessage.setClientIp(connection.getClientAddress());
+        return messageBus.publish(queueMessage);
+    }
+
+    private void sendError(Connection connection, String reason) throws IOException {
+        ServerResponse errorResponse = new ServerResponse("ERROR", Instant.now().toString());
+        errorResponse.setMessage(reason);
+        connection.sendText(objectMapper.writeValueAsString(errorResponse));
+    }
+
+    private static boolean isValidRoomId(String roomId) {
+        if (roomId == null || roomId.isEmpty() || roomId.length() > MAX_ROOM_ID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < roomId.length(); i++) {
+            char c = roomId.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '-' && c != '_') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,164 @@
+package com.chat.cs6650assignment3.serverv3;
+
+import com.chat.cs6650assignment3.model.ChatMessage;
+import com.chat.cs6650assignment3.model.MessageIdGenerator;
+import com.chat.cs6650assignment3.model.QueueMessage;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Set;
+
+/**
+ * Decodes an inbound JSON chat frame straight into a {@link QueueMessage} in a single
+ * streaming pass, running each field through {@link MessageValidator} as it is read.
+ * Validation failures come back as a {@link MessageValidator.Result}; only malformed
+ * JSON surfaces as an exception. Unknown fields are malformed too, as they were for
+ * ObjectMapper.readValue into ChatMessage; roomId is the one field that class lacks.
+ */
+@Component
+public class ChatMessageDecoder {
+
+    private static final ChatMessage.MessageType[] MESSAGE_TYPES = ChatMessage.MessageType.values();
+    private static final Set<String> KNOWN_FIELDS =
+            Set.of("messageId", "roomId", "userId", "username", "message", "timestamp", "messageType");
+
+    private static final MessageIdGenerator ID_GENERATOR = MessageIdGenerator.withRandomNode();
+
+    private final JsonFactory jsonFactory;
+    private final MessageValidator validator;
+
+    public ChatMessageDecoder(ObjectMapper objectMapper) {
+        this(objectMapper, MessageValidator.DEFAULT);
+    }
+
+    public ChatMessageDecoder(ObjectMapper objectMapper, MessageValidator validator) {
+        this.jsonFactory = objectMapper.getFactory();
+        this.validator = validator;
+    }
+
+    public MessageValidator getValidator() {
+        return validator;
+    }
+
+    /**
+     * Fills userId, username, message, timestamp, messageType and clientMessageId on the
+     * given QueueMessage, plus roomId when the frame carries one (multiplexed connections).
+     * Server-side fields are left for the caller.
+     */
+    public MessageValidator.Result decode(String payload, QueueMessage target) throws IOException {
+        String messageId = null;
+        String roomId = null;
+        String userId = null;
+        String username = null;
+        String message = null;
+        String timestamp = null;
+        ChatMessage.MessageType messageType = null;
+        boolean hasMessageId = false;
+        boolean hasTimestamp = false;
+        // Each field's verdict, starting from what an absent field gets. A repeated field
+        // overwrites its verdict, as data binding keeps the last value.
+        MessageValidator.Result userIdResult = MessageValidator.Result.USER_ID_REQUIRED;
+        MessageValidator.Result usernameResult = MessageValidator.Result.USERNAME_INVALID;
+        MessageValidator.Result messageResult = MessageValidator.Result.MESSAGE_LENGTH_INVALID;
+        MessageValidator.Result timestampResult = MessageValidator.Result.OK;
+        MessageValidator.Result messageTypeResult = MessageValidator.Result.MESSAGE_TYPE_INVALID;
+
+        try (JsonParser parser = jsonFactory.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Chat message must be a JSON object.");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                if (!KNOWN_FIELDS.contains(field)) {
+                    throw new JsonParseException(parser, "Unrecognized field \"" + field + "\".");
+                }
+                JsonToken value = parser.nextToken();
+                if (value == JsonToken.START_OBJECT || value == JsonToken.START_ARRAY) {
+                    throw new JsonParseException(parser, "Field " + field + " must be a scalar value.");
+                }
+                String text = value == JsonToken.VALUE_NULL ? null : parser.getText();
+                switch (field) {
+                    case "messageId" -> {
+                        messageId = text;
+                        hasMessageId = true;
+                    }
+                    case "roomId" -> roomId = text;
+                    case "userId" -> {
+                        userId = text;
+                        userIdResult = validator.checkUserId(text);
+                    }
+                    case "username" -> {
+                        username = text;
+                        usernameResult = validator.checkUsername(text);
+                    }
+                    case "message" -> {
+                        message = text;
+                        messageResult = validator.checkMessage(text);
+                    }
+                    case "timestamp" -> {
+                        timestamp = text;
+                        hasTimestamp = true;
+                        timestampResult = validator.checkTimestamp(text);
+                    }
+                    case "messageType" -> {
+                        messageType = toMessageType(text);
+                        messageTypeResult = validator.checkMessageType(messageType);
+                    }
+                    default -> {
+                    }
+                }
+            }
+        }
+        // Report the first failure in MessageValidator.validate's field order.
+        if (userIdResult != MessageValidator.Result.OK) return userIdResult;
+        if (usernameResult != MessageValidator.Result.OK) return usernameResult;
+        if (messageResult != MessageValidator.Result.OK) return messageResult;
+        if (timestampResult != MessageValidator.Result.OK) return timestampResult;
+        if (messageTypeResult != MessageValidator.Result.OK) return messageTypeResult;
+
+        // Absent fields default the same way the ChatMessage constructor does.
+        if (!hasMessageId) messageId = ID_GENERATOR.nextIdString();
+        if (!hasTimestamp) timestamp = Instant.now().toString();
+
+        target.setClientMessageId(messageId);
+        target.setRoomId(roomId);
+        target.setUserId(userId);
+        target.setUsername(username);
+        target.setMessage(message);
+        target.setTimestamp(timestamp);
+        target.setMessageType(messageType);
+        return MessageValidator.Result.OK;
+    }
+
+    /**
+     * Returns the value of "action" when it is the first field of the frame, otherwise null.
+     * Control frames (subscribe/unsubscribe) lead with their action so chat frames can be told
+     * apart after a single token instead of a full parse.
+     */
+    public String readAction(String payload) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT
+                    || parser.nextToken() != JsonToken.FIELD_NAME
+                    || !"action".equals(parser.currentName())) {
+                return null;
+            }
+            return parser.nextToken() == JsonToken.VALUE_STRING ? parser.getText() : null;
+        }
+    }
+
+    private static ChatMessage.MessageType toMessageType(String name) {
+        if (name == null) return null;
+        for (ChatMessage.MessageType type : MESSAGE_TYPES) {
+            if (type.name().equals(name)) {
+                return type;
+            }
+        }
+        return null;
+    }
+}
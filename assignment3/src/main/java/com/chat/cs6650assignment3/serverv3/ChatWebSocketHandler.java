@@ -1,46 +1,107 @@
 package com.chat.cs6650assignment3.serverv3;
 
-import com.chat.cs6650assignment3.model.ChatMessage;
-import com.chat.cs6650assignment3.model.QueueMessage;
-import com.chat.cs6650assignment3.model.ServerResponse;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
-import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
 
-import java.io.IOException;
-import java.time.Instant;
-import java.time.format.DateTimeParseException;
-import java.util.regex.Pattern;
+import java.util.Set;
 
 @Component
-public class ChatWebSocketHandler  extends TextWebSocketHandler {
-    private final RabbitMQProducerService producerService;
+@Profile("!reactive")
+public class ChatWebSocketHandler extends AbstractWebSocketHandler {
     private final SessionManager sessionManager;
-    private final ObjectMapper objectMapper;
-    private final String serverId = "server-" + java.util.UUID.randomUUID().toString().substring(0, 8);
-
-    private static final Pattern USERNAME_PATTERN = Pattern.compile("^[a-zA-Z0-9_]{3,20}$");
+    private final ChatFrameHandler frameHandler;
+    private final OutboundMessageDispatcher outboundDispatcher;
 
     public static final String ROOM_ID_ATTRIBUTE = "roomId";
+    public static final String MULTIPLEXED_ATTRIBUTE = "multiplexed";
+    private static final String CONNECTION_ATTRIBUTE = "connection";
+
+    /** Connections to this path pick their rooms with subscribe/unsubscribe control frames. */
+    public static final String MULTIPLEXED_PATH = ChatFrameHandler.MULTIPLEXED_PATH;
 
-    public ChatWebSocketHandler(RabbitMQProducerService producerService, SessionManager sessionManager, ObjectMapper objectMapper) {
-        this.producerService = producerService;
+    public ChatWebSocketHandler(SessionManager sessionManager, ChatFrameHandler frameHandler,
+                                OutboundMessageDispatcher outboundDispatcher) {
         this.sessionManager = sessionManager;
-        this.objectMapper = objectMapper;
+        this.frameHandler = frameHandler;
+        this.outboundDispatcher = outboundDispatcher;
+    }
+
+    /**
+     * Adapts a servlet session to the shared chat protocol; sends go through the session's
+     * outbound queue.
+     */
+    private final class ServletConnection implements ChatFrameHandler.Connection {
+        private final WebSocketSession session;
+
+        ServletConnection(WebSocketSession session) {
+            this.session = session;
+        }
+
+        @Override
+        public boolean isMultiplexed() {
+            return ChatWebSocketHandler.isMultiplexed(session);
+        }
+
+        @Override
+        public String getRoomId() {
+            return (String) session.getAttributes().get(ROOM_ID_ATTRIBUTE);
+        }
+
+        @Override
+        public Set<String> getRooms() {
+            return sessionManager.getRooms(session);
+        }
+
+        @Override
+        public void join(String roomId) {
+            sessionManager.addSession(roomId, session);
+        }
+
+        @Override
+        public void leave(String roomId) {
+            sessionManager.removeSession(roomId, session);
+        }
+
+        @Override
+        public String getClientAddress() {
+            return session.getRemoteAddress().toString();
+        }
+
+        @Override
+        public void sendText(String text) {
+            outboundDispatcher.send(session, new TextMessage(text));
+        }
+
+        @Override
+        public void sendBinary(byte[] bytes) {
+            outboundDispatcher.send(session, new BinaryMessage(bytes));
+        }
     }
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
         try {
-            String roomId = getRoomId(session);
+            session.getAttributes().put(CONNECTION_ATTRIBUTE, new ServletConnection(session));
+            String path = session.getUri() == null ? null : session.getUri().getPath();
+            if (ChatFrameHandler.isMultiplexedPath(path)) {
+                session.getAttributes().put(MULTIPLEXED_ATTRIBUTE, Boolean.TRUE);
+                outboundDispatcher.register(session);
+                return;
+            }
+
+            String roomId = ChatFrameHandler.roomIdFromPath(path);
             if (roomId == null || roomId.isBlank()) {
                 session.close(CloseStatus.BAD_DATA.withReason("Room ID is missing or invalid."));
                 return;
             }
 
+            session.getAttributes().put(ROOM_ID_ATTRIBUTE, roomId);
+            outboundDispatcher.register(session);
             sessionManager.addSession(roomId, session);
 
         } catch (Exception e) {
@@ -49,99 +110,36 @@ public class ChatWebSocketHandler  extends TextWebSocketHandler {
     }
 
     @Override
-    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
-        try {
-            ChatMessage chatMessage = objectMapper.readValue(message.getPayload(), ChatMessage.class);
-            validateMessage(chatMessage);
-            QueueMessage queueMessage = new QueueMessage();
-            queueMessage.setMessageId(java.util.UUID.randomUUID().toString());
-            queueMessage.setRoomId(getRoomId(session));
-            queueMessage.setUserId(chatMessage.getUserId());
-            queueMessage.setUsername(chatMessage.getUsername());
-            queueMessage.setMessage(chatMessage.getMessage());
-            queueMessage.setTimestamp(chatMessage.getTimestamp());
-            queueMessage.setMessageType(chatMessage.getMessageType());
-            queueMessage.setServerId(serverId);
-            queueMessage.setClientIp(session.getRemoteAddress().toString());
-            queueMessage.setClientMessageId(chatMessage.getMessageId());
-            producerService.publishMessage(queueMessage);
-            String originalId = chatMessage.getMessageId();
-            ServerResponse response = new ServerResponse("OK", Instant.now().toString(), message);
-            response.setOriginalMessageId(originalId);
-            synchronized (session) {
-                if (session.isOpen()) {
-                    session.sendMessage(new TextMessage(objectMapper.writeValueAsString(response)));
-                }
-            }
-
-        } catch (Exception e) {
-            System.out.println("Error while publishing message to queue: " + e.getMessage());
-            ServerResponse errorResponse = new ServerResponse("ERROR", Instant.now().toString());
-            errorResponse.setMessage(e.getMessage());
-            try {
-                synchronized (session) {
-                    if (session.isOpen()) {
-                        session.sendMessage(new TextMessage(objectMapper.writeValueAsString(errorResponse)));
-                    }
-                }
-            } catch (IOException ioException) {
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+        frameHandler.handleText(connection(session), message.getPayload());
+    }
 
-            }
-        }
+    @Override
+    protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) {
+        frameHandler.handleBinary(connection(session), message.getPayload());
     }
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
+        outboundDispatcher.unregister(session);
         String roomId = (String) session.getAttributes().get(ROOM_ID_ATTRIBUTE);
+        Set<String> rooms = Set.copyOf(sessionManager.getRooms(session));
+        sessionManager.removeAll(session);
 
-        if (roomId != null) {
-            sessionManager.removeSession(roomId, session);
+        if (isMultiplexed(session)) {
+            System.out.println("Connection closed from " + session.getRemoteAddress() + " for rooms " + rooms + " with status " + status);
+        } else if (roomId != null) {
             System.out.println("Connection closed from " + session.getRemoteAddress() + " for room " + roomId + " with status " + status);
         } else {
             System.out.println("Connection closed from " + session.getRemoteAddress() + " (room ID unknown) with status " + status);
         }
     }
 
-    private String getRoomId(WebSocketSession session) {
-        if (session.getUri() == null || session.getUri().getPath() == null) {
-            return null;
-        }
-        String path = session.getUri().getPath();
-        int lastSlash = path.lastIndexOf('/');
-        if (lastSlash == -1 || lastSlash == path.length() - 1) {
-            return null;
-        }
-        return path.substring(lastSlash + 1);
+    private static ChatFrameHandler.Connection connection(WebSocketSession session) {
+        return (ChatFrameHandler.Connection) session.getAttributes().get(CONNECTION_ATTRIBUTE);
     }
 
-    private void validateMessage(ChatMessage msg) {
-        if (msg.getUserId() == null) throw new IllegalArgumentException("userId is required.");
-        try {
-            int userIdInt = Integer.parseInt(msg.getUserId());
-            if (userIdInt < 1 || userIdInt > 100000) {
-                throw new IllegalArgumentException("userId must be between 1 and 100000.");
-            }
-        } catch (NumberFormatException e) {
-            throw new IllegalArgumentException("userId must be a valid integer string.");
-        }
-
-        if (msg.getUsername() == null || !USERNAME_PATTERN.matcher(msg.getUsername()).matches()) {
-            throw new IllegalArgumentException("username must be 3-20 alphanumeric characters.");
-        }
-
-        if (msg.getMessage() == null || msg.getMessage().length() < 1 || msg.getMessage().length() > 500) {
-            throw new IllegalArgumentException("message must be between 1 and 500 characters.");
-        }
-
-        if (msg.getTimestamp() == null) throw new IllegalArgumentException("timestamp is required.");
-        try {
-            Instant.parse(msg.getTimestamp());
-        } catch (DateTimeParseException e) {
-            throw new IllegalArgumentException("timestamp must be a valid ISO-8601 timestamp.");
-        }
-
-        if (msg.getMessageType() == null) {
-            throw new IllegalArgumentException("messageType must be TEXT, JOIN, or LEAVE.");
-        }
+    private static boolean isMultiplexed(WebSocketSession session) {
+        return Boolean.TRUE.equals(session.getAttributes().get(MULTIPLEXED_ATTRIBUTE));
     }
 }
@@ -0,0 +1,154 @@
+package com.chat.cs6650assignment3.serverv3;
+
+import com.chat.cs6650assignment3.model.MessageIdGenerator;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.ShutdownSignalException;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Leases this node's message-ID node bits from the broker when chat.node-id is unset. Node id n
+ * is held by declaring the exclusive, auto-delete queue chat.node-id.n: RabbitMQ lets only one
+ * connection own an exclusive queue and answers RESOURCE_LOCKED to everyone else, and drops the
+ * queue, freeing the id, when the owning connection closes.
+ *
+ * The lease is tied to the connection, so after a reconnect it is taken again; if another node
+ * got the id in between, this node moves to a free one. IDs issued while partitioned from the
+ * broker can still collide with that other node's; set chat.node-id where that matters.
+ *
+ * start() leases in the background and retries until the broker answers, so a node can start
+ * while RabbitMQ is down. Until the lease is held, IDs come from random node bits.
+ */
+@Component
+@Profile("!inprocess")
+public class NodeIdLease {
+
+    private static final Logger logger = LoggerFactory.getLogger(NodeIdLease.class);
+
+    static final String QUEUE_PREFIX = "chat.node-id.";
+
+    private final RabbitAdmin rabbitAdmin;
+    private final ConnectionFactory connectionFactory;
+    private final long retryMs;
+    private final ScheduledExecutorService executor =
+            Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "Node-Id-Lease"));
+    private final MessageIdGenerator fallback = MessageIdGenerator.withRandomNode();
+
+    private volatile int nodeId = -1;
+    private volatile MessageIdGenerator idGenerator;
+    private boolean warned;
+
+    public NodeIdLease(RabbitAdmin rabbitAdmin, ConnectionFactory connectionFactory,
+                       @Value("${chat.node-id-lease.retry-ms:5000}") long retryMs) {
+        this.rabbitAdmin = rabbitAdmin;
+        this.connectionFactory = connectionFactory;
+        this.retryMs = retryMs;
+    }
+
+    /**
+     * Leases a node id, starting from preferredId, on the lease thread and returns at once.
+     * Failed attempts are retried every retry-ms until one succeeds.
+     */
+    public void start(int preferredId) {
+        executor.execute(() -> tryAcquire(preferredId));
+    }
+
+    private void tryAcquire(int preferredId) {
+        try {
+            acquire(preferredId);
+            logger.info("Leased message node id {}", nodeId);
+        } catch (RuntimeException e) {
+            if (!warned) {
+                warned = true;
+                logger.warn("Could not lease a message node id; issuing message IDs from random node bits, "
+                        + "which may collide with another node's, until it is held. Retrying every {} ms", retryMs, e);
+            }
+            executor.schedule(() -> tryAcquire(preferredId), retryMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Takes a free node id, starting from preferredId, and keeps holding one across reconnects.
+     * Fails if the broker is unreachable or every id is taken.
+     */
+    public synchronized void acquire(int preferredId) {
+        if (idGenerator != null) {
+            return;
+        }
+        lease(Math.floorMod(preferredId, MessageIdGenerator.NODE_IDS));
+        connectionFactory.addConnectionListener(connection -> executor.execute(this::renew));
+    }
+
+    public int getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * The next ID from the leased node id, or from random node bits until one is leased.
+     */
+    public String nextIdString() {
+        MessageIdGenerator generator = idGenerator;
+        return (generator != null ? generator : fallback).nextIdString();
+    }
+
+    private synchronized void renew() {
+        int previous = nodeId;
+        try {
+            if (lease(previous) != previous) {
+                logger.warn("Message node id {} was taken while disconnected; now using {}", previous, nodeId);
+            }
+        } catch (RuntimeException e) {
+            logger.error("Could not renew the message node id lease; keeping {}", previous, e);
+        }
+    }
+
+    private int lease(int firstCandidate) {
+        for (int i = 0; i < MessageIdGenerator.NODE_IDS; i++) {
+            int candidate = (firstCandidate + i) % MessageIdGenerator.NODE_IDS;
+            try {
+                rabbitAdmin.declareQueue(new Queue(QUEUE_PREFIX + candidate, false, true, true));
+            } catch (AmqpException e) {
+                if (isResourceLocked(e)) {
+                    continue;
+                }
+                throw new IllegalStateException(
+                        "Could not lease a message node id from the broker; set chat.node-id", e);
+            }
+            if (candidate != nodeId) {
+                idGenerator = new MessageIdGenerator(candidate);
+                nodeId = candidate;
+            }
+            return candidate;
+        }
+        throw new IllegalStateException("All " + MessageIdGenerator.NODE_IDS
+                + " message node ids are leased; set chat.node-id");
+    }
+
+    static boolean isResourceLocked(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof ShutdownSignalException signal
+                    && signal.getReason() instanceof AMQP.Channel.Close close
+                    && close.getReplyCode() == AMQP.RESOURCE_LOCKED) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
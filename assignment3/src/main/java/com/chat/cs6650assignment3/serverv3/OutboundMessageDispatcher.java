@@ -0,0 +1,284 @@
+package com.chat.cs6650assignment3.serverv3;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.NativeWebSocketSession;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Owns every outbound write to a WebSocket session. Callers (ack path, broadcast listener)
+ * enqueue and return immediately; a per-session drainer on the outbound pool does the actual
+ * sendMessage, so one slow client can no longer stall the thread fanning out to a room.
+ *
+ * Sessions that fall too far behind (outstanding bytes, time without a successful write, or
+ * consecutive write failures) are evicted with {@link #SLOW_CONSUMER_CLOSE_STATUS} so they stop
+ * costing fan-out time and drainer threads.
+ */
+@Service
+@Profile("!reactive")
+public class OutboundMessageDispatcher {
+
+    public enum OverflowPolicy {
+        DROP_OLDEST, DROP_NEWEST, DISCONNECT
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboundMessageDispatcher.class);
+    private static final int MAX_MESSAGES_PER_DRAIN = 64;
+    private static final CloseStatus OVERFLOW_CLOSE_STATUS =
+            CloseStatus.SESSION_NOT_RELIABLE.withReason("Outbound queue overflow");
+    public static final CloseStatus SLOW_CONSUMER_CLOSE_STATUS = new CloseStatus(4001, "Slow consumer");
+
+    // Tomcat's per-session bound on a blocking write; keeps a stuck client from pinning a drainer.
+    private static final String TOMCAT_BLOCKING_SEND_TIMEOUT = "org.apache.tomcat.websocket.BLOCKING_SEND_TIMEOUT";
+
+    private final ConcurrentHashMap<String, SessionOutboundQueue> queues = new ConcurrentHashMap<>();
+    private final Executor outboundPool;
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+
+    private final DistributionSummary queueDepthSummary;
+    private final Timer sendLatencyTimer;
+    private final Counter droppedCounter;
+    private final Counter disconnectedCounter;
+    private final Counter sendFailuresCounter;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${chat.ws.slow-consumer.max-outstanding-bytes:1048576}")
+    private long maxOutstandingBytes;
+
+    @Value("${chat.ws.slow-consumer.max-stall-ms:5000}")
+    private long maxStallMs;
+
+    @Value("${chat.ws.slow-consumer.max-consecutive-failures:3}")
+    private int maxConsecutiveFailures;
+
+    @Value("${chat.ws.slow-consumer.send-timeout-ms:2000}")
+    private long sendTimeoutMs;
+
+    public OutboundMessageDispatcher(@Qualifier("outboundSendPool") Executor outboundPool,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${chat.ws.outbound.capacity:1000}") int capacity,
+                                     @Value("${chat.ws.outbound.overflow-policy:DROP_OLDEST}") OverflowPolicy overflowPolicy) {
+        this.outboundPool = outboundPool;
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        this.meterRegistry = meterRegistry;
+
+        this.queueDepthSummary = DistributionSummary.builder("chat.ws.outbound.queue.depth")
+                .description("Per-session outbound queue depth, sampled on every enqueue")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.sendLatencyTimer = Timer.builder("chat.ws.outbound.send.latency")
+                .description("Time from enqueue to completed write on the session")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.droppedCounter = Counter.builder("chat.ws.outbound.dropped")
+                .tag("policy", overflowPolicy.name())
+                .register(meterRegistry);
+        this.disconnectedCounter = Counter.builder("chat.ws.outbound.disconnected")
+                .register(meterRegistry);
+        this.sendFailuresCounter = Counter.builder("chat.ws.outbound.send.failures")
+                .register(meterRegistry);
+        Gauge.builder("chat.ws.outbound.sessions", queues, ConcurrentHashMap::size)
+                .register(meterRegistry);
+        Gauge.builder("chat.ws.outbound.queued", this, OutboundMessageDispatcher::totalQueued)
+                .register(meterRegistry);
+        Gauge.builder("chat.ws.outbound.outstanding.bytes", this, OutboundMessageDispatcher::totalOutstandingBytes)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    public void register(WebSocketSession session) {
+        if (session instanceof NativeWebSocketSession nativeSession) {
+            jakarta.websocket.Session wsSession = nativeSession.getNativeSession(jakarta.websocket.Session.class);
+            if (wsSession != null) {
+                wsSession.getUserProperties().put(TOMCAT_BLOCKING_SEND_TIMEOUT, sendTimeoutMs);
+            }
+        }
+        queues.putIfAbsent(session.getId(), new SessionOutboundQueue(session, capacity));
+    }
+
+    public void unregister(WebSocketSession session) {
+        SessionOutboundQueue queue = queues.remove(session.getId());
+        if (queue != null) {
+            queue.clear();
+        }
+    }
+
+    /**
+     * Queues a message for the session without blocking. Returns false if the message was
+     * not queued, either because the session is unknown or because of the overflow policy.
+     */
+    public boolean send(WebSocketSession session, WebSocketMessage<?> message) {
+        SessionOutboundQueue queue = queues.get(session.getId());
+        if (queue == null) {
+            return false;
+        }
+
+        if (!queue.offer(message)) {
+            switch (overflowPolicy) {
+                case DROP_NEWEST -> {
+                    droppedCounter.increment();
+                    return false;
+                }
+                case DROP_OLDEST -> {
+                    if (queue.poll() != null) {
+                        droppedCounter.increment();
+                    }
+                    if (!queue.offer(message)) {
+                        droppedCounter.increment();
+                        return false;
+                    }
+                }
+                case DISCONNECT -> {
+                    disconnect(queue);
+                    return false;
+                }
+            }
+        }
+
+        queueDepthSummary.record(queue.depth());
+        if (queue.outstandingBytes() > maxOutstandingBytes) {
+            evictSlowConsumer(queue, "outstanding-bytes");
+            return false;
+        }
+        scheduleDrain(queue);
+        return true;
+    }
+
+    /**
+     * Catches sessions whose drainer is stuck: data has been waiting with no successful write
+     * for longer than max-stall-ms.
+     */
+    @Scheduled(fixedDelayString = "${chat.ws.slow-consumer.check-interval-ms:1000}")
+    public void evictStalledSessions() {
+        long now = System.nanoTime();
+        long maxStallNanos = TimeUnit.MILLISECONDS.toNanos(maxStallMs);
+        for (SessionOutboundQueue queue : queues.values()) {
+            if (queue.stalledNanos(now) > maxStallNanos) {
+                evictSlowConsumer(queue, "stalled");
+            }
+        }
+    }
+
+    public int getQueueDepth(WebSocketSession session) {
+        SessionOutboundQueue queue = queues.get(session.getId());
+        return queue == null ? 0 : queue.depth();
+    }
+
+    private void scheduleDrain(SessionOutboundQueue queue) {
+        if (!queue.tryStartDrain()) {
+            return;
+        }
+        try {
+            outboundPool.execute(() -> drain(queue));
+        } catch (RejectedExecutionException e) {
+            queue.finishDrain();
+            logger.warn("Outbound pool rejected drain for session {}", queue.getSession().getId());
+        }
+    }
+
+    private void drain(SessionOutboundQueue queue) {
+        WebSocketSession session = queue.getSession();
+        try {
+            int sent = 0;
+            SessionOutboundQueue.Pending pending;
+            while (sent < MAX_MESSAGES_PER_DRAIN && (pending = queue.poll()) != null) {
+                if (!session.isOpen()) {
+                    queue.clear();
+                    break;
+                }
+                try {
+                    session.sendMessage(pending.message);
+                    queue.recordWriteSuccess();
+                    sendLatencyTimer.record(System.nanoTime() - pending.enqueuedNanos, TimeUnit.NANOSECONDS);
+                } catch (Exception e) {
+                    sendFailuresCounter.increment();
+                    logger.error("Failed to send to session {}", session.getId());
+                    if (queue.recordWriteFailure() >= maxConsecutiveFailures) {
+                        evictSlowConsumer(queue, "write-failures");
+                        break;
+                    }
+                }
+                sent++;
+            }
+        } finally {
+            queue.finishDrain();
+            // A producer may have enqueued after our last poll but before finishDrain.
+            if (!queue.isEmpty()) {
+                scheduleDrain(queue);
+            }
+        }
+    }
+
+    private void disconnect(SessionOutboundQueue queue) {
+        if (close(queue, OVERFLOW_CLOSE_STATUS)) {
+            disconnectedCounter.increment();
+        }
+    }
+
+    private void evictSlowConsumer(SessionOutboundQueue queue, String reason) {
+        if (close(queue, SLOW_CONSUMER_CLOSE_STATUS)) {
+            meterRegistry.counter("chat.ws.slow_consumer.evicted", "reason", reason).increment();
+            logger.warn("Evicting slow consumer {} ({}): {} bytes outstanding, {} consecutive failures",
+                    queue.getSession().getId(), reason, queue.outstandingBytes(), queue.consecutiveFailures());
+        }
+    }
+
+    /**
+     * Detaches the queue and closes its session off the caller's thread. Returns false if
+     * another path already detached it.
+     */
+    private boolean close(SessionOutboundQueue queue, CloseStatus status) {
+        WebSocketSession session = queue.getSession();
+        if (!queues.remove(session.getId(), queue)) {
+            return false;
+        }
+        queue.clear();
+        try {
+            outboundPool.execute(() -> {
+                try {
+                    session.close(status);
+                } catch (Exception e) {
+                    logger.error("Failed to close session {}", session.getId());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.warn("Outbound pool rejected close for session {}", session.getId());
+        }
+        return true;
+    }
+
+    private double totalOutstandingBytes() {
+        long total = 0;
+        for (SessionOutboundQueue queue : queues.values()) {
+            total += queue.outstandingBytes();
+        }
+        return total;
+    }
+
+    private double totalQueued() {
+        long total = 0;
+        for (SessionOutboundQueue queue : queues.values()) {
+            total += queue.depth();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,135 @@
+package com.chat.cs6650assignment3.serverv3;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Dedicated publisher connections for RabbitMQProducerService. Each stripe owns one
+ * connection with a single channel, driven by a single thread, so a flow-controlled channel
+ * only stalls its own rooms and publishers never contend on channel checkout. Rooms are
+ * hashed to a fixed stripe, which keeps per-room publish order.
+ *
+ * Disabled with chat.rabbitmq.publisher.stripes=0; the shared RabbitTemplate is used then.
+ */
+@Component
+public class PublisherStripes {
+
+    private static final class Stripe {
+        final CachingConnectionFactory connectionFactory;
+        final RabbitTemplate template;
+        final ThreadPoolExecutor executor;
+        final Counter publishedCounter;
+        final Timer blockedTimer;
+
+        Stripe(CachingConnectionFactory connectionFactory, RabbitTemplate template, ThreadPoolExecutor executor,
+               Counter publishedCounter, Timer blockedTimer) {
+            this.connectionFactory = connectionFactory;
+            this.template = template;
+            this.executor = executor;
+            this.publishedCounter = publishedCounter;
+            this.blockedTimer = blockedTimer;
+        }
+    }
+
+    private final Stripe[] stripes;
+
+    public PublisherStripes(ConnectionFactory connectionFactory,
+                            MessageConverter messageConverter,
+                            MeterRegistry meterRegistry,
+                            @Value("${chat.rabbitmq.publisher.stripes:0}") int stripeCount,
+                            @Value("${chat.rabbitmq.publisher.queue-capacity:10000}") int queueCapacity) {
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            String stripeTag = String.valueOf(i);
+            CachingConnectionFactory stripeFactory = newStripeFactory(connectionFactory, i);
+            RabbitTemplate template = new RabbitTemplate(stripeFactory);
+            template.setMessageConverter(messageConverter);
+
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(queueCapacity), r -> new Thread(r, "Publisher-Stripe-" + stripeTag));
+            Gauge.builder("chat.rabbitmq.stripe.queued", executor, e -> e.getQueue().size())
+                    .description("Publishes waiting for the stripe's thread")
+                    .tag("stripe", stripeTag)
+                    .register(meterRegistry);
+            Counter publishedCounter = Counter.builder("chat.rabbitmq.stripe.published")
+                    .tag("stripe", stripeTag)
+                    .register(meterRegistry);
+            Timer blockedTimer = Timer.builder("chat.rabbitmq.stripe.blocked")
+                    .description("Time the stripe's thread spent inside basicPublish, including flow control")
+                    .tag("stripe", stripeTag)
+                    .register(meterRegistry);
+            stripes[i] = new Stripe(stripeFactory, template, executor, publishedCounter, blockedTimer);
+        }
+    }
+
+    private static CachingConnectionFactory newStripeFactory(ConnectionFactory shared, int index) {
+        if (!(shared instanceof CachingConnectionFactory caching)) {
+            throw new IllegalStateException("Publisher stripes require a CachingConnectionFactory");
+        }
+        CachingConnectionFactory factory = new CachingConnectionFactory(caching.getRabbitConnectionFactory());
+        if (caching.isPublisherConfirms()) {
+            factory.setPublisherConfirmType(CachingConnectionFactory.ConfirmType.CORRELATED);
+        }
+        factory.setChannelCacheSize(1);
+        factory.setConnectionNameStrategy(f -> "chat-publisher-stripe-" + index);
+        return factory;
+    }
+
+    public boolean isEnabled() {
+        return stripes.length > 0;
+    }
+
+    /**
+     * Runs the publish on the room's stripe. The future completes once the message has been
+     * handed to the broker, or fails if the stripe's queue is full or the publish throws.
+     */
+    public CompletableFuture<Void> submit(String roomId, Consumer<RabbitTemplate> publish) {
+        Stripe stripe = stripes[Math.floorMod(roomId.hashCode(), stripes.length)];
+        CompletableFuture<Void> sent = new CompletableFuture<>();
+        try {
+            stripe.executor.execute(() -> {
+                long start = System.nanoTime();
+                try {
+                    publish.accept(stripe.template);
+                    stripe.publishedCounter.increment();
+                    sent.complete(null);
+                } catch (RuntimeException e) {
+                    sent.completeExceptionally(e);
+                } finally {
+                    stripe.blockedTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            sent.completeExceptionally(new AmqpException("Publisher stripe for room " + roomId + " is full"));
+        }
+        return sent;
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        for (Stripe stripe : stripes) {
+            stripe.executor.shutdown();
+        }
+        for (Stripe stripe : stripes) {
+            stripe.executor.awaitTermination(5, TimeUnit.SECONDS);
+            stripe.connectionFactory.destroy();
+        }
+    }
+}
@@ -1,20 +1,88 @@
 package com.chat.cs6650assignment3.serverv3;
 
+import com.chat.cs6650assignment3.config.QueueMessageConverter;
 import com.chat.cs6650assignment3.config.RabbitMQConfig;
 import com.chat.cs6650assignment3.model.QueueMessage;
+import com.chat.cs6650assignment3.model.QueueMessageBatch;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.amqp.AmqpConnectException;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.retry.annotation.CircuitBreaker;
 import org.springframework.retry.annotation.Recover;
 import org.springframework.stereotype.Service;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Publishes chat messages to the room queues. The returned future completes when the message
+ * counts as accepted: immediately after the send by default, or when the broker confirms it
+ * with chat.rabbitmq.confirms.enabled. Confirms are correlated per message and handled
+ * asynchronously, so any number of publishes can be in flight on a channel.
+ *
+ * Publishes go through the shared RabbitTemplate, or through PublisherStripes when
+ * chat.rabbitmq.publisher.stripes is set.
+ */
 @Service
 public class RabbitMQProducerService {
 
+    private static final CompletableFuture<Void> PUBLISHED = CompletableFuture.completedFuture(null);
+
     private final RabbitTemplate rabbitTemplate;
+    private final PublisherStripes publisherStripes;
+    private final SpillJournal spillJournal;
+    private final QueueMessageConverter messageConverter;
+    private final boolean confirmsEnabled;
+    private final long confirmTimeoutMs;
 
-    public RabbitMQProducerService(RabbitTemplate rabbitTemplate) {
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Timer confirmLatencyTimer;
+    private final Counter nackCounter;
+    private final Counter confirmTimeoutCounter;
+
+    public RabbitMQProducerService(RabbitTemplate rabbitTemplate,
+                                   PublisherStripes publisherStripes,
+                                   SpillJournal spillJournal,
+                                   QueueMessageConverter messageConverter,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${chat.rabbitmq.confirms.enabled:false}") boolean confirmsEnabled,
+                                   @Value("${chat.rabbitmq.confirms.timeout-ms:5000}") long confirmTimeoutMs) {
         this.rabbitTemplate = rabbitTemplate;
+        this.publisherStripes = publisherStripes;
+        this.spillJournal = spillJournal;
+        this.messageConverter = messageConverter;
+        this.confirmsEnabled = confirmsEnabled;
+        this.confirmTimeoutMs = confirmTimeoutMs;
+        if (confirmsEnabled && !rabbitTemplate.getConnectionFactory().isPublisherConfirms()) {
+            throw new IllegalStateException(
+                    "chat.rabbitmq.confirms.enabled requires spring.rabbitmq.publisher-confirm-type=correlated");
+        }
+
+        this.confirmLatencyTimer = Timer.builder("chat.rabbitmq.confirm.latency")
+                .description("Time from publish to broker confirm")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.nackCounter = Counter.builder("chat.rabbitmq.confirm.nacks")
+                .tag("reason", "nack")
+                .register(meterRegistry);
+        this.confirmTimeoutCounter = Counter.builder("chat.rabbitmq.confirm.nacks")
+                .tag("reason", "timeout")
+                .register(meterRegistry);
+        Gauge.builder("chat.rabbitmq.confirm.inflight", inFlight, AtomicInteger::get)
+                .description("Publishes waiting for a broker confirm")
+                .register(meterRegistry);
     }
 
     @CircuitBreaker(
@@ -23,9 +91,114 @@ public class RabbitMQProducerService {
             openTimeout = 5000L,
             resetTimeout = 20000L
     )
-    public void publishMessage(QueueMessage message) {
-        String routingKey = RabbitMQConfig.ROUTING_KEY_PREFIX + message.getRoomId();
-        rabbitTemplate.convertAndSend(RabbitMQConfig.TOPIC_EXCHANGE_NAME, routingKey, message);
+    public CompletableFuture<Void> publishMessage(QueueMessage message) {
+        if (spillJournal.hasBacklog()) {
+            spillJournal.append(message);
+            return PUBLISHED;
+        }
+        return spillIfUnreachable(send(message.getRoomId(), message, message.getMessageId(), null),
+                () -> spillJournal.append(message));
+    }
+
+    /**
+     * Publishes several messages of one room as a single envelope; see BatchingPublisherService.
+     */
+    @CircuitBreaker(
+            include = {AmqpConnectException.class},
+            maxAttempts = 3,
+            openTimeout = 5000L,
+            resetTimeout = 20000L
+    )
+    public CompletableFuture<Void> publishBatch(QueueMessageBatch batch) {
+        if (spillJournal.hasBacklog()) {
+            batch.getMessages().forEach(spillJournal::append);
+            return PUBLISHED;
+        }
+        int size = batch.getMessages().size();
+        String correlationId = batch.getMessages().get(0).getMessageId() + "+" + (size - 1);
+        return spillIfUnreachable(send(batch.getRoomId(), batch, correlationId, amqpMessage -> {
+            amqpMessage.getMessageProperties().setHeader(RabbitMQConfig.BATCH_SIZE_HEADER, size);
+            return amqpMessage;
+        }), () -> batch.getMessages().forEach(spillJournal::append));
+    }
+
+    /**
+     * Publisher stripes send on their own thread, so a broker that cannot be reached fails the
+     * future after publishMessage has returned, out of reach of the circuit breaker and recover.
+     * Those messages are spilled here instead. The journal's backlog then sends later publishes
+     * straight to it until SpillReplayer has drained it, which is what the open breaker does on
+     * the shared template.
+     */
+    private CompletableFuture<Void> spillIfUnreachable(CompletableFuture<Void> sent, Runnable spill) {
+        if (!spillJournal.isEnabled()) {
+            return sent;
+        }
+        return sent.exceptionallyCompose(error -> {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (!(cause instanceof AmqpConnectException)) {
+                return CompletableFuture.failedFuture(cause);
+            }
+            System.err.println("Broker unreachable from a publisher stripe, spilling: " + cause.getMessage());
+            spill.run();
+            return PUBLISHED;
+        });
+    }
+
+    /**
+     * Used by SpillReplayer: publishes without the circuit breaker or the backlog check.
+     */
+    public CompletableFuture<Void> replay(QueueMessage message) {
+        return send(message.getRoomId(), message, message.getMessageId(), null);
+    }
+
+    private CompletableFuture<Void> send(String roomId, Object payload, String correlationId,
+                                         MessagePostProcessor postProcessor) {
+        String routingKey = RabbitMQConfig.ROUTING_KEY_PREFIX + roomId;
+        MessagePostProcessor processor = postProcessor != null ? postProcessor : amqpMessage -> amqpMessage;
+        CorrelationData correlation = confirmsEnabled ? new CorrelationData(correlationId) : null;
+        long start = System.nanoTime();
+
+        Message amqpMessage = processor.postProcessMessage(messageConverter.toMessage(payload, new MessageProperties()));
+
+        if (publisherStripes.isEnabled()) {
+            CompletableFuture<Void> sent = publisherStripes.submit(roomId, template ->
+                    template.send(RabbitMQConfig.TOPIC_EXCHANGE_NAME, routingKey, amqpMessage, correlation));
+            return confirmsEnabled ? sent.thenCompose(ignored -> awaitConfirm(correlation, start)) : sent;
+        }
+
+        rabbitTemplate.send(RabbitMQConfig.TOPIC_EXCHANGE_NAME, routingKey, amqpMessage, correlation);
+        return confirmsEnabled ? awaitConfirm(correlation, start) : PUBLISHED;
+    }
+
+    private CompletableFuture<Void> awaitConfirm(CorrelationData correlation, long start) {
+        inFlight.incrementAndGet();
+        return correlation.getFuture()
+                .orTimeout(confirmTimeoutMs, TimeUnit.MILLISECONDS)
+                .handle((confirm, error) -> {
+                    inFlight.decrementAndGet();
+                    if (error instanceof TimeoutException) {
+                        confirmTimeoutCounter.increment();
+                        throw new AmqpException("No broker confirm within " + confirmTimeoutMs + " ms");
+                    }
+                    if (error != null) {
+                        nackCounter.increment();
+                        throw new AmqpException("Publish failed", error);
+                    }
+                    confirmLatencyTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    if (!confirm.isAck()) {
+                        nackCounter.increment();
+                        throw new AmqpException("Broker nacked message: " + confirm.getReason());
+                    }
+                    return null;
+                });
+    }
+
+    /**
+     * Client-facing reason for a failed publish future.
+     */
+    public static String failureReason(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause.getMessage();
     }
 
     public void fallbackPublish(QueueMessage message, Throwable t) {
@@ -33,8 +206,25 @@ public class RabbitMQProducerService {
     }
 
     @Recover
-    public void recover(AmqpConnectException e, QueueMessage message) {
+    public CompletableFuture<Void> recover(AmqpConnectException e, QueueMessage message) {
         System.err.println("Circuit breaker is open. Failed to publish message to RabbitMQ: " + message.getMessageId());
         System.err.println("Error: " + e.getMessage());
+        if (spillJournal.isEnabled()) {
+            spillJournal.append(message);
+            return PUBLISHED;
+        }
+        return CompletableFuture.failedFuture(e);
+    }
+
+    @Recover
+    public CompletableFuture<Void> recoverBatch(AmqpConnectException e, QueueMessageBatch batch) {
+        System.err.println("Circuit breaker is open. Failed to publish batch of " + batch.getMessages().size()
+                + " messages for room " + batch.getRoomId());
+        System.err.println("Error: " + e.getMessage());
+        if (spillJournal.isEnabled()) {
+            batch.getMessages().forEach(spillJournal::append);
+            return PUBLISHED;
+        }
+        return CompletableFuture.failedFuture(e);
     }
 }
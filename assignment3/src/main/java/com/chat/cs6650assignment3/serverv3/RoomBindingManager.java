@@ -0,0 +1,174 @@
+package com.chat.cs6650assignment3.serverv3;
+
+import com.chat.cs6650assignment3.config.RabbitMQConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.AnonymousQueue;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Keeps this node's broadcast queue bound only to the rooms that have local sessions.
+ * A room is bound synchronously when its first session arrives, so that session never misses
+ * a broadcast; it is unbound after a debounce once its last session leaves, so connection churn
+ * doesn't thrash bindings on the broker.
+ */
+@Service
+@Profile("!inprocess")
+public class RoomBindingManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(RoomBindingManager.class);
+
+    // A lock rather than a monitor: it is held across broker I/O, which would pin a virtual thread.
+    private static final class RoomBinding {
+        final ReentrantLock lock = new ReentrantLock();
+        volatile boolean bound;
+        ScheduledFuture<?> pendingUnbind;
+    }
+
+    private final ConcurrentHashMap<String, RoomBinding> bindings = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "Broadcast-Binding"));
+
+    private final RabbitAdmin rabbitAdmin;
+    private final DirectExchange broadcastExchange;
+    private final AnonymousQueue serverBroadcastQueue;
+    private final Counter bindCounter;
+    private final Counter unbindCounter;
+
+    @Value("${chat.broadcast.unbind-delay-ms:30000}")
+    private long unbindDelayMs;
+
+    public RoomBindingManager(RabbitAdmin rabbitAdmin,
+                              DirectExchange broadcastExchange,
+                              AnonymousQueue serverBroadcastQueue,
+                              ConnectionFactory connectionFactory,
+                              MeterRegistry meterRegistry) {
+        this.rabbitAdmin = rabbitAdmin;
+        this.broadcastExchange = broadcastExchange;
+        this.serverBroadcastQueue = serverBroadcastQueue;
+
+        this.bindCounter = Counter.builder("chat.broadcast.bindings.created").register(meterRegistry);
+        this.unbindCounter = Counter.builder("chat.broadcast.bindings.removed").register(meterRegistry);
+        Gauge.builder("chat.broadcast.bindings", this, RoomBindingManager::boundRoomCount)
+                .description("Rooms this node's broadcast queue is currently bound to")
+                .register(meterRegistry);
+
+        // The broadcast queue is an auto-delete AnonymousQueue, so a reconnect recreates it
+        // without our dynamic bindings. Put them back once the connection is up again.
+        connectionFactory.addConnectionListener(connection -> scheduler.execute(this::rebindAll));
+    }
+
+    /**
+     * Called for every session that joins a room. Cheap once the room is bound.
+     */
+    public void ensureBound(String roomId) {
+        RoomBinding binding = bindings.computeIfAbsent(roomId, k -> new RoomBinding());
+        binding.lock.lock();
+        try {
+            if (binding.pendingUnbind != null) {
+                binding.pendingUnbind.cancel(false);
+                binding.pendingUnbind = null;
+            }
+            if (!binding.bound) {
+                rabbitAdmin.declareBinding(bindingFor(roomId));
+                binding.bound = true;
+                bindCounter.increment();
+            }
+        } finally {
+            binding.lock.unlock();
+        }
+    }
+
+    /**
+     * Called when a room's last local session leaves. The binding is removed after the debounce
+     * delay, and only if the room is still empty at that point.
+     */
+    public void scheduleUnbind(String roomId, BooleanSupplier roomStillEmpty) {
+        RoomBinding binding = bindings.get(roomId);
+        if (binding == null) {
+            return;
+        }
+        binding.lock.lock();
+        try {
+            if (binding.pendingUnbind != null) {
+                binding.pendingUnbind.cancel(false);
+            }
+            binding.pendingUnbind = scheduler.schedule(
+                    () -> unbindIfEmpty(roomId, binding, roomStillEmpty), unbindDelayMs, TimeUnit.MILLISECONDS);
+        } finally {
+            binding.lock.unlock();
+        }
+    }
+
+    private void unbindIfEmpty(String roomId, RoomBinding binding, BooleanSupplier roomStillEmpty) {
+        binding.lock.lock();
+        try {
+            binding.pendingUnbind = null;
+            if (!binding.bound || !roomStillEmpty.getAsBoolean()) {
+                return;
+            }
+            try {
+                rabbitAdmin.removeBinding(bindingFor(roomId));
+                binding.bound = false;
+                unbindCounter.increment();
+            } catch (Exception e) {
+                logger.error("Failed to unbind broadcast queue from room {}", roomId, e);
+            }
+        } finally {
+            binding.lock.unlock();
+        }
+    }
+
+    private void rebindAll() {
+        bindings.forEach((roomId, binding) -> {
+            binding.lock.lock();
+            try {
+                if (binding.bound) {
+                    try {
+                        rabbitAdmin.declareBinding(bindingFor(roomId));
+                    } catch (Exception e) {
+                        logger.error("Failed to restore broadcast binding for room {}", roomId, e);
+                    }
+                }
+            } finally {
+                binding.lock.unlock();
+            }
+        });
+    }
+
+    private Binding bindingFor(String roomId) {
+        return new Binding(serverBroadcastQueue.getName(), Binding.DestinationType.QUEUE,
+                broadcastExchange.getName(), RabbitMQConfig.ROUTING_KEY_PREFIX + roomId, null);
+    }
+
+    private double boundRoomCount() {
+        int count = 0;
+        for (RoomBinding binding : bindings.values()) {
+            if (binding.bound) count++;
+        }
+        return count;
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+}
@@ -1,27 +1,82 @@
 package com.chat.cs6650assignment3.serverv3;
 
+import com.chat.cs6650assignment3.bus.MessageBus;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Service;
 import org.springframework.web.socket.WebSocketSession;
 import java.util.Collections;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Tracks room membership in both directions: the sessions in each room (for broadcast fan-out)
+ * and the rooms of each session (a multiplexed connection can be in many rooms at once).
+ */
 @Service
+@Profile("!reactive")
 public class SessionManager {
     private final ConcurrentHashMap<String, Set<WebSocketSession>> roomSessions = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<String>> sessionRooms = new ConcurrentHashMap<>();
+    private final MessageBus messageBus;
 
+    public SessionManager(MessageBus messageBus) {
+        this.messageBus = messageBus;
+    }
+
+    /**
+     * The session is registered before the room is bound: a debounced unbind already waiting on
+     * the binding lock then sees the room as occupied and keeps the binding.
+     */
     public void addSession(String roomId, WebSocketSession session) {
+        sessionRooms.computeIfAbsent(session.getId(), k -> ConcurrentHashMap.newKeySet()).add(roomId);
         roomSessions.computeIfAbsent(roomId, k -> ConcurrentHashMap.newKeySet()).add(session);
+        try {
+            messageBus.subscribeBroadcasts(roomId);
+        } catch (RuntimeException e) {
+            removeSession(roomId, session);
+            throw e;
+        }
     }
 
     public void removeSession(String roomId, WebSocketSession session) {
-        roomSessions.computeIfPresent(roomId, (k, v) -> {
-            v.remove(session);
+        sessionRooms.computeIfPresent(session.getId(), (k, v) -> {
+            v.remove(roomId);
             return v.isEmpty() ? null : v;
         });
+        leaveRoom(roomId, session);
+    }
+
+    /**
+     * Removes the session from every room it is in. Called once when the connection closes.
+     */
+    public void removeAll(WebSocketSession session) {
+        Set<String> rooms = sessionRooms.remove(session.getId());
+        if (rooms != null) {
+            for (String roomId : rooms) {
+                leaveRoom(roomId, session);
+            }
+        }
     }
 
     public Set<WebSocketSession> getSessions(String roomId) {
         return roomSessions.getOrDefault(roomId, Collections.emptySet());
     }
+
+    public Set<String> getRooms(WebSocketSession session) {
+        return sessionRooms.getOrDefault(session.getId(), Collections.emptySet());
+    }
+
+    public boolean isInRoom(String roomId, WebSocketSession session) {
+        return getRooms(session).contains(roomId);
+    }
+
+    private void leaveRoom(String roomId, WebSocketSession session) {
+        Set<WebSocketSession> remaining = roomSessions.computeIfPresent(roomId, (k, v) -> {
+            v.remove(session);
+            return v.isEmpty() ? null : v;
+        });
+        if (remaining == null) {
+            messageBus.unsubscribeBroadcasts(roomId, () -> !roomSessions.containsKey(roomId));
+        }
+    }
 }
@@ -0,0 +1,126 @@
+package com.chat.cs6650assignment3.serverv3;
+
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, lock-free outbound queue for one WebSocket session. Any number of producers may
+ * enqueue; at most one drainer writes to the session at a time, which is what makes
+ * session.sendMessage safe without synchronizing on the session.
+ *
+ * Also carries the health signals used for slow-consumer eviction: bytes queued but not yet
+ * written, when the last write succeeded, and how many writes in a row have failed.
+ */
+class SessionOutboundQueue {
+
+    static final class Pending {
+        final WebSocketMessage<?> message;
+        final long enqueuedNanos;
+
+        Pending(WebSocketMessage<?> message, long enqueuedNanos) {
+            this.message = message;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+
+    private final WebSocketSession session;
+    private final int capacity;
+    private final Queue<Pending> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicLong outstandingBytes = new AtomicLong();
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private volatile long lastWriteNanos;
+
+    SessionOutboundQueue(WebSocketSession session, int capacity) {
+        this.session = session;
+        this.capacity = capacity;
+        this.lastWriteNanos = System.nanoTime();
+    }
+
+    WebSocketSession getSession() {
+        return session;
+    }
+
+    int depth() {
+        return depth.get();
+    }
+
+    /**
+     * Reserves a slot and appends the message. Returns false without enqueuing when full.
+     */
+    boolean offer(WebSocketMessage<?> message) {
+        if (depth.incrementAndGet() > capacity) {
+            depth.decrementAndGet();
+            return false;
+        }
+        outstandingBytes.addAndGet(message.getPayloadLength());
+        queue.offer(new Pending(message, System.nanoTime()));
+        return true;
+    }
+
+    Pending poll() {
+        Pending pending = queue.poll();
+        if (pending != null) {
+            depth.decrementAndGet();
+            outstandingBytes.addAndGet(-pending.message.getPayloadLength());
+        }
+        return pending;
+    }
+
+    long outstandingBytes() {
+        return outstandingBytes.get();
+    }
+
+    int consecutiveFailures() {
+        return consecutiveFailures.get();
+    }
+
+    void recordWriteSuccess() {
+        lastWriteNanos = System.nanoTime();
+        consecutiveFailures.set(0);
+    }
+
+    int recordWriteFailure() {
+        return consecutiveFailures.incrementAndGet();
+    }
+
+    /**
+     * How long the session has had data waiting without a successful write. Zero when idle,
+     * so a quiet but healthy client is never treated as stalled.
+     */
+    long stalledNanos(long nowNanos) {
+        Pending head = queue.peek();
+        if (head == null) {
+            return 0;
+        }
+        return nowNanos - Math.max(lastWriteNanos, head.enqueuedNanos);
+    }
+
+    boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    /**
+     * Claims the single drainer slot. Only the caller that gets true may write to the session.
+     */
+    boolean tryStartDrain() {
+        return draining.compareAndSet(false, true);
+    }
+
+    void finishDrain() {
+        draining.set(false);
+    }
+
+    void clear() {
+        while (poll() != null) {
+            // discard
+        }
+    }
+}
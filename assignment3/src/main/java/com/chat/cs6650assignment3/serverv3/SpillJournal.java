@@ -0,0 +1,356 @@
+package com.chat.cs6650assignment3.serverv3;
+
+import com.chat.cs6650assignment3.model.QueueMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only local journal for messages that could not be published because the broker was
+ * unreachable. Records go into memory-mapped segment files of segment-bytes each; a record is
+ * [length][crc32][QueueMessage JSON], and a zero length marks the end of written data. A
+ * small cursor file remembers how far SpillReplayer has got, so a restart resumes there and
+ * drops the segments already replayed.
+ *
+ * Fsync policy: NONE leaves flushing to the OS, INTERVAL forces the active segment every
+ * fsync-interval-ms, ALWAYS forces after each append.
+ *
+ * Java cannot unmap a MappedByteBuffer; a deleted segment stays mapped, and on Linux keeps its
+ * disk blocks, until the GC collects the buffer. Its pages are clean file pages, so they cost
+ * page cache rather than heap, but a long outage can leave several segment-bytes of deleted
+ * files pinned on disk until the next GC.
+ */
+@Component
+public class SpillJournal {
+
+    private static final Logger logger = LoggerFactory.getLogger(SpillJournal.class);
+
+    public enum FsyncPolicy { NONE, INTERVAL, ALWAYS }
+
+    private static final int HEADER_BYTES = 8;
+    private static final String SEGMENT_PREFIX = "spill-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CURSOR_FILE = "cursor";
+
+    private static final class Segment {
+        final long sequence;
+        final Path path;
+        final MappedByteBuffer buffer;
+        int writePosition;
+
+        Segment(long sequence, Path path, MappedByteBuffer buffer) {
+            this.sequence = sequence;
+            this.path = path;
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * Records read by peek; pass back to commit once they have been published.
+     */
+    public record ReplayBatch(List<QueueMessage> messages, long segmentSequence, int endPosition) {
+    }
+
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentBytes;
+    private final FsyncPolicy fsyncPolicy;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private int readPosition;
+
+    private final AtomicLong depth = new AtomicLong();
+    private final Counter appendedCounter;
+    private final Counter replayedCounter;
+    private final ScheduledExecutorService fsyncScheduler;
+
+    public SpillJournal(ObjectMapper objectMapper,
+                        MeterRegistry meterRegistry,
+                        @Value("${chat.rabbitmq.spill.enabled:false}") boolean enabled,
+                        @Value("${chat.rabbitmq.spill.directory:spill}") String directory,
+                        @Value("${chat.rabbitmq.spill.segment-bytes:67108864}") int segmentBytes,
+                        @Value("${chat.rabbitmq.spill.fsync:INTERVAL}") FsyncPolicy fsyncPolicy,
+                        @Value("${chat.rabbitmq.spill.fsync-interval-ms:1000}") long fsyncIntervalMs) throws IOException {
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.directory = Path.of(directory);
+        this.segmentBytes = segmentBytes;
+        this.fsyncPolicy = fsyncPolicy;
+
+        this.appendedCounter = Counter.builder("chat.rabbitmq.spill.appended")
+                .description("Messages written to the spill journal")
+                .register(meterRegistry);
+        this.replayedCounter = Counter.builder("chat.rabbitmq.spill.replayed")
+                .description("Messages replayed from the spill journal to RabbitMQ")
+                .register(meterRegistry);
+        Gauge.builder("chat.rabbitmq.spill.depth", depth, AtomicLong::get)
+                .description("Messages in the spill journal waiting to be replayed")
+                .register(meterRegistry);
+        Gauge.builder("chat.rabbitmq.spill.segments", segments, ArrayDeque::size)
+                .register(meterRegistry);
+
+        if (enabled) {
+            Files.createDirectories(this.directory);
+            open();
+        }
+        if (enabled && fsyncPolicy == FsyncPolicy.INTERVAL) {
+            fsyncScheduler = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "Spill-Fsync"));
+            fsyncScheduler.scheduleWithFixedDelay(this::forceActiveSegment, fsyncIntervalMs, fsyncIntervalMs, TimeUnit.MILLISECONDS);
+        } else {
+            fsyncScheduler = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * True while messages are waiting to be replayed. New messages must then be appended
+     * too, or they would overtake the journaled ones.
+     */
+    public boolean hasBacklog() {
+        return enabled && depth.get() > 0;
+    }
+
+    public void append(QueueMessage message) {
+        byte[] payload;
+        try {
+            payload = objectMapper.writeValueAsBytes(message);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (HEADER_BYTES + payload.length + HEADER_BYTES > segmentBytes) {
+            throw new IllegalArgumentException("Message " + message.getMessageId() + " does not fit in a spill segment");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        lock.lock();
+        try {
+            Segment segment = segments.getLast();
+            // Keep room for the zero length that terminates the segment.
+            if (segment.writePosition + HEADER_BYTES + payload.length + HEADER_BYTES > segmentBytes) {
+                if (fsyncPolicy != FsyncPolicy.NONE) {
+                    segment.buffer.force();
+                }
+                segment = newSegment(segment.sequence + 1);
+                segments.addLast(segment);
+            }
+            ByteBuffer buffer = segment.buffer;
+            int position = segment.writePosition;
+            // Payload and crc first, length last, so a reader never sees a half-written record.
+            buffer.putInt(position + 4, (int) crc.getValue());
+            buffer.put(position + HEADER_BYTES, payload);
+            buffer.putInt(position, payload.length);
+            segment.writePosition = position + HEADER_BYTES + payload.length;
+            if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+                segment.buffer.force();
+            }
+            depth.incrementAndGet();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+        appendedCounter.increment();
+    }
+
+    /**
+     * Reads up to max records from the replay cursor without advancing it. Returns an empty
+     * batch when nothing is waiting.
+     */
+    public ReplayBatch peek(int max) {
+        lock.lock();
+        try {
+            Segment segment = segments.getFirst();
+            // The oldest segment is fully replayed and sealed; move on.
+            while (readPosition >= segment.writePosition && segments.size() > 1) {
+                segments.removeFirst();
+                // Unmapped, and its space freed, only once the buffer is garbage collected.
+                Files.deleteIfExists(segment.path);
+                segment = segments.getFirst();
+                readPosition = 0;
+                writeCursor(segment.sequence, 0);
+            }
+            List<QueueMessage> messages = new ArrayList<>();
+            int position = readPosition;
+            while (messages.size() < max && position < segment.writePosition) {
+                int length = segment.buffer.getInt(position);
+                byte[] payload = new byte[length];
+                segment.buffer.get(position + HEADER_BYTES, payload);
+                messages.add(objectMapper.readValue(payload, QueueMessage.class));
+                position += HEADER_BYTES + length;
+            }
+            return new ReplayBatch(messages, segment.sequence, position);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void commit(ReplayBatch batch) {
+        if (batch.messages().isEmpty()) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (segments.getFirst().sequence != batch.segmentSequence()) {
+                return;
+            }
+            readPosition = batch.endPosition();
+            writeCursor(batch.segmentSequence(), readPosition);
+            depth.addAndGet(-batch.messages().size());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+        replayedCounter.increment(batch.messages().size());
+    }
+
+    private void open() throws IOException {
+        long cursorSequence = 0;
+        int cursorPosition = 0;
+        Path cursorPath = directory.resolve(CURSOR_FILE);
+        if (Files.exists(cursorPath)) {
+            ByteBuffer cursor = ByteBuffer.wrap(Files.readAllBytes(cursorPath));
+            cursorSequence = cursor.getLong();
+            cursorPosition = cursor.getInt();
+        }
+
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(p -> p.getFileName().toString().startsWith(SEGMENT_PREFIX)).sorted().toList();
+        }
+        for (Path file : files) {
+            long sequence = sequenceOf(file);
+            if (sequence < cursorSequence) {
+                Files.delete(file);
+                continue;
+            }
+            Segment segment = map(sequence, file);
+            int start = sequence == cursorSequence ? cursorPosition : 0;
+            depth.addAndGet(scan(segment, start));
+            segments.addLast(segment);
+        }
+        if (segments.isEmpty()) {
+            segments.addLast(newSegment(cursorSequence + 1));
+        } else if (segments.getFirst().sequence == cursorSequence) {
+            readPosition = cursorPosition;
+        }
+        if (depth.get() > 0) {
+            logger.warn("Spill journal has {} messages left to replay in {} segment(s)", depth.get(), segments.size());
+        }
+    }
+
+    /**
+     * Finds the end of the valid records, stopping at a zero length or a torn write, and
+     * returns how many records lie at or after start.
+     */
+    private int scan(Segment segment, int start) {
+        ByteBuffer buffer = segment.buffer;
+        CRC32 crc = new CRC32();
+        int position = 0;
+        int records = 0;
+        while (position + HEADER_BYTES <= segmentBytes) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + HEADER_BYTES + length > segmentBytes) {
+                break;
+            }
+            crc.reset();
+            crc.update(buffer.slice(position + HEADER_BYTES, length));
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                logger.warn("Spill segment {} has a torn record at {}; ignoring the rest", segment.path, position);
+                buffer.putInt(position, 0);
+                break;
+            }
+            if (position >= start) {
+                records++;
+            }
+            position += HEADER_BYTES + length;
+        }
+        segment.writePosition = position;
+        return records;
+    }
+
+    private Segment newSegment(long sequence) throws IOException {
+        return map(sequence, directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX)));
+    }
+
+    private Segment map(long sequence, Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            // The mapping stays valid after the channel is closed.
+            return new Segment(sequence, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes));
+        }
+    }
+
+    private void writeCursor(long sequence, int position) throws IOException {
+        ByteBuffer cursor = ByteBuffer.allocate(12).putLong(sequence).putInt(position);
+        Path temp = directory.resolve(CURSOR_FILE + ".tmp");
+        Files.write(temp, cursor.array());
+        Files.move(temp, directory.resolve(CURSOR_FILE), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static long sequenceOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private void forceActiveSegment() {
+        Segment active;
+        lock.lock();
+        try {
+            active = segments.getLast();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            // Outside the lock so appends are not held up by the disk.
+            active.buffer.force();
+        } catch (Exception e) {
+            logger.error("Failed to fsync spill segment {}", active.path, e);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (fsyncScheduler != null) {
+            fsyncScheduler.shutdownNow();
+        }
+        if (enabled && fsyncPolicy != FsyncPolicy.NONE) {
+            forceActiveSegment();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.chat.cs6650assignment3.serverv3;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drains the SpillJournal back into RabbitMQ in journal order, at most replay-rate messages
+ * per second. Each tick publishes one slice and only advances the journal cursor once the
+ * whole slice is published (confirmed, with publisher confirms on); on failure the slice is
+ * retried on the next tick, so replay doubles as the broker probe. Messages of a retried
+ * slice may be delivered twice; the consumer's dedup drops them.
+ */
+@Component
+public class SpillReplayer {
+
+    private static final Logger logger = LoggerFactory.getLogger(SpillReplayer.class);
+    private static final long TICK_MS = 100;
+
+    private final SpillJournal journal;
+    private final RabbitMQProducerService producerService;
+    private final int messagesPerTick;
+    private final long confirmTimeoutMs;
+    private final ScheduledExecutorService scheduler;
+
+    public SpillReplayer(SpillJournal journal,
+                         RabbitMQProducerService producerService,
+                         @Value("${chat.rabbitmq.spill.replay-rate:2000}") int replayRate,
+                         @Value("${chat.rabbitmq.confirms.timeout-ms:5000}") long confirmTimeoutMs) {
+        this.journal = journal;
+        this.producerService = producerService;
+        this.messagesPerTick = Math.max(1, (int) (replayRate * TICK_MS / 1000));
+        this.confirmTimeoutMs = confirmTimeoutMs;
+        if (journal.isEnabled()) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "Spill-Replayer"));
+            scheduler.scheduleWithFixedDelay(this::replaySlice, TICK_MS, TICK_MS, TimeUnit.MILLISECONDS);
+        } else {
+            scheduler = null;
+        }
+    }
+
+    private void replaySlice() {
+        if (!journal.hasBacklog()) {
+            return;
+        }
+        try {
+            SpillJournal.ReplayBatch batch = journal.peek(messagesPerTick);
+            List<CompletableFuture<Void>> published = new ArrayList<>(batch.messages().size());
+            for (var message : batch.messages()) {
+                published.add(producerService.replay(message));
+            }
+            CompletableFuture.allOf(published.toArray(CompletableFuture[]::new))
+                    .get(confirmTimeoutMs, TimeUnit.MILLISECONDS);
+            journal.commit(batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.debug("Spill replay paused, broker still unavailable: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+}
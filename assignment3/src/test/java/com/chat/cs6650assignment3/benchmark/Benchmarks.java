@@ -0,0 +1,34 @@
+package com.chat.cs6650assignment3.benchmark;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shared JMH settings for the microbenchmarks in this package: average ns/op over 10 one-second
+ * iterations after 5 warm-up ones, in a single fork, with the GC profiler so gc.alloc.rate.norm
+ * gives bytes allocated/op. Each benchmark's main calls run, so they start from the IDE like the
+ * load clients (after mvn test-compile, which generates the JMH harness).
+ */
+final class Benchmarks {
+
+    private Benchmarks() {
+    }
+
+    static void run(Class<?> benchmark) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(benchmark.getName())
+                .mode(Mode.AverageTime)
+                .timeUnit(TimeUnit.NANOSECONDS)
+                .warmupIterations(5)
+                .measurementIterations(10)
+                .forks(1)
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,75 @@
+package com.chat.cs6650assignment3.benchmark;
+
+import com.chat.cs6650assignment3.model.ChatMessage;
+import com.chat.cs6650assignment3.model.QueueMessage;
+import com.chat.cs6650assignment3.serverv3.ChatMessageDecoder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.time.Instant;
+import java.util.Random;
+
+/**
+ * Compares the data-binding inbound path (readValue into ChatMessage, legacy validateMessage, copy into
+ * QueueMessage) against the single-pass ChatMessageDecoder, cycling through 1024 generated frames.
+ */
+@State(Scope.Thread)
+public class DecoderBenchmark {
+
+    private static final int PAYLOAD_COUNT = 1024;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ChatMessageDecoder decoder = new ChatMessageDecoder(objectMapper);
+    private String[] payloads;
+    private int next;
+
+    public static void main(String[] args) throws RunnerException {
+        Benchmarks.run(DecoderBenchmark.class);
+    }
+
+    @Setup
+    public void buildPayloads() throws Exception {
+        Random random = new Random(42);
+        ChatMessage.MessageType[] types = ChatMessage.MessageType.values();
+        payloads = new String[PAYLOAD_COUNT];
+        for (int i = 0; i < PAYLOAD_COUNT; i++) {
+            ChatMessage msg = new ChatMessage();
+            int userId = 1 + random.nextInt(100000);
+            msg.setUserId(String.valueOf(userId));
+            msg.setUsername("user" + userId);
+            msg.setMessage("Benchmark message number " + i);
+            msg.setTimestamp(Instant.now().toString());
+            msg.setMessageType(types[random.nextInt(types.length)]);
+            payloads[i] = objectMapper.writeValueAsString(msg);
+        }
+    }
+
+    @Benchmark
+    public QueueMessage bindAndValidate() throws Exception {
+        ChatMessage chatMessage = objectMapper.readValue(nextPayload(), ChatMessage.class);
+        LegacyValidation.validateMessage(chatMessage);
+        QueueMessage queueMessage = new QueueMessage();
+        queueMessage.setUserId(chatMessage.getUserId());
+        queueMessage.setUsername(chatMessage.getUsername());
+        queueMessage.setMessage(chatMessage.getMessage());
+        queueMessage.setTimestamp(chatMessage.getTimestamp());
+        queueMessage.setMessageType(chatMessage.getMessageType());
+        queueMessage.setClientMessageId(chatMessage.getMessageId());
+        return queueMessage;
+    }
+
+    @Benchmark
+    public QueueMessage streamingDecode() throws Exception {
+        QueueMessage queueMessage = new QueueMessage();
+        decoder.decode(nextPayload(), queueMessage);
+        return queueMessage;
+    }
+
+    private String nextPayload() {
+        return payloads[next++ & (PAYLOAD_COUNT - 1)];
+    }
+}
@@ -0,0 +1,50 @@
+package com.chat.cs6650assignment3.benchmark;
+
+import com.chat.cs6650assignment3.model.ChatMessage;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.regex.Pattern;
+
+/**
+ * The exception-based validateMessage the handlers used before MessageValidator,
+ * kept verbatim as the baseline for the benchmarks and the MessageValidator parity tests.
+ */
+public final class LegacyValidation {
+
+    private static final Pattern USERNAME_PATTERN = Pattern.compile("^[a-zA-Z0-9_]{3,20}$");
+
+    private LegacyValidation() {
+    }
+
+    public static void validateMessage(ChatMessage msg) {
+        if (msg.getUserId() == null) throw new IllegalArgumentException("userId is required.");
+        try {
+            int userIdInt = Integer.parseInt(msg.getUserId());
+            if (userIdInt < 1 || userIdInt > 100000) {
+                throw new IllegalArgumentException("userId must be between 1 and 100000.");
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("userId must be a valid integer string.");
+        }
+
+        if (msg.getUsername() == null || !USERNAME_PATTERN.matcher(msg.getUsername()).matches()) {
+            throw new IllegalArgumentException("username must be 3-20 alphanumeric characters.");
+        }
+
+        if (msg.getMessage() == null || msg.getMessage().length() < 1 || msg.getMessage().length() > 500) {
+            throw new IllegalArgumentException("message must be between 1 and 500 characters.");
+        }
+
+        if (msg.getTimestamp() == null) throw new IllegalArgumentException("timestamp is required.");
+        try {
+            Instant.parse(msg.getTimestamp());
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("timestamp must be a valid ISO-8601 timestamp.");
+        }
+
+        if (msg.getMessageType() == null) {
+            throw new IllegalArgumentException("messageType must be TEXT, JOIN, or LEAVE.");
+        }
+    }
+}
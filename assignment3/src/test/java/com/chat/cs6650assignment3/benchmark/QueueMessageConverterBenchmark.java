@@ -0,0 +1,122 @@
+package com.chat.cs6650assignment3.benchmark;
+
+import com.chat.cs6650assignment3.config.QueueMessageConverter;
+import com.chat.cs6650assignment3.config.RabbitMQConfig;
+import com.chat.cs6650assignment3.model.ChatMessage;
+import com.chat.cs6650assignment3.model.MessageIdGenerator;
+import com.chat.cs6650assignment3.model.QueueMessage;
+import com.chat.cs6650assignment3.model.QueueMessageBatch;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.RunnerException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Room-queue encode/decode cost per AMQP message: Jackson2JsonMessageConverter (what
+ * RabbitMQConfig used for everything) against QueueMessageConverter in binary mode, with and
+ * without compression (format), for single messages and 50-message envelopes (batchSize).
+ * Decoding goes through QueueMessageConverter.fromMessage, as RabbitMQConsumerService does.
+ * Setup prints the encoded size per message.
+ */
+@State(Scope.Thread)
+public class QueueMessageConverterBenchmark {
+
+    private static final int PAYLOAD_COUNT = 1024;
+
+    @Param({"json", "binary", "binary-deflate"})
+    private String format;
+
+    @Param({"1", "50"})
+    private int batchSize;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private QueueMessageConverter converter;
+    private Object[] payloads;
+    private Message[] encoded;
+    private int next;
+
+    public static void main(String[] args) throws RunnerException {
+        Benchmarks.run(QueueMessageConverterBenchmark.class);
+    }
+
+    @Setup
+    public void buildPayloads() throws Exception {
+        converter = new QueueMessageConverter(new Jackson2JsonMessageConverter(), objectMapper,
+                !format.equals("json"), format.equals("binary-deflate") ? 512 : 0);
+        QueueMessage[] messages = buildMessages();
+        if (batchSize == 1) {
+            payloads = messages;
+        } else {
+            List<Object> batches = new ArrayList<>();
+            for (int i = 0; i + batchSize <= PAYLOAD_COUNT; i += batchSize) {
+                batches.add(new QueueMessageBatch("7", List.of(messages).subList(i, i + batchSize)));
+            }
+            payloads = batches.toArray();
+        }
+
+        long totalBytes = 0;
+        encoded = new Message[payloads.length];
+        for (int i = 0; i < payloads.length; i++) {
+            encoded[i] = toMessage(payloads[i]);
+            totalBytes += encoded[i].getBody().length;
+            String decoded = objectMapper.writeValueAsString(converter.fromMessage(encoded[i]));
+            if (!objectMapper.writeValueAsString(payloads[i]).equals(decoded)) {
+                throw new IllegalStateException("Round trip changed the message: " + decoded);
+            }
+        }
+        System.out.printf("%n%s, batch %d: %.1f bytes/message%n", format, batchSize,
+                (double) totalBytes / (payloads.length * batchSize));
+    }
+
+    @Benchmark
+    public Message encode() {
+        return toMessage(payloads[next++ % payloads.length]);
+    }
+
+    @Benchmark
+    public Object decode() {
+        return converter.fromMessage(encoded[next++ % encoded.length]);
+    }
+
+    private Message toMessage(Object payload) {
+        MessageProperties properties = new MessageProperties();
+        if (payload instanceof QueueMessageBatch batch) {
+            properties.setHeader(RabbitMQConfig.BATCH_SIZE_HEADER, batch.getMessages().size());
+        }
+        return converter.toMessage(payload, properties);
+    }
+
+    private static QueueMessage[] buildMessages() {
+        Random random = new Random(42);
+        MessageIdGenerator idGenerator = new MessageIdGenerator(3);
+        ChatMessage.MessageType[] types = ChatMessage.MessageType.values();
+        QueueMessage[] messages = new QueueMessage[PAYLOAD_COUNT];
+        for (int i = 0; i < PAYLOAD_COUNT; i++) {
+            QueueMessage msg = new QueueMessage();
+            int userId = 1 + random.nextInt(100000);
+            msg.setMessageId(idGenerator.nextIdString());
+            msg.setRoomId("7");
+            msg.setUserId(String.valueOf(userId));
+            msg.setUsername("user" + userId);
+            msg.setMessage("Benchmark message number " + i);
+            msg.setTimestamp(Instant.now().toString());
+            msg.setMessageType(types[random.nextInt(types.length)]);
+            msg.setServerId("server-1a2b3c4d");
+            msg.setClientIp("/10.0.3.17:" + (40000 + random.nextInt(20000)));
+            msg.setClientMessageId(idGenerator.nextIdString());
+            messages[i] = msg;
+        }
+        return messages;
+    }
+}
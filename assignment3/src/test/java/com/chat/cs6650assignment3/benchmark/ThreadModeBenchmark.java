@@ -0,0 +1,109 @@
+package com.chat.cs6650assignment3.benchmark;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Platform vs virtual threads under the server's blocking pattern: each request blocks for a
+ * simulated AMQP publish and then a simulated socket write while holding a per-room lock, as
+ * the binding and send paths do. The platform pool matches Tomcat's default of 200 workers.
+ *
+ * The monitor variant shows why the synchronized blocks on I/O paths were replaced: a virtual
+ * thread that blocks inside synchronized pins its carrier, so virtual threads lose most of
+ * their advantage there.
+ *
+ * For the end-to-end comparison, run PerformanceClient against the server with
+ * spring.threads.virtual.enabled=false and =true.
+ */
+public class ThreadModeBenchmark {
+
+    private static final int[] CONCURRENT_REQUESTS = {1000, 5000, 20000};
+    private static final int PLATFORM_POOL_SIZE = 200;
+    private static final int ROOMS = 256;
+    private static final long PUBLISH_MS = 2;
+    private static final long SEND_MS = 1;
+
+    private static final Object[] monitors = new Object[ROOMS];
+    private static final ReentrantLock[] locks = new ReentrantLock[ROOMS];
+
+    static {
+        for (int i = 0; i < ROOMS; i++) {
+            monitors[i] = new Object();
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    private interface Request {
+        void handle(int room) throws InterruptedException;
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("\n=========== THREAD MODE BENCHMARK ===========");
+        System.out.printf("Platform pool=%d, rooms=%d, publish=%dms, send=%dms, carriers=%d%n",
+                PLATFORM_POOL_SIZE, ROOMS, PUBLISH_MS, SEND_MS, Runtime.getRuntime().availableProcessors());
+
+        // Warm-up, not reported.
+        run(null, Executors.newFixedThreadPool(PLATFORM_POOL_SIZE), 1000, ThreadModeBenchmark::withLock);
+        run(null, Executors.newVirtualThreadPerTaskExecutor(), 1000, ThreadModeBenchmark::withLock);
+
+        for (int requests : CONCURRENT_REQUESTS) {
+            System.out.println("------------------------------------------------");
+            System.out.println(requests + " concurrent requests");
+            run("platform + ReentrantLock", Executors.newFixedThreadPool(PLATFORM_POOL_SIZE), requests, ThreadModeBenchmark::withLock);
+            run("virtual + ReentrantLock", Executors.newVirtualThreadPerTaskExecutor(), requests, ThreadModeBenchmark::withLock);
+            run("virtual + synchronized", Executors.newVirtualThreadPerTaskExecutor(), requests, ThreadModeBenchmark::withMonitor);
+        }
+    }
+
+    private static void withLock(int room) throws InterruptedException {
+        Thread.sleep(PUBLISH_MS);
+        ReentrantLock lock = locks[room];
+        lock.lock();
+        try {
+            Thread.sleep(SEND_MS);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void withMonitor(int room) throws InterruptedException {
+        Thread.sleep(PUBLISH_MS);
+        synchronized (monitors[room]) {
+            Thread.sleep(SEND_MS);
+        }
+    }
+
+    private static void run(String name, ExecutorService executor, int requests, Request request) throws InterruptedException {
+        long[] latencies = new long[requests];
+        CountDownLatch done = new CountDownLatch(requests);
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            int index = i;
+            long submitted = System.nanoTime();
+            executor.execute(() -> {
+                try {
+                    request.handle(index % ROOMS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                latencies[index] = System.nanoTime() - submitted;
+                done.countDown();
+            });
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+
+        if (name == null) {
+            return;
+        }
+        Arrays.sort(latencies);
+        System.out.printf("  %-26s %10.0f req/s   p50 %7.1f ms   p99 %7.1f ms%n", name,
+                requests / (elapsed / 1e9),
+                latencies[(int) (requests * 0.50)] / 1e6,
+                latencies[(int) (requests * 0.99)] / 1e6);
+    }
+}
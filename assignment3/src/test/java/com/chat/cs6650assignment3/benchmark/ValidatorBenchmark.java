@@ -0,0 +1,68 @@
+package com.chat.cs6650assignment3.benchmark;
+
+import com.chat.cs6650assignment3.model.ChatMessage;
+import com.chat.cs6650assignment3.serverv3.MessageValidator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.time.Instant;
+
+/**
+ * Compares the legacy exception-based validateMessage against MessageValidator on a valid
+ * message and on each common class of bad input (the input parameter).
+ */
+@State(Scope.Thread)
+public class ValidatorBenchmark {
+
+    @Param({"valid", "userIdNotInteger", "userIdOutOfRange", "usernameBadCharset", "timestampMalformed"})
+    private String input;
+
+    private final MessageValidator validator = MessageValidator.DEFAULT;
+    private ChatMessage msg;
+
+    public static void main(String[] args) throws RunnerException {
+        Benchmarks.run(ValidatorBenchmark.class);
+    }
+
+    @Setup
+    public void buildMessage() {
+        String now = Instant.now().toString();
+        msg = switch (input) {
+            case "valid" -> message("12345", "user_12345", now);
+            case "userIdNotInteger" -> message("12a45", "user_12345", now);
+            case "userIdOutOfRange" -> message("100001", "user_12345", now);
+            case "usernameBadCharset" -> message("12345", "user-12345!", now);
+            case "timestampMalformed" -> message("12345", "user_12345", "2025-13-01 10:00:00");
+            default -> throw new IllegalArgumentException("Unknown input " + input);
+        };
+    }
+
+    @Benchmark
+    public int legacy() {
+        try {
+            LegacyValidation.validateMessage(msg);
+            return 0;
+        } catch (IllegalArgumentException e) {
+            return e.getMessage().length();
+        }
+    }
+
+    @Benchmark
+    public int precompiled() {
+        return validator.validate(msg).ordinal();
+    }
+
+    private static ChatMessage message(String userId, String username, String timestamp) {
+        ChatMessage msg = new ChatMessage();
+        msg.setUserId(userId);
+        msg.setUsername(username);
+        msg.setMessage("Benchmark message");
+        msg.setTimestamp(timestamp);
+        msg.setMessageType(ChatMessage.MessageType.TEXT);
+        return msg;
+    }
+}
@@ -0,0 +1,88 @@
+package com.chat.cs6650assignment3.bus;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RingBufferTest {
+
+    @Test
+    void capacityMustBeAPowerOfTwo() {
+        assertThatThrownBy(() -> new RingBuffer<String>(6)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void drainsInOrderUpToMax() {
+        RingBuffer<Integer> ring = new RingBuffer<>(8);
+        for (int i = 0; i < 5; i++) {
+            ring.put(i);
+        }
+        assertThat(ring.backlog()).isEqualTo(5);
+
+        List<Integer> drained = new ArrayList<>();
+        assertThat(ring.drain(drained::add, 3)).isEqualTo(3);
+        assertThat(ring.drain(drained::add, 3)).isEqualTo(2);
+        assertThat(ring.drain(drained::add, 3)).isZero();
+
+        assertThat(drained).containsExactly(0, 1, 2, 3, 4);
+        assertThat(ring.backlog()).isZero();
+    }
+
+    @Test
+    void slotsAreReusedAfterWrapping() {
+        RingBuffer<Integer> ring = new RingBuffer<>(4);
+        List<Integer> drained = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            ring.put(2 * i);
+            ring.put(2 * i + 1);
+            ring.drain(drained::add, 4);
+        }
+        assertThat(drained).hasSize(200);
+        for (int i = 0; i < 200; i++) {
+            assertThat(drained.get(i)).isEqualTo(i);
+        }
+    }
+
+    @Test
+    void keepsEachProducersOrderWhenTheRingIsFull() throws Exception {
+        int producers = 4;
+        int perProducer = 50_000;
+        RingBuffer<long[]> ring = new RingBuffer<>(64);
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        try {
+            List<CompletableFuture<Void>> puts = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                int producer = p;
+                puts.add(CompletableFuture.runAsync(() -> {
+                    for (int i = 0; i < perProducer; i++) {
+                        ring.put(new long[]{producer, i});
+                    }
+                }, executor));
+            }
+
+            long[] nextExpected = new long[producers];
+            int received = 0;
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (received < producers * perProducer && System.nanoTime() < deadline) {
+                received += ring.drain(item -> {
+                    assertThat(item[1]).isEqualTo(nextExpected[(int) item[0]]);
+                    nextExpected[(int) item[0]]++;
+                }, 256);
+            }
+
+            CompletableFuture.allOf(puts.toArray(new CompletableFuture<?>[0])).get(5, TimeUnit.SECONDS);
+            assertThat(received).isEqualTo(producers * perProducer);
+            assertThat(ring.backlog()).isZero();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.chat.cs6650assignment3.config;
+
+import com.chat.cs6650assignment3.model.ChatMessage;
+import com.chat.cs6650assignment3.model.MessageIdGenerator;
+import com.chat.cs6650assignment3.model.QueueMessage;
+import com.chat.cs6650assignment3.model.QueueMessageBatch;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * During a rolling switch of chat.rabbitmq.message-format, JSON and binary nodes read each
+ * other's messages.
+ */
+class QueueMessageConverterTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final QueueMessageConverter jsonNode =
+            new QueueMessageConverter(new Jackson2JsonMessageConverter(), objectMapper, false, 0);
+    private final QueueMessageConverter binaryNode =
+            new QueueMessageConverter(new Jackson2JsonMessageConverter(), objectMapper, true, 512);
+
+    @Test
+    void messagesCrossBetweenFormats() {
+        QueueMessage message = message(1);
+
+        Message binary = binaryNode.toMessage(message, new MessageProperties());
+        assertThat(binary.getMessageProperties().getContentType()).isEqualTo(QueueMessageConverter.BINARY_CONTENT_TYPE);
+        assertThat(jsonNode.fromMessage(binary)).usingRecursiveComparison().isEqualTo(message);
+
+        Message json = jsonNode.toMessage(message, new MessageProperties());
+        assertThat(json.getMessageProperties().getContentType()).isEqualTo(MessageProperties.CONTENT_TYPE_JSON);
+        assertThat(binaryNode.fromMessage(json)).usingRecursiveComparison().isEqualTo(message);
+    }
+
+    @Test
+    void batchesCrossBetweenFormats() {
+        QueueMessageBatch batch = new QueueMessageBatch("7", List.of(message(1), message(2), message(3)));
+
+        for (QueueMessageConverter writer : List.of(jsonNode, binaryNode)) {
+            MessageProperties properties = new MessageProperties();
+            properties.setHeader(RabbitMQConfig.BATCH_SIZE_HEADER, batch.getMessages().size());
+            Message encoded = writer.toMessage(batch, properties);
+
+            for (QueueMessageConverter reader : List.of(jsonNode, binaryNode)) {
+                assertThat(reader.fromMessage(encoded)).usingRecursiveComparison().isEqualTo(batch);
+            }
+        }
+    }
+
+    private static QueueMessage message(int i) {
+        QueueMessage message = new QueueMessage(new MessageIdGenerator(3).nextIdString(), "7", String.valueOf(i),
+                "user" + i, "message " + i, Instant.now().toString(), ChatMessage.MessageType.TEXT,
+                "server-1a2b3c4d", "/10.0.3.17:40001");
+        message.setClientMessageId("client-" + i);
+        return message;
+    }
+}
@@ -0,0 +1,102 @@
+package com.chat.cs6650assignment3.consumerv3;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Uses the ring the way DynamicConsumerConfig does: 64 virtual nodes, load factor 1.25.
+ */
+class ConsistentHashRingTest {
+
+    private static final int VIRTUAL_NODES = 64;
+    private static final double LOAD_FACTOR = 1.25;
+
+    @Test
+    void sameMembersInAnyOrderGiveTheSameAssignment() {
+        List<String> members = members(5);
+        List<String> keys = rooms(20);
+        Map<String, String> expected = new ConsistentHashRing<>(members, VIRTUAL_NODES).assign(keys, LOAD_FACTOR);
+
+        Random random = new Random(42);
+        for (int i = 0; i < 20; i++) {
+            List<String> shuffledMembers = new ArrayList<>(members);
+            List<String> shuffledKeys = new ArrayList<>(keys);
+            Collections.shuffle(shuffledMembers, random);
+            Collections.shuffle(shuffledKeys, random);
+
+            assertThat(new ConsistentHashRing<>(shuffledMembers, VIRTUAL_NODES).assign(shuffledKeys, LOAD_FACTOR))
+                    .isEqualTo(expected);
+        }
+    }
+
+    @Test
+    void noMemberGetsMoreThanItsCap() {
+        for (int keyCount : new int[]{20, 200}) {
+            for (double loadFactor : new double[]{1.0, 1.25, 2.0}) {
+                for (int memberCount = 1; memberCount <= 8; memberCount++) {
+                    List<String> keys = rooms(keyCount);
+                    Map<String, String> assignment = new ConsistentHashRing<>(members(memberCount), VIRTUAL_NODES)
+                            .assign(keys, loadFactor);
+
+                    int cap = (int) Math.ceil(loadFactor * keyCount / memberCount);
+                    assertThat(assignment).containsOnlyKeys(keys);
+                    assertThat(loads(assignment).values())
+                            .as("%d keys over %d members, load factor %s", keyCount, memberCount, loadFactor)
+                            .allSatisfy(load -> assertThat(load).isLessThanOrEqualTo(cap));
+                }
+            }
+        }
+    }
+
+    @Test
+    void addingAMemberMovesFewRooms() {
+        List<String> keys = rooms(20);
+        for (int memberCount = 1; memberCount <= 8; memberCount++) {
+            List<String> members = members(memberCount);
+            Map<String, String> before = new ConsistentHashRing<>(members, VIRTUAL_NODES).assign(keys, LOAD_FACTOR);
+            members.add("consumer-" + memberCount);
+            Map<String, String> after = new ConsistentHashRing<>(members, VIRTUAL_NODES).assign(keys, LOAD_FACTOR);
+
+            int moved = 0;
+            for (String key : keys) {
+                if (!before.get(key).equals(after.get(key))) {
+                    moved++;
+                }
+            }
+            // The new member's share, plus at most as many rooms again pushed on by the load cap;
+            // rehashing modulo the member count would move most of the 20.
+            int cap = (int) Math.ceil(LOAD_FACTOR * keys.size() / members.size());
+            assertThat(moved).as("%d -> %d members", memberCount, members.size()).isLessThanOrEqualTo(2 * cap);
+        }
+    }
+
+    private static List<String> members(int count) {
+        List<String> members = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            members.add("consumer-" + i);
+        }
+        return members;
+    }
+
+    private static List<String> rooms(int count) {
+        List<String> rooms = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            rooms.add("room." + i);
+        }
+        return rooms;
+    }
+
+    private static Map<String, Integer> loads(Map<String, String> assignment) {
+        Map<String, Integer> loads = new HashMap<>();
+        assignment.values().forEach(member -> loads.merge(member, 1, Integer::sum));
+        return loads;
+    }
+}
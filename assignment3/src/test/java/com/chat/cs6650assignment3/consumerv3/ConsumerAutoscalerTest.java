@@ -0,0 +1,99 @@
+package com.chat.cs6650assignment3.consumerv3;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.intThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ConsumerAutoscalerTest {
+
+    // Long enough that the scheduled tick never fires during a test; ticks are driven by hand.
+    private static final long INTERVAL_MS = TimeUnit.HOURS.toMillis(1);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RabbitAdmin rabbitAdmin = mock(RabbitAdmin.class);
+    private final SimpleMessageListenerContainer container = mock(SimpleMessageListenerContainer.class);
+    private RoomPartitionedExecutor lanes;
+    private ConsumerAutoscaler autoscaler;
+
+    @AfterEach
+    void stop() throws InterruptedException {
+        autoscaler.stop();
+        lanes.stop();
+    }
+
+    @Test
+    void partitionedLanesKeepOneConsumerAndScalePrefetch() {
+        start(true, 100_000);
+
+        for (int i = 0; i < 2; i++) {
+            autoscaler.tick();
+        }
+
+        verify(container, never()).setConcurrentConsumers(intThat(n -> n != 1));
+        verify(container).setPrefetchCount(200);
+        assertThat(autoscaler.current()).singleElement().satisfies(decision -> {
+            assertThat(decision.action()).isEqualTo("up");
+            assertThat(decision.consumers()).isEqualTo(1);
+            assertThat(decision.prefetch()).isEqualTo(200);
+        });
+    }
+
+    @Test
+    void withoutLanesConsumersScaleUp() {
+        start(false, 100_000);
+
+        for (int i = 0; i < 2; i++) {
+            autoscaler.tick();
+        }
+
+        verify(container).setConcurrentConsumers(2);
+    }
+
+    @Test
+    void utilizationCountsLaneTimeOnTheContainersRooms() throws Exception {
+        start(true, 0);
+        CountDownLatch done = new CountDownLatch(1);
+        lanes.execute("1", "room.1", () -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            done.countDown();
+        });
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(lanes.drain(Set.of("room.1"), 5000)).isTrue();
+
+        autoscaler.tick();
+
+        // The listener itself only handed the task off, so all of this is lane time.
+        assertThat(autoscaler.current()).singleElement().satisfies(decision ->
+                assertThat(decision.utilization()).isGreaterThanOrEqualTo(200.0 / INTERVAL_MS));
+    }
+
+    private void start(boolean partitioned, int depth) {
+        lanes = new RoomPartitionedExecutor(meterRegistry, partitioned, 2, 64);
+        when(container.getQueueNames()).thenReturn(new String[]{"room.1"});
+        when(container.isRunning()).thenReturn(true);
+        when(rabbitAdmin.getQueueInfo("room.1")).thenReturn(new QueueInformation("room.1", depth, 1));
+        autoscaler = new ConsumerAutoscaler(rabbitAdmin, meterRegistry, lanes, true, INTERVAL_MS,
+                1, 4, 1000, 1000, 100, 0.8, 0.3, 2, 6);
+        autoscaler.register(0, container, 100);
+        verify(container).setConcurrentConsumers(anyInt());
+    }
+}
@@ -0,0 +1,97 @@
+package com.chat.cs6650assignment3.consumerv3;
+
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class DeliveryAcksTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final DeliveryAcks deliveryAcks = new DeliveryAcks(meterRegistry, true);
+    private final Channel channel = mock(Channel.class);
+
+    @Test
+    void acksUpToTheHighestContiguousDoneTag() throws Exception {
+        List<DeliveryAcks.Pending> deliveries = track(5);
+
+        deliveries.get(1).complete();
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+
+        deliveries.get(0).complete();
+        deliveries.get(3).complete();
+        deliveries.get(2).complete();
+        deliveries.get(4).complete();
+
+        InOrder order = inOrder(channel);
+        order.verify(channel).basicAck(2, true);
+        order.verify(channel).basicAck(4, true);
+        order.verify(channel).basicAck(5, true);
+        assertThat(pending()).isZero();
+    }
+
+    @Test
+    void aFailedDeliveryIsRequeuedAloneAndStopsBlockingTheAck() throws Exception {
+        List<DeliveryAcks.Pending> deliveries = track(3);
+
+        deliveries.get(0).complete();
+        deliveries.get(2).complete();
+        deliveries.get(1).fail();
+
+        InOrder order = inOrder(channel);
+        order.verify(channel).basicAck(1, true);
+        order.verify(channel).basicNack(2, false, true);
+        order.verify(channel).basicAck(3, true);
+        assertThat(meterRegistry.get("chat.consumer.ack.requeued").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void aDeliveryIsDoneOnceEveryWriteHasCompleted() throws Exception {
+        DeliveryAcks.Pending delivery = track(1).get(0);
+        delivery.expect();
+        delivery.expect();
+
+        // The handler's own unit and one of the two writes.
+        delivery.complete();
+        delivery.complete();
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+
+        delivery.complete();
+        verify(channel).basicAck(1, true);
+    }
+
+    @Test
+    void anyFailedWriteRequeuesTheDelivery() throws Exception {
+        DeliveryAcks.Pending delivery = track(1).get(0);
+        delivery.expect();
+
+        delivery.fail();
+        delivery.complete();
+
+        verify(channel).basicNack(1, false, true);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+    }
+
+    private List<DeliveryAcks.Pending> track(int count) {
+        List<DeliveryAcks.Pending> deliveries = new ArrayList<>();
+        for (long tag = 1; tag <= count; tag++) {
+            deliveries.add(deliveryAcks.track(channel, tag));
+        }
+        return deliveries;
+    }
+
+    private double pending() {
+        return meterRegistry.get("chat.consumer.ack.pending").gauge().value();
+    }
+}
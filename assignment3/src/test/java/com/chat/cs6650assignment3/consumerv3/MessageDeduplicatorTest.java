@@ -0,0 +1,144 @@
+package com.chat.cs6650assignment3.consumerv3;
+
+import com.chat.cs6650assignment3.model.MessageIdGenerator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MessageDeduplicatorTest {
+
+    private static final long HOUR_MILLIS = 3_600_000;
+    // One stripe of 32-slot tables, rotating after 24 entries.
+    private static final int SLOTS = 32;
+    private static final int MAX_ENTRIES = 24;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final MessageIdGenerator idGenerator = new MessageIdGenerator(1);
+
+    @Test
+    void forgetKeepsTheRestOfAProbeRunThatWrapsAround() {
+        MessageDeduplicator dedup = deduplicator(HOUR_MILLIS);
+        // Three IDs homed on the last slot occupy 31, 0 and 1; one homed on slot 0 lands on 2.
+        List<Long> ids = idsHomedAt(SLOTS - 1, 3);
+        long a = ids.get(0);
+        long b = ids.get(1);
+        long c = ids.get(2);
+        long d = idsHomedAt(0, 1).get(0);
+        for (long id : List.of(a, b, c, d)) {
+            assertThat(dedup.firstSeen(id)).isTrue();
+        }
+
+        // Removing slot 0 has to shift c back across it and d back into slot 1.
+        dedup.forget(b);
+
+        assertThat(dedup.firstSeen(a)).isFalse();
+        assertThat(dedup.firstSeen(c)).isFalse();
+        assertThat(dedup.firstSeen(d)).isFalse();
+        assertThat(dedup.firstSeen(b)).isTrue();
+
+        dedup.forget(a);
+        dedup.forget(d);
+        assertThat(dedup.firstSeen(b)).isFalse();
+        assertThat(dedup.firstSeen(c)).isFalse();
+        assertThat(dedup.firstSeen(a)).isTrue();
+        assertThat(dedup.firstSeen(d)).isTrue();
+    }
+
+    @Test
+    void forgettingAnUnknownIdIsHarmless() {
+        MessageDeduplicator dedup = deduplicator(HOUR_MILLIS);
+        long seen = idGenerator.nextId();
+        dedup.firstSeen(seen);
+
+        dedup.forget(idGenerator.nextId());
+
+        assertThat(dedup.firstSeen(seen)).isFalse();
+    }
+
+    @Test
+    void rotatesByTime() throws InterruptedException {
+        MessageDeduplicator dedup = deduplicator(200);
+        long a = idGenerator.nextId();
+        long b = idGenerator.nextId();
+        long c = idGenerator.nextId();
+
+        dedup.firstSeen(a);
+        Thread.sleep(250);
+        dedup.firstSeen(b);
+        // a is in the previous generation, still within the horizon.
+        assertThat(dedup.firstSeen(a)).isFalse();
+
+        Thread.sleep(250);
+        dedup.firstSeen(c);
+        assertThat(dedup.firstSeen(b)).isFalse();
+        assertThat(dedup.firstSeen(a)).isTrue();
+        assertThat(rotations("time")).isEqualTo(2);
+        assertThat(rotations("capacity")).isZero();
+    }
+
+    @Test
+    void rotatesEarlyWhenAGenerationFillsUp() {
+        MessageDeduplicator dedup = deduplicator(HOUR_MILLIS);
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 2 * MAX_ENTRIES + 1; i++) {
+            ids.add(idGenerator.nextId());
+        }
+
+        for (int i = 0; i <= MAX_ENTRIES; i++) {
+            assertThat(dedup.firstSeen(ids.get(i))).isTrue();
+        }
+        assertThat(rotations("capacity")).isEqualTo(1);
+        assertThat(dedup.firstSeen(ids.get(0))).isFalse();
+
+        for (int i = MAX_ENTRIES + 1; i < ids.size(); i++) {
+            dedup.firstSeen(ids.get(i));
+        }
+        assertThat(rotations("capacity")).isEqualTo(2);
+        // The first generation was cleared to make room.
+        assertThat(dedup.firstSeen(ids.get(MAX_ENTRIES + 1))).isFalse();
+        assertThat(dedup.firstSeen(ids.get(0))).isTrue();
+        assertThat(rotations("time")).isZero();
+    }
+
+    @Test
+    void effectiveHorizonShrinksWhenCapacityForcesRotation() throws InterruptedException {
+        MessageDeduplicator dedup = deduplicator(HOUR_MILLIS);
+        Thread.sleep(100);
+        double untouched = effectiveHorizon();
+        assertThat(untouched).isGreaterThanOrEqualTo(100);
+
+        for (int i = 0; i < 2 * MAX_ENTRIES + 1; i++) {
+            dedup.firstSeen(idGenerator.nextId());
+        }
+
+        // The oldest generation left now started at the first rotation, just now.
+        assertThat(effectiveHorizon()).isLessThan(untouched);
+    }
+
+    private MessageDeduplicator deduplicator(long horizonMillis) {
+        return new MessageDeduplicator(meterRegistry, horizonMillis, 2, 32, 1);
+    }
+
+    private List<Long> idsHomedAt(int slot, int count) {
+        List<Long> ids = new ArrayList<>();
+        while (ids.size() < count) {
+            long id = idGenerator.nextId();
+            if (((int) MessageDeduplicator.mix(id) & (SLOTS - 1)) == slot) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    private double rotations(String trigger) {
+        return meterRegistry.get("chat.dedup.rotations").tag("trigger", trigger).counter().count();
+    }
+
+    private double effectiveHorizon() {
+        return meterRegistry.get("chat.dedup.horizon.effective").gauge().value();
+    }
+}
@@ -0,0 +1,134 @@
+package com.chat.cs6650assignment3.consumerv3;
+
+import com.chat.cs6650assignment3.bus.MessageBus;
+import com.chat.cs6650assignment3.config.QueueMessageConverter;
+import com.chat.cs6650assignment3.model.MessageIdGenerator;
+import com.chat.cs6650assignment3.model.QueueMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RabbitMQConsumerServiceTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final QueueMessageConverter converter =
+            new QueueMessageConverter(new Jackson2JsonMessageConverter(), new ObjectMapper(), false, 0);
+    private final MessageBus messageBus = mock(MessageBus.class);
+    private final MessagePersistenceService persistenceService = mock(MessagePersistenceService.class);
+    private final Channel channel = mock(Channel.class);
+    private final MessageIdGenerator idGenerator = new MessageIdGenerator(1);
+
+    @Test
+    void undecodableDeliveryIsRejectedAndTheRestOfTheBatchProceeds() throws Exception {
+        broadcastsSucceedFor(Integer.MAX_VALUE);
+
+        service(false).onMessageBatch(List.of(delivery(1), poison(2), delivery(3)), channel);
+
+        verify(channel).basicReject(2, false);
+        verify(channel).basicAck(3, true);
+        verify(channel, never()).basicNack(anyLong(), anyBoolean(), anyBoolean());
+    }
+
+    @Test
+    void onlyDeliveriesWithUnsentMessagesAreRequeued() throws Exception {
+        broadcastsSucceedFor(1);
+
+        service(false).onMessageBatch(List.of(delivery(1), delivery(2), poison(3), delivery(4)), channel);
+
+        InOrder order = inOrder(channel);
+        order.verify(channel).basicNack(2, false, true);
+        order.verify(channel).basicReject(3, false);
+        order.verify(channel).basicNack(4, false, true);
+        order.verify(channel).basicAck(1, true);
+    }
+
+    @Test
+    void atLeastOnceSettlesPoisonBeforeAckingPastIt() throws Exception {
+        broadcastsSucceedFor(Integer.MAX_VALUE);
+
+        service(true).onMessageBatch(List.of(delivery(1), poison(2), delivery(3)), channel);
+
+        InOrder order = inOrder(channel);
+        order.verify(channel).basicReject(2, false);
+        order.verify(channel).basicAck(1, true);
+        order.verify(channel).basicAck(3, true);
+    }
+
+    @Test
+    void undecodableSingleDeliveryIsRejected() throws Exception {
+        service(false).onMessage(poison(7), channel);
+
+        verify(channel).basicReject(7, false);
+    }
+
+    @Test
+    void deliveriesFromADrainingQueueAreRequeued() throws Exception {
+        RoomPartitionedExecutor lanes = new RoomPartitionedExecutor(meterRegistry, true, 2, 64);
+        try {
+            RabbitMQConsumerService service = service(false, lanes);
+            Message message = delivery(1);
+            message.getMessageProperties().setConsumerQueue("room.7");
+            lanes.drain(Set.of("room.7"), 1000);
+
+            service.onMessage(message, channel);
+
+            verify(channel).basicNack(1, false, true);
+            verify(messageBus, never()).broadcast(any());
+        } finally {
+            lanes.stop();
+        }
+    }
+
+    private RabbitMQConsumerService service(boolean atLeastOnce) {
+        return service(atLeastOnce, new RoomPartitionedExecutor(meterRegistry, false, 0, 0));
+    }
+
+    private RabbitMQConsumerService service(boolean atLeastOnce, RoomPartitionedExecutor lanes) {
+        return new RabbitMQConsumerService(converter, meterRegistry, messageBus, persistenceService,
+                new MessageDeduplicator(meterRegistry, 60_000, 2, 1024, 1), lanes,
+                new DeliveryAcks(meterRegistry, atLeastOnce));
+    }
+
+    private void broadcastsSucceedFor(int limit) {
+        when(messageBus.broadcastAll(anyList())).thenAnswer(invocation -> {
+            List<QueueMessage> messages = invocation.getArgument(0);
+            return Math.min(limit, messages.size());
+        });
+    }
+
+    private Message delivery(long tag) {
+        QueueMessage message = new QueueMessage();
+        message.setMessageId(idGenerator.nextIdString());
+        message.setRoomId("7");
+        MessageProperties properties = new MessageProperties();
+        properties.setDeliveryTag(tag);
+        return converter.toMessage(message, properties);
+    }
+
+    private static Message poison(long tag) {
+        MessageProperties properties = new MessageProperties();
+        properties.setDeliveryTag(tag);
+        properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+        return new Message("{not json".getBytes(StandardCharsets.UTF_8), properties);
+    }
+}
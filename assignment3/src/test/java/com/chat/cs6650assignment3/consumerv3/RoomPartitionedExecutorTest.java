@@ -0,0 +1,128 @@
+package com.chat.cs6650assignment3.consumerv3;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RoomPartitionedExecutorTest {
+
+    private final RoomPartitionedExecutor executor =
+            new RoomPartitionedExecutor(new SimpleMeterRegistry(), true, 4, 1024);
+
+    @AfterEach
+    void stopLanes() throws InterruptedException {
+        executor.stop();
+    }
+
+    @Test
+    void keepsEachRoomInOrderAcrossConcurrentProducers() throws Exception {
+        int rooms = 3;
+        int perRoom = 100_000;
+        int[] nextExpected = new int[rooms];
+        AtomicInteger outOfOrder = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(rooms * perRoom);
+
+        // One producer per room, as with one consumer per queue; the rooms share lanes.
+        List<CompletableFuture<Void>> producers = new ArrayList<>();
+        for (int r = 0; r < rooms; r++) {
+            int room = r;
+            producers.add(CompletableFuture.runAsync(() -> {
+                for (int i = 0; i < perRoom; i++) {
+                    int sequence = i;
+                    executor.execute(String.valueOf(room), "room." + room, () -> {
+                        // Only the room's lane thread touches its slot.
+                        if (nextExpected[room]++ != sequence) {
+                            outOfOrder.incrementAndGet();
+                        }
+                        done.countDown();
+                    });
+                }
+            }));
+        }
+
+        CompletableFuture.allOf(producers.toArray(new CompletableFuture<?>[0])).get(30, TimeUnit.SECONDS);
+        assertThat(done.await(30, TimeUnit.SECONDS)).isTrue();
+        assertThat(outOfOrder).hasValue(0);
+    }
+
+    @Test
+    void drainWaitsForQueuedTasksAndRefusesNewOnes() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger finished = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            assertThat(executor.execute("1", "room.1", () -> {
+                awaitQuietly(release);
+                finished.incrementAndGet();
+            })).isTrue();
+        }
+
+        CompletableFuture<Boolean> drained =
+                CompletableFuture.supplyAsync(() -> executor.drain(Set.of("room.1"), 10_000));
+        Thread.sleep(50);
+        assertThat(drained).isNotDone();
+        assertThat(executor.execute("1", "room.1", finished::incrementAndGet)).isFalse();
+        // Other queues keep flowing.
+        assertThat(executor.execute("2", "room.2", () -> { })).isTrue();
+
+        release.countDown();
+        assertThat(drained.get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(finished).hasValue(3);
+
+        executor.resume(Set.of("room.1"));
+        assertThat(executor.execute("1", "room.1", () -> { })).isTrue();
+    }
+
+    @Test
+    void drainGivesUpAfterTheTimeout() {
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute("1", "room.1", () -> awaitQuietly(release));
+        try {
+            assertThat(executor.drain(Set.of("room.1"), 50)).isFalse();
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void busyTimeIsKeptPerSourceQueueUntilTaken() throws Exception {
+        CountDownLatch done = new CountDownLatch(2);
+        executor.execute("1", "room.1", () -> {
+            sleepQuietly(20);
+            done.countDown();
+        });
+        executor.execute("2", "room.2", done::countDown);
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        // The count drops after the busy time is added.
+        assertThat(executor.drain(Set.of("room.1", "room.2"), 5000)).isTrue();
+
+        assertThat(executor.takeBusyNanos(Set.of("room.1"))).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(20));
+        assertThat(executor.takeBusyNanos(Set.of("room.1"))).isZero();
+        assertThat(executor.takeBusyNanos(Set.of("room.3"))).isZero();
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
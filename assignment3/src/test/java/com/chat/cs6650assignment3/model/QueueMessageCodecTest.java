@@ -0,0 +1,105 @@
+package com.chat.cs6650assignment3.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QueueMessageCodecTest {
+
+    @Test
+    void canonicalInstantsRoundTripToTheSameString() {
+        Random random = new Random(42);
+        long maxSecond = Instant.parse("9999-12-31T23:59:59Z").getEpochSecond();
+        for (int i = 0; i < 100_000; i++) {
+            long second = (long) (random.nextDouble() * maxSecond);
+            int nanos = switch (i % 4) {
+                case 0 -> 0;
+                case 1 -> random.nextInt(1000) * 1_000_000;
+                case 2 -> random.nextInt(1_000_000) * 1_000;
+                default -> random.nextInt(1_000_000_000);
+            };
+            String printed = Instant.ofEpochSecond(second, nanos).toString();
+            long[] parsed = QueueMessageCodec.parseCanonicalInstant(printed);
+            assertThat(parsed).as(printed).containsExactly(second, nanos);
+        }
+    }
+
+    @Test
+    void nonCanonicalTimestampsAreNotCompacted() {
+        assertThat(QueueMessageCodec.parseCanonicalInstant("2024-01-01T00:00:00Z")).isNotNull();
+        assertThat(QueueMessageCodec.parseCanonicalInstant("2024-01-01T00:00:00.120Z")).isNotNull();
+        // Instant.toString would print these differently.
+        assertThat(QueueMessageCodec.parseCanonicalInstant("2024-01-01T00:00:00.000Z")).isNull();
+        assertThat(QueueMessageCodec.parseCanonicalInstant("2024-01-01T00:00:00.120000Z")).isNull();
+        assertThat(QueueMessageCodec.parseCanonicalInstant("2024-01-01T00:00:00.12Z")).isNull();
+        assertThat(QueueMessageCodec.parseCanonicalInstant("2024-01-01T00:00Z")).isNull();
+        assertThat(QueueMessageCodec.parseCanonicalInstant("2024-01-01T00:00:00+01:00")).isNull();
+        // Out of range or invalid dates.
+        assertThat(QueueMessageCodec.parseCanonicalInstant("1969-12-31T23:59:59Z")).isNull();
+        assertThat(QueueMessageCodec.parseCanonicalInstant("2023-02-29T00:00:00Z")).isNull();
+        assertThat(QueueMessageCodec.parseCanonicalInstant("2024-01-01T24:00:00Z")).isNull();
+    }
+
+    @Test
+    void messagesRoundTrip() {
+        QueueMessage message = message(new MessageIdGenerator(3).nextIdString(), Instant.now().toString());
+
+        assertThat(roundTrip(message, 0)).usingRecursiveComparison().isEqualTo(message);
+    }
+
+    @Test
+    void stringFormsAreKeptWhenTheyCannotBeCompacted() {
+        // parse accepts lower case, but the compact form would decode as upper case.
+        String lowerCaseId = new MessageIdGenerator(3).nextIdString().toLowerCase();
+        for (String id : List.of(lowerCaseId, "3f2b8c9e-1d4a-4e5b-9c7d-2a1b3c4d5e6f")) {
+            QueueMessage message = message(id, "2024-01-01T00:00:00.000Z");
+
+            QueueMessage decoded = roundTrip(message, 0);
+            assertThat(decoded.getMessageId()).isEqualTo(id);
+            assertThat(decoded.getTimestamp()).isEqualTo("2024-01-01T00:00:00.000Z");
+        }
+    }
+
+    @Test
+    void nullFieldsRoundTrip() {
+        QueueMessage message = new QueueMessage();
+
+        assertThat(roundTrip(message, 0)).usingRecursiveComparison().isEqualTo(message);
+    }
+
+    @Test
+    void bodiesAtOrAboveTheThresholdAreDeflated() {
+        MessageIdGenerator idGenerator = new MessageIdGenerator(3);
+        List<QueueMessage> messages = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            messages.add(message(idGenerator.nextIdString(), Instant.now().toString()));
+        }
+        QueueMessageBatch batch = new QueueMessageBatch("7", messages);
+        byte[] plain = QueueMessageCodec.encode(batch, 0);
+
+        byte[] deflated = QueueMessageCodec.encode(batch, plain.length - 2);
+        assertThat(deflated[1]).isEqualTo((byte) 1);
+        assertThat(deflated.length).isLessThan(plain.length);
+        assertThat(QueueMessageCodec.decode(deflated)).usingRecursiveComparison().isEqualTo(batch);
+
+        byte[] belowThreshold = QueueMessageCodec.encode(batch, plain.length);
+        assertThat(belowThreshold).isEqualTo(plain);
+        assertThat(QueueMessageCodec.decode(plain)).usingRecursiveComparison().isEqualTo(batch);
+    }
+
+    private static QueueMessage roundTrip(QueueMessage message, int compressThreshold) {
+        return (QueueMessage) QueueMessageCodec.decode(QueueMessageCodec.encode(message, compressThreshold));
+    }
+
+    private static QueueMessage message(String messageId, String timestamp) {
+        QueueMessage message = new QueueMessage(messageId, "7", "42", "user42", "héllo wörld", timestamp,
+                ChatMessage.MessageType.TEXT, "server-1a2b3c4d", "/10.0.3.17:40001");
+        message.setClientMessageId(new MessageIdGenerator(5).nextIdString());
+        return message;
+    }
+}
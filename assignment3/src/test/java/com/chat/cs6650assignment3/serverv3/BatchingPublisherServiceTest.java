@@ -0,0 +1,70 @@
+package com.chat.cs6650assignment3.serverv3;
+
+import com.chat.cs6650assignment3.model.QueueMessage;
+import com.chat.cs6650assignment3.model.QueueMessageBatch;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BatchingPublisherServiceTest {
+
+    private final RabbitMQProducerService producer = mock(RabbitMQProducerService.class);
+    private final List<String> published = new CopyOnWriteArrayList<>();
+    private final BatchingPublisherService batcher =
+            new BatchingPublisherService(producer, new SimpleMeterRegistry(), true, 5, 3);
+
+    @AfterEach
+    void stop() {
+        batcher.stop();
+    }
+
+    @Test
+    void sizeFlushWaitsBehindAWindowFlushStillBeingPublished() throws Exception {
+        CountDownLatch windowFlushStarted = new CountDownLatch(1);
+        CountDownLatch releaseWindowFlush = new CountDownLatch(1);
+        when(producer.publishMessage(any())).thenAnswer(invocation -> {
+            windowFlushStarted.countDown();
+            releaseWindowFlush.await(10, TimeUnit.SECONDS);
+            published.add(invocation.<QueueMessage>getArgument(0).getMessageId());
+            return CompletableFuture.completedFuture(null);
+        });
+        when(producer.publishBatch(any())).thenAnswer(invocation -> {
+            QueueMessageBatch batch = invocation.getArgument(0);
+            published.add(batch.getMessages().stream().map(QueueMessage::getMessageId).collect(Collectors.joining(",")));
+            return CompletableFuture.completedFuture(null);
+        });
+
+        CompletableFuture<Void> first = batcher.publish(message("m0"));
+        assertThat(windowFlushStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // The window flush is mid-publish on the timer thread; these fill the next envelope.
+        List<CompletableFuture<Void>> rest = List.of(
+                batcher.publish(message("m1")), batcher.publish(message("m2")), batcher.publish(message("m3")));
+        assertThat(published).isEmpty();
+
+        releaseWindowFlush.countDown();
+        CompletableFuture.allOf(rest.toArray(new CompletableFuture<?>[0])).get(5, TimeUnit.SECONDS);
+        assertThat(first).isCompleted();
+        assertThat(published).containsExactly("m0", "m1,m2,m3");
+    }
+
+    private static QueueMessage message(String id) {
+        QueueMessage message = new QueueMessage();
+        message.setMessageId(id);
+        message.setRoomId("1");
+        message.setMessage("hello");
+        return message;
+    }
+}
@@ -0,0 +1,74 @@
+package com.chat.cs6650assignment3.serverv3;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BroadcastCoalescerTest {
+
+    private final BroadcastCoalescer coalescer = new BroadcastCoalescer(new SimpleMeterRegistry(), 5, 50, 3);
+    private final List<String> frames = new CopyOnWriteArrayList<>();
+
+    @AfterEach
+    void stop() {
+        coalescer.stop();
+    }
+
+    @Test
+    void sizeFlushWaitsBehindATimerFlushStillBeingSent() throws Exception {
+        CountDownLatch timerFlushStarted = new CountDownLatch(1);
+        CountDownLatch releaseTimerFlush = new CountDownLatch(1);
+        CountDownLatch bothSent = new CountDownLatch(2);
+        coalescer.setRoomSink((roomId, frame) -> {
+            if (timerFlushStarted.getCount() > 0) {
+                timerFlushStarted.countDown();
+                try {
+                    releaseTimerFlush.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            frames.add(new String(frame, StandardCharsets.UTF_8));
+            bothSent.countDown();
+        });
+
+        coalescer.add("1", body(0));
+        assertThat(timerFlushStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // The timer flush is mid-send on the scheduler thread; these fill the next batch.
+        for (int i = 1; i <= 3; i++) {
+            coalescer.add("1", body(i));
+        }
+        assertThat(frames).isEmpty();
+
+        releaseTimerFlush.countDown();
+        assertThat(bothSent.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(frames).containsExactly("{\"n\":0}", "[{\"n\":1},{\"n\":2},{\"n\":3}]");
+    }
+
+    @Test
+    void quietRoomGetsThePlainObject() throws Exception {
+        CountDownLatch sent = new CountDownLatch(1);
+        coalescer.setRoomSink((roomId, frame) -> {
+            frames.add(roomId + " " + new String(frame, StandardCharsets.UTF_8));
+            sent.countDown();
+        });
+
+        coalescer.add("7", body(0));
+
+        assertThat(sent.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(frames).containsExactly("7 {\"n\":0}");
+    }
+
+    private static byte[] body(int n) {
+        return ("{\"n\":" + n + "}").getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,166 @@
+package com.chat.cs6650assignment3.serverv3;
+
+import com.chat.cs6650assignment3.bus.MessageBus;
+import com.chat.cs6650assignment3.model.QueueMessage;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ChatFrameHandlerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final MessageBus messageBus = mock(MessageBus.class);
+    private final ChatFrameHandler frameHandler =
+            new ChatFrameHandler(messageBus, objectMapper, new ChatMessageDecoder(objectMapper),
+                    new StaticListableBeanFactory().getBeanProvider(NodeIdLease.class), 5);
+
+    ChatFrameHandlerTest() {
+        ReflectionTestUtils.setField(frameHandler, "maxRoomsPerSession", 2);
+        when(messageBus.publish(any())).thenReturn(CompletableFuture.completedFuture(null));
+    }
+
+    @Test
+    void roomIdComesFromTheLastPathSegment() {
+        assertThat(ChatFrameHandler.roomIdFromPath("/chat/7")).isEqualTo("7");
+        assertThat(ChatFrameHandler.roomIdFromPath("/chat/")).isNull();
+        assertThat(ChatFrameHandler.roomIdFromPath(null)).isNull();
+        assertThat(ChatFrameHandler.isMultiplexedPath("/chat")).isTrue();
+        assertThat(ChatFrameHandler.isMultiplexedPath("/chat/7")).isFalse();
+    }
+
+    @Test
+    void roomScopedMessageIsPublishedToThePathRoomAndAcked() throws Exception {
+        FakeConnection connection = new FakeConnection(false, "7");
+
+        frameHandler.handleText(connection, chatFrame(null, "m-1"));
+
+        ArgumentCaptor<QueueMessage> published = ArgumentCaptor.forClass(QueueMessage.class);
+        verify(messageBus).publish(published.capture());
+        assertThat(published.getValue().getRoomId()).isEqualTo("7");
+        assertThat(published.getValue().getMessageId()).isNotBlank();
+        assertThat(published.getValue().getClientIp()).isEqualTo("/10.0.0.1:4000");
+        JsonNode ack = objectMapper.readTree(connection.texts.get(0));
+        assertThat(ack.get("status").asText()).isEqualTo("OK");
+        assertThat(ack.get("originalMessageId").asText()).isEqualTo("m-1");
+    }
+
+    @Test
+    void multiplexedConnectionSubscribesUpToTheRoomLimit() throws Exception {
+        FakeConnection connection = new FakeConnection(true, null);
+
+        frameHandler.handleText(connection, "{\"action\":\"subscribe\",\"roomId\":\"1\"}");
+        frameHandler.handleText(connection, "{\"action\":\"subscribe\",\"roomId\":\"2\"}");
+        frameHandler.handleText(connection, "{\"action\":\"subscribe\",\"roomId\":\"3\"}");
+        frameHandler.handleText(connection, "{\"action\":\"subscribe\",\"roomId\":\"bad room\"}");
+
+        assertThat(connection.rooms).containsExactly("1", "2");
+        assertThat(status(connection, 0)).isEqualTo("OK");
+        assertThat(status(connection, 1)).isEqualTo("OK");
+        assertThat(status(connection, 2)).isEqualTo("ERROR");
+        assertThat(status(connection, 3)).isEqualTo("ERROR");
+
+        frameHandler.handleText(connection, "{\"action\":\"unsubscribe\",\"roomId\":\"1\"}");
+        assertThat(connection.rooms).containsExactly("2");
+    }
+
+    @Test
+    void multiplexedMessageNeedsASubscribedRoom() throws Exception {
+        FakeConnection connection = new FakeConnection(true, null);
+
+        frameHandler.handleText(connection, chatFrame("4", "m-2"));
+
+        verify(messageBus, never()).publish(any());
+        assertThat(status(connection, 0)).isEqualTo("ERROR");
+    }
+
+    @Test
+    void binaryFramesAreRejectedOnMultiplexedConnections() {
+        FakeConnection connection = new FakeConnection(true, null);
+
+        frameHandler.handleBinary(connection, java.nio.ByteBuffer.allocate(0));
+
+        assertThat(connection.binaries).hasSize(1);
+        verify(messageBus, never()).publish(any());
+    }
+
+    private String status(FakeConnection connection, int index) throws Exception {
+        return objectMapper.readTree(connection.texts.get(index)).get("status").asText();
+    }
+
+    private static String chatFrame(String roomId, String messageId) {
+        return "{\"messageId\":\"" + messageId + "\","
+                + (roomId == null ? "" : "\"roomId\":\"" + roomId + "\",")
+                + "\"userId\":\"42\",\"username\":\"user42\",\"message\":\"hello\","
+                + "\"timestamp\":\"" + Instant.parse("2026-01-02T03:04:05Z") + "\",\"messageType\":\"TEXT\"}";
+    }
+
+    private static final class FakeConnection implements ChatFrameHandler.Connection {
+        final boolean multiplexed;
+        final String roomId;
+        final Set<String> rooms = new LinkedHashSet<>();
+        final List<String> texts = new ArrayList<>();
+        final List<byte[]> binaries = new ArrayList<>();
+
+        FakeConnection(boolean multiplexed, String roomId) {
+            this.multiplexed = multiplexed;
+            this.roomId = roomId;
+        }
+
+        @Override
+        public boolean isMultiplexed() {
+            return multiplexed;
+        }
+
+        @Override
+        public String getRoomId() {
+            return roomId;
+        }
+
+        @Override
+        public Set<String> getRooms() {
+            return rooms;
+        }
+
+        @Override
+        public void join(String roomId) {
+            rooms.add(roomId);
+        }
+
+        @Override
+        public void leave(String roomId) {
+            rooms.remove(roomId);
+        }
+
+        @Override
+        public String getClientAddress() {
+            return "/10.0.0.1:4000";
+        }
+
+        @Override
+        public void sendText(String text) {
+            texts.add(text);
+        }
+
+        @Override
+        public void sendBinary(byte[] bytes) {
+            binaries.add(bytes);
+        }
+    }
+}
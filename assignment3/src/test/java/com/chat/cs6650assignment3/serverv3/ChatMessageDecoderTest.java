@@ -0,0 +1,211 @@
+package com.chat.cs6650assignment3.serverv3;
+
+import com.chat.cs6650assignment3.benchmark.LegacyValidation;
+import com.chat.cs6650assignment3.model.ChatMessage;
+import com.chat.cs6650assignment3.model.QueueMessage;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * ChatMessageDecoder against the path it replaced: ObjectMapper.readValue into ChatMessage,
+ * the exception-based validateMessage, then a copy into QueueMessage. Every frame must get the
+ * same verdict, the same error text for validation failures, and the same decoded fields.
+ */
+class ChatMessageDecoderTest {
+
+    private static final String MALFORMED = "<malformed>";
+    private static final String VALID_FIELDS = "\"userId\":\"42\",\"username\":\"user42\",\"message\":\"hello\","
+            + "\"timestamp\":\"2024-01-01T00:00:00Z\",\"messageType\":\"TEXT\"";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ChatMessageDecoder decoder = new ChatMessageDecoder(objectMapper);
+
+    @Test
+    void validFramesMatchLegacy() throws IOException {
+        assertParity(
+                "{\"messageId\":\"c-1\"," + VALID_FIELDS + "}",
+                "{\"messageType\":\"LEAVE\",\"timestamp\":\"2024-01-01T00:00:00+01:00\",\"message\":\"bye\","
+                        + "\"username\":\"abc\",\"userId\":\"100000\",\"messageId\":\"c-2\"}",
+                "{\"messageId\":null," + VALID_FIELDS + "}",
+                " \n{ \"messageId\" : \"c-3\" , " + VALID_FIELDS + " }\n",
+                "{\"messageId\":\"c-4\",\"message\":\"quote \\\" and \\u00e9\"," + VALID_FIELDS.substring(46) + ","
+                        + "\"userId\":\"42\",\"username\":\"user42\"}");
+    }
+
+    @Test
+    void validationFailuresMatchLegacy() throws IOException {
+        assertParity(
+                "{}",
+                "{\"messageId\":\"c-1\"}",
+                "{" + VALID_FIELDS.replace("\"42\"", "\"0\"") + "}",
+                "{" + VALID_FIELDS.replace("\"42\"", "\"x\"") + "}",
+                "{" + VALID_FIELDS.replace("\"42\"", "null") + "}",
+                "{" + VALID_FIELDS.replace("user42", "a b") + "}",
+                "{" + VALID_FIELDS.replace("hello", "") + "}",
+                "{" + VALID_FIELDS.replace("2024-01-01T00:00:00Z", "yesterday") + "}",
+                "{" + VALID_FIELDS.replace("\"2024-01-01T00:00:00Z\"", "null") + "}",
+                "{" + VALID_FIELDS.replace("\"TEXT\"", "null") + "}",
+                "{\"userId\":\"42\",\"username\":\"user42\",\"message\":\"hello\"}",
+                // Failures are reported in field order, not frame order.
+                "{\"message\":\"\",\"userId\":\"x\",\"username\":\"!\"}",
+                "{\"messageType\":null,\"message\":\"\"}",
+                "{\"timestamp\":\"bad\",\"username\":\"!\"," + VALID_FIELDS.substring(0, 14) + "}");
+    }
+
+    @Test
+    void repeatedFieldsKeepTheLastValueLikeLegacy() throws IOException {
+        assertParity(
+                "{\"userId\":\"x\"," + VALID_FIELDS + "}",
+                "{" + VALID_FIELDS + ",\"userId\":\"x\"}",
+                "{\"messageId\":\"first\"," + VALID_FIELDS + ",\"messageId\":\"second\"}");
+    }
+
+    @Test
+    void scalarTypesCoerceLikeLegacy() throws IOException {
+        assertParity(
+                "{" + VALID_FIELDS.replace("\"42\"", "42") + "}",
+                "{" + VALID_FIELDS.replace("\"42\"", "4.2") + "}",
+                "{" + VALID_FIELDS.replace("\"42\"", "true") + "}",
+                "{" + VALID_FIELDS.replace("\"hello\"", "12345") + "}",
+                "{\"messageId\":7," + VALID_FIELDS + "}");
+    }
+
+    @Test
+    void unknownMessageTypesAreRejectedWithTheValidationMessage() throws IOException {
+        // Data binding failed the names as malformed JSON, and took ordinals such as 0 for TEXT.
+        // The decoder accepts only the names and says which ones.
+        for (String messageType : List.of("\"text\"", "\"SHOUT\"", "\"\"", "0", "\"1\"")) {
+            String payload = "{" + VALID_FIELDS.replace("\"TEXT\"", messageType) + "}";
+            assertThat(verdict(payload)).isEqualTo("messageType must be TEXT, JOIN, or LEAVE.");
+        }
+    }
+
+    @Test
+    void malformedFramesAreRejectedLikeLegacy() throws IOException {
+        String valid = "{\"messageId\":\"c-1\"," + VALID_FIELDS + "}";
+        assertParity(
+                "",
+                "null",
+                "[]",
+                "\"text\"",
+                "{",
+                "{\"userId\":",
+                valid.substring(0, valid.length() / 2),
+                valid.substring(0, valid.length() - 1),
+                "{\"userId\":\"42\",}",
+                "{userId:\"42\"}",
+                "{" + VALID_FIELDS.replace("\"42\"", "[\"42\"]") + "}",
+                "{" + VALID_FIELDS.replace("\"42\"", "{\"id\":42}") + "}",
+                "{" + VALID_FIELDS.replace("\"hello\"", "[]") + "}");
+    }
+
+    @Test
+    void unknownFieldsAreRejectedLikeLegacy() throws IOException {
+        assertParity(
+                "{\"extra\":1," + VALID_FIELDS + "}",
+                "{" + VALID_FIELDS + ",\"extra\":{\"nested\":[1,2]}}",
+                "{" + VALID_FIELDS + ",\"clientMessageId\":\"c-1\"}",
+                "{" + VALID_FIELDS + ",\"MessageType\":\"TEXT\"}");
+    }
+
+    @Test
+    void roomIdIsAcceptedForMultiplexedConnections() throws IOException {
+        QueueMessage decoded = new QueueMessage();
+        MessageValidator.Result result = decoder.decode("{\"roomId\":\"7\"," + VALID_FIELDS + "}", decoded);
+
+        assertThat(result).isEqualTo(MessageValidator.Result.OK);
+        assertThat(decoded.getRoomId()).isEqualTo("7");
+    }
+
+    @Test
+    void absentMessageIdAndTimestampGetDefaultsLikeLegacy() throws IOException {
+        String payload = "{\"userId\":\"42\",\"username\":\"user42\",\"message\":\"hello\",\"messageType\":\"JOIN\"}";
+        Instant before = Instant.now();
+
+        QueueMessage legacy = legacyDecode(payload);
+        QueueMessage decoded = new QueueMessage();
+        assertThat(decoder.decode(payload, decoded)).isEqualTo(MessageValidator.Result.OK);
+
+        for (QueueMessage message : List.of(legacy, decoded)) {
+            assertThat(message.getClientMessageId()).isNotBlank();
+            assertThat(Duration.between(before, Instant.parse(message.getTimestamp())))
+                    .isBetween(Duration.ZERO, Duration.ofSeconds(5));
+        }
+        assertThat(decoded.getClientMessageId()).isNotEqualTo(legacy.getClientMessageId());
+    }
+
+    @Test
+    void clientMessageIdComesFromTheFrame() throws IOException {
+        QueueMessage decoded = new QueueMessage();
+        decoder.decode("{\"messageId\":\"client-7\"," + VALID_FIELDS + "}", decoded);
+
+        assertThat(decoded.getClientMessageId()).isEqualTo("client-7");
+        assertThat(decoded.getMessageId()).isNull();
+    }
+
+    private void assertParity(String... payloads) throws IOException {
+        List<String> mismatches = new ArrayList<>();
+        for (String payload : payloads) {
+            String expected = legacyVerdict(payload);
+            String actual = verdict(payload);
+            if (!expected.equals(actual)) {
+                mismatches.add(payload + "\n    legacy:  " + expected + "\n    decoder: " + actual);
+            }
+        }
+        assertThat(mismatches).isEmpty();
+    }
+
+    private String verdict(String payload) {
+        QueueMessage decoded = new QueueMessage();
+        try {
+            MessageValidator.Result result = decoder.decode(payload, decoded);
+            return result.isValid() ? describe(payload, decoded) : decoder.getValidator().describe(result);
+        } catch (IOException e) {
+            return MALFORMED;
+        }
+    }
+
+    private String legacyVerdict(String payload) {
+        try {
+            return describe(payload, legacyDecode(payload));
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        } catch (JsonProcessingException e) {
+            return MALFORMED;
+        }
+    }
+
+    private QueueMessage legacyDecode(String payload) throws JsonProcessingException {
+        ChatMessage chatMessage = objectMapper.readValue(payload, ChatMessage.class);
+        if (chatMessage == null) {
+            // A JSON null frame bound to null, and the old handler failed on it.
+            throw new JsonMappingException(null, "null frame");
+        }
+        LegacyValidation.validateMessage(chatMessage);
+        QueueMessage queueMessage = new QueueMessage();
+        queueMessage.setUserId(chatMessage.getUserId());
+        queueMessage.setUsername(chatMessage.getUsername());
+        queueMessage.setMessage(chatMessage.getMessage());
+        queueMessage.setTimestamp(chatMessage.getTimestamp());
+        queueMessage.setMessageType(chatMessage.getMessageType());
+        queueMessage.setClientMessageId(chatMessage.getMessageId());
+        return queueMessage;
+    }
+
+    private static String describe(String payload, QueueMessage message) {
+        // Generated message ids differ from run to run; absentMessageIdAndTimestampGetDefaultsLikeLegacy covers them.
+        String clientMessageId = payload.contains("\"messageId\"") ? message.getClientMessageId() : "<generated>";
+        return "OK " + clientMessageId + " " + message.getUserId() + " " + message.getUsername()
+                + " " + message.getMessage() + " " + message.getTimestamp() + " " + message.getMessageType();
+    }
+}
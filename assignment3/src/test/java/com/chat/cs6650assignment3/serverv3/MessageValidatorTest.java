@@ -0,0 +1,138 @@
+package com.chat.cs6650assignment3.serverv3;
+
+import com.chat.cs6650assignment3.benchmark.LegacyValidation;
+import com.chat.cs6650assignment3.model.ChatMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * MessageValidator against the exception-based validation it replaced: every input must get
+ * the same verdict and the same client-facing message.
+ */
+class MessageValidatorTest {
+
+    private static final MessageValidator VALIDATOR = MessageValidator.DEFAULT;
+
+    @Test
+    void userIdMatchesLegacy() {
+        assertParity(ChatMessage::setUserId, null, "", " ", "1", "100000", "0", "100001", "-1", "-0", "+5",
+                "007", "0000100000", "00100001", "1.0", "1e3", " 1", "1 ", "+", "-", "++1", "１",
+                "2147483647", "2147483648", "-2147483648", "-2147483649", "99999999999999999999");
+    }
+
+    @Test
+    void usernameMatchesLegacy() {
+        assertParity(ChatMessage::setUsername, null, "", "   ", "ab", "abc", "a_1", "a".repeat(20), "a".repeat(21),
+                "abc def", "abc-def", "abc\n", "abé", "ABC_xyz_09");
+    }
+
+    @Test
+    void messageMatchesLegacy() {
+        assertParity(ChatMessage::setMessage, null, "", " ", "x", "x".repeat(500), "x".repeat(501),
+                "😀".repeat(250), "😀".repeat(251));
+    }
+
+    @Test
+    void timestampMatchesLegacy() {
+        assertParity(ChatMessage::setTimestamp, null, "", "   ",
+                "2024-01-01T00:00:00Z", "2024-01-01t00:00:00z", "2024-01-01T00:00:00",
+                "2024-01-01T00:00Z", "2024-01-01 00:00:00Z", "2024-1-01T00:00:00Z", " 2024-01-01T00:00:00Z",
+                // fractional seconds
+                "2024-01-01T00:00:00.Z", "2024-01-01T00:00:00.1Z", "2024-01-01T00:00:00.123456789Z",
+                "2024-01-01T00:00:00.1234567890Z", "2024-01-01T00:00:00,1Z",
+                // offsets and their signs
+                "2024-01-01T00:00:00+01:00", "2024-01-01T00:00:00-01:00", "2024-01-01T00:00:00-00:00",
+                "2024-01-01T00:00:00+01", "2024-01-01T00:00:00+0100", "2024-01-01T00:00:00+01:00:30",
+                "2024-01-01T00:00:00+01:00:60", "2024-01-01T00:00:00+00:60", "2024-01-01T00:00:00+18:00",
+                "2024-01-01T00:00:00-18:00", "2024-01-01T00:00:00+18:30", "2024-01-01T00:00:00-18:00:01",
+                "2024-01-01T00:00:00+19:00", "2024-01-01T00:00:00.5+01:00", "2024-01-01T00:00:00Z+01:00",
+                // calendar and clock bounds
+                "2024-02-29T00:00:00Z", "2023-02-29T00:00:00Z", "1900-02-29T00:00:00Z", "2000-02-29T00:00:00Z",
+                "2024-04-31T00:00:00Z", "2024-13-01T00:00:00Z", "2024-00-01T00:00:00Z", "2024-01-00T00:00:00Z",
+                "0000-01-01T00:00:00Z", "9999-12-31T23:59:59.999999999Z", "2024-01-01T23:60:00Z",
+                // end of day and leap seconds, which Instant.parse accepts only in these shapes
+                "2024-01-01T24:00:00Z", "2024-01-01T24:00:00.000Z", "2024-01-01T24:00:00.000000001Z",
+                "2024-01-01T24:00:01Z", "2024-01-01T24:01:00Z", "2024-01-01T25:00:00Z",
+                "2024-06-30T23:59:60Z", "2024-06-30T23:59:60.5Z", "2024-06-30T23:59:60+01:00",
+                "2024-01-01T12:00:60Z", "2024-01-01T00:59:60Z", "2024-01-01T23:59:61Z");
+    }
+
+    @Test
+    void messageTypeMatchesLegacy() {
+        assertParity(ChatMessage::setMessageType, null, ChatMessage.MessageType.TEXT,
+                ChatMessage.MessageType.JOIN, ChatMessage.MessageType.LEAVE);
+    }
+
+    @Test
+    void firstFailingFieldWinsLikeLegacy() {
+        ChatMessage message = new ChatMessage();
+        message.setUsername("!");
+        message.setTimestamp("bad");
+        assertThat(verdict(message)).isEqualTo(legacyVerdict(message)).isEqualTo("userId is required.");
+    }
+
+    @Test
+    void expandedYearsAreRejectedThoughInstantParseAcceptsThem() {
+        ChatMessage message = validMessage();
+        message.setTimestamp("+12024-01-01T00:00:00Z");
+
+        assertThat(legacyVerdict(message)).isNull();
+        assertThat(verdict(message)).isEqualTo("timestamp must be a valid ISO-8601 timestamp.");
+    }
+
+    @Test
+    void messagesUseTheConfiguredBounds() {
+        MessageValidator validator = new MessageValidator(10, 50, 2, 8, 5, 140);
+
+        assertThat(validator.describe(validator.checkUserId("51")))
+                .isEqualTo("userId must be between 10 and 50.");
+        assertThat(validator.describe(validator.checkUsername("a")))
+                .isEqualTo("username must be 2-8 alphanumeric characters.");
+        assertThat(validator.describe(validator.checkMessage("hi")))
+                .isEqualTo("message must be between 5 and 140 characters.");
+        assertThat(validator.describe(MessageValidator.Result.OK)).isNull();
+    }
+
+    @SafeVarargs
+    private static <T> void assertParity(BiConsumer<ChatMessage, T> field, T... values) {
+        List<String> mismatches = new ArrayList<>();
+        for (T value : values) {
+            ChatMessage message = validMessage();
+            field.accept(message, value);
+            String expected = legacyVerdict(message);
+            String actual = verdict(message);
+            if (expected == null ? actual != null : !expected.equals(actual)) {
+                mismatches.add("'" + value + "': legacy=" + expected + ", validator=" + actual);
+            }
+        }
+        assertThat(mismatches).isEmpty();
+    }
+
+    private static String verdict(ChatMessage message) {
+        return VALIDATOR.describe(VALIDATOR.validate(message));
+    }
+
+    private static String legacyVerdict(ChatMessage message) {
+        try {
+            LegacyValidation.validateMessage(message);
+            return null;
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
+    }
+
+    private static ChatMessage validMessage() {
+        ChatMessage message = new ChatMessage();
+        message.setUserId("42");
+        message.setUsername("user42");
+        message.setMessage("hello");
+        message.setTimestamp("2024-01-01T00:00:00Z");
+        message.setMessageType(ChatMessage.MessageType.TEXT);
+        return message;
+    }
+}
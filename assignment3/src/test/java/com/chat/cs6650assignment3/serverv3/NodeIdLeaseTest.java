@@ -0,0 +1,104 @@
+package com.chat.cs6650assignment3.serverv3;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.ShutdownSignalException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.AmqpIOException;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class NodeIdLeaseTest {
+
+    private final RabbitAdmin rabbitAdmin = mock(RabbitAdmin.class);
+    private final NodeIdLease lease = new NodeIdLease(rabbitAdmin, mock(ConnectionFactory.class), 10);
+
+    @AfterEach
+    void stop() {
+        lease.shutdown();
+    }
+
+    @Test
+    void skipsIdsHeldByOtherNodes() {
+        Set<String> held = Set.of("chat.node-id.1023", "chat.node-id.0");
+        when(rabbitAdmin.declareQueue(any(Queue.class))).thenAnswer(invocation -> {
+            Queue queue = invocation.getArgument(0);
+            assertThat(queue.isExclusive()).isTrue();
+            assertThat(queue.isAutoDelete()).isTrue();
+            if (held.contains(queue.getName())) {
+                throw locked();
+            }
+            return queue.getName();
+        });
+
+        lease.acquire(-1);
+
+        assertThat(lease.getNodeId()).isEqualTo(1);
+        assertThat(lease.nextIdString()).hasSize(13);
+    }
+
+    @Test
+    void failsWhenTheBrokerIsUnreachable() {
+        when(rabbitAdmin.declareQueue(any(Queue.class)))
+                .thenThrow(new AmqpIOException(new IOException("Connection refused")));
+
+        assertThatThrownBy(() -> lease.acquire(7))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("chat.node-id");
+    }
+
+    @Test
+    void failsWhenEveryIdIsHeld() {
+        when(rabbitAdmin.declareQueue(any(Queue.class))).thenThrow(locked());
+
+        assertThatThrownBy(() -> lease.acquire(7))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("1024");
+    }
+
+    @Test
+    void startIssuesRandomNodeIdsUntilTheBrokerAnswers() {
+        when(rabbitAdmin.declareQueue(any(Queue.class)))
+                .thenThrow(new AmqpIOException(new IOException("Connection refused")))
+                .thenThrow(new AmqpIOException(new IOException("Connection refused")))
+                .thenAnswer(invocation -> invocation.<Queue>getArgument(0).getName());
+
+        lease.start(7);
+
+        assertThat(lease.nextIdString()).hasSize(13);
+        await(() -> lease.getNodeId() == 7);
+        assertThat(lease.nextIdString()).hasSize(13);
+        verify(rabbitAdmin, times(3)).declareQueue(any(Queue.class));
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime() - deadline).as("timed out").isNegative();
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(5));
+        }
+    }
+
+    private static AmqpIOException locked() {
+        AMQP.Channel.Close close = new AMQP.Channel.Close.Builder()
+                .replyCode(AMQP.RESOURCE_LOCKED)
+                .replyText("RESOURCE_LOCKED - cannot obtain exclusive access to locked queue")
+                .build();
+        return new AmqpIOException(new IOException(new ShutdownSignalException(false, false, close, null)));
+    }
+}
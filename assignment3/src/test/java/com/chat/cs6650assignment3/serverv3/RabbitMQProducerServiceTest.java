@@ -0,0 +1,96 @@
+package com.chat.cs6650assignment3.serverv3;
+
+import com.chat.cs6650assignment3.config.QueueMessageConverter;
+import com.chat.cs6650assignment3.model.QueueMessage;
+import com.chat.cs6650assignment3.model.QueueMessageBatch;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Publishes through publisher stripes to a port nothing listens on, so every stripe send fails
+ * with AmqpConnectException on the stripe's thread.
+ */
+class RabbitMQProducerServiceTest {
+
+    @TempDir
+    Path directory;
+
+    private CachingConnectionFactory connectionFactory;
+    private PublisherStripes stripes;
+    private SpillJournal journal;
+    private RabbitMQProducerService producer;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        connectionFactory = new CachingConnectionFactory("127.0.0.1", 1);
+        QueueMessageConverter converter =
+                new QueueMessageConverter(new Jackson2JsonMessageConverter(objectMapper), objectMapper, false, 0);
+        stripes = new PublisherStripes(connectionFactory, converter, meterRegistry, 2, 100);
+        journal = new SpillJournal(objectMapper, meterRegistry, true, directory.toString(),
+                1 << 20, SpillJournal.FsyncPolicy.NONE, 1000);
+        producer = new RabbitMQProducerService(new RabbitTemplate(connectionFactory), stripes, journal,
+                converter, meterRegistry, false, 5000);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        stripes.stop();
+        journal.stop();
+        connectionFactory.destroy();
+    }
+
+    @Test
+    void unreachableBrokerOnAStripeSpillsTheMessage() throws Exception {
+        producer.publishMessage(message(0)).get(10, TimeUnit.SECONDS);
+
+        assertThat(journal.hasBacklog()).isTrue();
+        assertThat(ids(journal.peek(10))).containsExactly("m0");
+
+        // With a backlog, later publishes go straight to the journal behind it.
+        producer.publishMessage(message(1)).get(10, TimeUnit.SECONDS);
+        assertThat(ids(journal.peek(10))).containsExactly("m0", "m1");
+    }
+
+    @Test
+    void unreachableBrokerOnAStripeSpillsEveryMessageOfABatch() throws Exception {
+        QueueMessageBatch batch = new QueueMessageBatch("1", List.of(message(0), message(1), message(2)));
+
+        producer.publishBatch(batch).get(10, TimeUnit.SECONDS);
+
+        assertThat(ids(journal.peek(10))).containsExactly("m0", "m1", "m2");
+    }
+
+    @Test
+    void replayFailuresAreLeftToTheReplayer() {
+        assertThat(producer.replay(message(0))).failsWithin(10, TimeUnit.SECONDS);
+        assertThat(journal.hasBacklog()).isFalse();
+    }
+
+    private static QueueMessage message(int i) {
+        QueueMessage message = new QueueMessage();
+        message.setMessageId("m" + i);
+        message.setRoomId("1");
+        message.setMessage("hello " + i);
+        return message;
+    }
+
+    private static List<String> ids(SpillJournal.ReplayBatch batch) {
+        return batch.messages().stream().map(QueueMessage::getMessageId).toList();
+    }
+}
@@ -0,0 +1,75 @@
+package com.chat.cs6650assignment3.serverv3;
+
+import com.chat.cs6650assignment3.bus.MessageBus;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SessionManagerTest {
+
+    private final MessageBus messageBus = mock(MessageBus.class);
+    private final SessionManager sessionManager = new SessionManager(messageBus);
+
+    @Test
+    void sessionIsInTheRoomBeforeTheRoomIsBound() {
+        WebSocketSession session = session("s1");
+        boolean[] seenWhileBinding = new boolean[1];
+        doAnswer(invocation -> {
+            seenWhileBinding[0] = sessionManager.getSessions("7").contains(session);
+            return null;
+        }).when(messageBus).subscribeBroadcasts("7");
+
+        sessionManager.addSession("7", session);
+
+        assertThat(seenWhileBinding[0]).isTrue();
+        assertThat(sessionManager.isInRoom("7", session)).isTrue();
+    }
+
+    @Test
+    void failedBindLeavesTheSessionOutOfTheRoom() {
+        WebSocketSession session = session("s1");
+        doThrow(new IllegalStateException("broker down")).when(messageBus).subscribeBroadcasts("7");
+
+        assertThatThrownBy(() -> sessionManager.addSession("7", session)).isInstanceOf(IllegalStateException.class);
+
+        assertThat(sessionManager.getSessions("7")).isEmpty();
+        assertThat(sessionManager.isInRoom("7", session)).isFalse();
+    }
+
+    @Test
+    void pendingUnbindSeesTheRoomOccupiedOnceASessionRejoins() {
+        WebSocketSession first = session("s1");
+        WebSocketSession second = session("s2");
+        BooleanSupplier[] roomStillEmpty = new BooleanSupplier[1];
+        doAnswer(invocation -> {
+            roomStillEmpty[0] = invocation.getArgument(1);
+            return null;
+        }).when(messageBus).unsubscribeBroadcasts(eq("7"), any());
+
+        sessionManager.addSession("7", first);
+        sessionManager.removeSession("7", first);
+        assertThat(roomStillEmpty[0].getAsBoolean()).isTrue();
+
+        sessionManager.addSession("7", second);
+        assertThat(roomStillEmpty[0].getAsBoolean()).isFalse();
+        verify(messageBus, times(2)).subscribeBroadcasts("7");
+    }
+
+    private static WebSocketSession session(String id) {
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn(id);
+        return session;
+    }
+}
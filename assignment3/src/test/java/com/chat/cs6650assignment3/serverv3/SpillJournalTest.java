@@ -0,0 +1,140 @@
+package com.chat.cs6650assignment3.serverv3;
+
+import com.chat.cs6650assignment3.model.QueueMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SpillJournalTest {
+
+    private static final int SEGMENT_BYTES = 1024;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void tornTailIsDroppedOnReopen() throws IOException {
+        SpillJournal journal = open();
+        for (int i = 0; i < 3; i++) {
+            journal.append(message(i));
+        }
+        journal.stop();
+
+        // Flip a payload byte of the last record, as if the process died mid-write.
+        Path segment = segmentFiles().get(0);
+        ByteBuffer contents = ByteBuffer.wrap(Files.readAllBytes(segment));
+        int position = 0;
+        for (int i = 0; i < 2; i++) {
+            position += 8 + contents.getInt(position);
+        }
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{'#'}), position + 8);
+        }
+
+        SpillJournal reopened = open();
+        assertThat(ids(reopened.peek(10))).containsExactly("m0", "m1");
+
+        // The next append takes the torn record's place.
+        reopened.append(message(3));
+        assertThat(ids(reopened.peek(10))).containsExactly("m0", "m1", "m3");
+    }
+
+    @Test
+    void resumesFromTheCursorMidSegment() throws IOException {
+        SpillJournal journal = open();
+        for (int i = 0; i < 4; i++) {
+            journal.append(message(i));
+        }
+        journal.commit(journal.peek(2));
+        journal.stop();
+
+        SpillJournal reopened = open();
+        assertThat(reopened.hasBacklog()).isTrue();
+        SpillJournal.ReplayBatch batch = reopened.peek(10);
+        assertThat(ids(batch)).containsExactly("m2", "m3");
+
+        reopened.commit(batch);
+        assertThat(reopened.hasBacklog()).isFalse();
+    }
+
+    @Test
+    void rotatesSegmentsAndDeletesThemOnceReplayed() throws IOException {
+        SpillJournal journal = open();
+        for (int i = 0; i < 20; i++) {
+            journal.append(message(i));
+        }
+        assertThat(segmentFiles()).hasSizeGreaterThan(2);
+
+        List<String> replayed = new ArrayList<>();
+        while (journal.hasBacklog()) {
+            SpillJournal.ReplayBatch batch = journal.peek(3);
+            replayed.addAll(ids(batch));
+            journal.commit(batch);
+        }
+        journal.peek(3);
+
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            expected.add("m" + i);
+        }
+        assertThat(replayed).isEqualTo(expected);
+        assertThat(segmentFiles()).hasSize(1);
+    }
+
+    @Test
+    void reopenDropsSegmentsBeforeTheCursor() throws IOException {
+        SpillJournal journal = open();
+        for (int i = 0; i < 20; i++) {
+            journal.append(message(i));
+        }
+        Path firstSegment = segmentFiles().get(0);
+        byte[] firstContents = Files.readAllBytes(firstSegment);
+        // Replay the first segment fully and one record of the second; moving on deletes the first.
+        SpillJournal.ReplayBatch first = journal.peek(20);
+        journal.commit(first);
+        journal.commit(journal.peek(1));
+        journal.stop();
+        // A replayed segment left behind, e.g. by a failed delete.
+        Files.write(firstSegment, firstContents);
+
+        SpillJournal reopened = open();
+        assertThat(segmentFiles()).doesNotContain(firstSegment);
+        assertThat(ids(reopened.peek(1))).containsExactly("m" + (first.messages().size() + 1));
+    }
+
+    private SpillJournal open() throws IOException {
+        return new SpillJournal(new ObjectMapper(), new SimpleMeterRegistry(), true, directory.toString(),
+                SEGMENT_BYTES, SpillJournal.FsyncPolicy.NONE, 1000);
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> listing = Files.list(directory)) {
+            return listing.filter(p -> p.getFileName().toString().startsWith("spill-")).sorted().toList();
+        }
+    }
+
+    private static QueueMessage message(int i) {
+        QueueMessage message = new QueueMessage();
+        message.setMessageId("m" + i);
+        message.setRoomId("1");
+        message.setMessage("hello " + i);
+        return message;
+    }
+
+    private static List<String> ids(SpillJournal.ReplayBatch batch) {
+        return batch.messages().stream().map(QueueMessage::getMessageId).toList();
+    }
+}